@@ -0,0 +1,786 @@
+/*
+ * Copyright (c) 2018 Roboception GmbH
+ * All rights reserved
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * 1. Redistributions of source code must retain the above copyright notice,
+ * this list of conditions and the following disclaimer.
+ *
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ * this list of conditions and the following disclaimer in the documentation
+ * and/or other materials provided with the distribution.
+ *
+ * 3. Neither the name of the copyright holder nor the names of its contributors
+ * may be used to endorse or promote products derived from this software without
+ * specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package com.roboception.rcapi.codegen;
+
+import java.io.IOException;
+import java.io.Writer;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Map.Entry;
+import java.util.Set;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.roboception.rcapi.core.Service;
+
+/**
+ * Writes the source of a typed client for the services of a single node.
+ *
+ * For each service, the client offers a method taking the service's arguments
+ * and returning its response as generated classes. These classes read and
+ * write themselves from and to JSON directly via Jackson's streaming API, so
+ * that calls do without reflection-based data binding.
+ *
+ * The structure of arguments and responses is derived from the service
+ * descriptions: a string names the type of a value (e.g. "float64", "int32",
+ * "bool", "string"), an object describes a nested structure, and an array
+ * describes a list by its single element. Anything else, e.g. lists of lists,
+ * is kept as JsonNode. Services whose arguments are not an object take them as
+ * single value, list or JsonNode.
+ *
+ */
+public class ClientWriter
+{
+
+    /**
+     * Creates a writer for the client of a node.
+     *
+     * @param packageName
+     *            package of the generated client
+     * @param node
+     *            name of the node
+     * @param services
+     *            descriptions of the node's services
+     */
+    public ClientWriter(final String packageName, final String node,
+            final List<Service.Info> services)
+    {
+        this.packageName = packageName;
+        this.node = node;
+        this.services = services;
+        className = upperCamel(node) + "Client";
+    }
+
+    /**
+     * @return simple name of the generated client class
+     */
+    public String getClassName()
+    {
+        return className;
+    }
+
+    /**
+     * Writes the client's source.
+     *
+     * @param out
+     * @throws IOException
+     *             as thrown by out
+     */
+    public void writeTo(final Writer out) throws IOException
+    {
+        StringBuilder src = new StringBuilder();
+        src.append("package ").append(packageName).append(";\n\n");
+        src.append("import java.io.IOException;\n");
+        src.append("import java.util.ArrayList;\n");
+        src.append("import java.util.HashMap;\n");
+        src.append("import java.util.List;\n");
+        src.append("import java.util.Map;\n\n");
+        src.append("import com.fasterxml.jackson.core.JsonGenerator;\n");
+        src.append("import com.fasterxml.jackson.core.JsonParser;\n");
+        src.append("import com.fasterxml.jackson.core.JsonToken;\n");
+        src.append("import com.fasterxml.jackson.databind.JsonNode;\n");
+        src.append("import com.roboception.rcapi.core.GenericPrintable;\n");
+        src.append("import com.roboception.rcapi.core.Service;\n\n");
+        src.append("/**\n");
+        src.append(" * Typed client of the services of node ").append(node)
+                .append(".\n");
+        src.append(" *\n");
+        src.append(" * Generated by rcapi-codegen from the node's service descriptions, do not\n");
+        src.append(" * edit.\n");
+        src.append(" */\n");
+        src.append("@SuppressWarnings(\"unused\")\n");
+        src.append("public class ").append(className).append("\n{\n");
+        src.append("    public static final String NODE = \"").append(node)
+                .append("\";\n\n");
+
+        src.append("    public ").append(className)
+                .append("(final String host)\n");
+        src.append("    {\n");
+        src.append("        this.host = host;\n");
+        src.append("    }\n");
+
+        Set<String> names = new HashSet<String>();
+        names.add(className);
+        List<Type> types = new ArrayList<Type>();
+        for (Service.Info service : services)
+        {
+            String name = unique(names, upperCamel(service.name));
+            Type args = parse(service.args, name + "Args", names);
+            Type response = parse(service.response, name + "Response", names);
+            writeMethods(src, service, args, response);
+            if (args.kind == Kind.OBJECT)
+            {
+                args.role = Role.ARGS;
+                types.add(args);
+            } else if (args.kind == Kind.LIST
+                    && args.element.kind == Kind.OBJECT)
+            {
+                types.add(args.element);
+            }
+            if (response.kind == Kind.OBJECT)
+            {
+                response.role = Role.RESPONSE;
+                types.add(response);
+            }
+        }
+
+        for (Type type : types)
+        {
+            src.append("\n");
+            writeClass(src, type, "    ", type.role == Role.ARGS,
+                    type.role == Role.RESPONSE);
+        }
+
+        src.append("\n");
+        src.append("    protected Service service(final String name)\n");
+        src.append("    {\n");
+        src.append("        synchronized (services)\n");
+        src.append("        {\n");
+        src.append("            Service service = services.get(name);\n");
+        src.append("            if (service == null)\n");
+        src.append("            {\n");
+        src.append("                service = Service.connectTo(host, NODE, name);\n");
+        src.append("                services.put(name, service);\n");
+        src.append("            }\n");
+        src.append("            return service;\n");
+        src.append("        }\n");
+        src.append("    }\n\n");
+        src.append("    // / reader for responses without content\n");
+        src.append("    protected static final Service.ResponseReader<Void> SKIP = new Service.ResponseReader<Void>()\n");
+        src.append("    {\n");
+        src.append("        public Void readResponse(JsonParser parser) throws IOException\n");
+        src.append("        {\n");
+        src.append("            parser.skipChildren();\n");
+        src.append("            return null;\n");
+        src.append("        }\n");
+        src.append("    };\n\n");
+        src.append("    // / reader for responses without known structure\n");
+        src.append("    protected static final Service.ResponseReader<JsonNode> TREE = new Service.ResponseReader<JsonNode>()\n");
+        src.append("    {\n");
+        src.append("        public JsonNode readResponse(JsonParser parser) throws IOException\n");
+        src.append("        {\n");
+        src.append("            return parser.<JsonNode> readValueAsTree();\n");
+        src.append("        }\n");
+        src.append("    };\n\n");
+        src.append("    protected final String host;\n");
+        src.append("    protected final Map<String, Service> services = new HashMap<String, Service>();\n");
+        src.append("}\n");
+        out.write(src.toString());
+    }
+
+    /**
+     * Kinds of values in service descriptions
+     */
+    protected static enum Kind
+    {
+        DOUBLE("double", "Double", "parser.getDoubleValue()"),
+        INT("int", "Integer", "parser.getIntValue()"),
+        LONG("long", "Long", "parser.getLongValue()"),
+        BOOLEAN("boolean", "Boolean", "parser.getBooleanValue()"),
+        STRING("String", "String", "parser.getValueAsString()"),
+        TREE("JsonNode", "JsonNode", "parser.<JsonNode> readValueAsTree()"),
+        OBJECT(null, null, null),
+        LIST(null, null, null),
+        EMPTY(null, null, null);
+
+        Kind(final String javaType, final String boxedType, final String read)
+        {
+            this.javaType = javaType;
+            this.boxedType = boxedType;
+            this.read = read;
+        }
+
+        protected final String javaType, boxedType, read;
+    }
+
+    /**
+     * Roles of generated top-level classes
+     */
+    protected static enum Role
+    {
+        ARGS, RESPONSE, NONE
+    }
+
+    /**
+     * Type of a value, derived from its description
+     */
+    protected static class Type
+    {
+        protected Type(final Kind kind)
+        {
+            this.kind = kind;
+        }
+
+        protected String javaType()
+        {
+            switch (kind)
+            {
+            case OBJECT:
+                return name;
+            case LIST:
+                return "List<" + element.boxedType() + ">";
+            default:
+                return kind.javaType;
+            }
+        }
+
+        protected String boxedType()
+        {
+            return kind == Kind.OBJECT || kind == Kind.LIST ? javaType()
+                    : kind.boxedType;
+        }
+
+        protected final Kind kind;
+
+        // / class name of objects
+        protected String name;
+
+        // / JSON names to types of an object's fields
+        protected final Map<String, Type> fields = new LinkedHashMap<String, Type>();
+
+        // / type of a list's elements
+        protected Type element;
+
+        // / role of a service's top-level args or response class
+        protected Role role = Role.NONE;
+    }
+
+    /**
+     * Derives the type of a described value.
+     *
+     * @param description
+     * @param name
+     *            class name for objects
+     * @param names
+     *            class names used so far in the enclosing scope
+     */
+    protected static Type parse(final JsonNode description, final String name,
+            final Set<String> names)
+    {
+        if (description == null || description.isNull()
+                || (description.isContainerNode() && description.size() == 0))
+        {
+            return new Type(Kind.EMPTY);
+        }
+        if (description.isTextual())
+        {
+            return new Type(kindOf(description.asText()));
+        }
+        if (description.isArray())
+        {
+            Type element = parse(description.get(0), singular(name), names);
+            if (element.kind == Kind.LIST || element.kind == Kind.EMPTY)
+            {
+                return new Type(Kind.TREE);
+            }
+            Type type = new Type(Kind.LIST);
+            type.element = element;
+            return type;
+        }
+        if (description.isObject())
+        {
+            Type type = new Type(Kind.OBJECT);
+            type.name = unique(names, name);
+            // / nested classes must not hide enclosing ones
+            Set<String> nested = new HashSet<String>(names);
+            Iterator<Entry<String, JsonNode>> fields = description.fields();
+            while (fields.hasNext())
+            {
+                Entry<String, JsonNode> field = fields.next();
+                Type fieldType = parse(field.getValue(),
+                        upperCamel(field.getKey()), nested);
+                type.fields.put(field.getKey(),
+                        fieldType.kind == Kind.EMPTY ? new Type(Kind.TREE)
+                                : fieldType);
+            }
+            return type;
+        }
+        return new Type(Kind.TREE);
+    }
+
+    /**
+     * Maps the type names of service descriptions to kinds of values.
+     */
+    protected static Kind kindOf(final String typeName)
+    {
+        String t = typeName.toLowerCase();
+        if (t.startsWith("float") || t.equals("double"))
+        {
+            return Kind.DOUBLE;
+        }
+        if (t.equals("int64") || t.equals("uint32") || t.equals("uint64")
+                || t.equals("long"))
+        {
+            return Kind.LONG;
+        }
+        if (t.startsWith("int") || t.startsWith("uint") || t.equals("byte")
+                || t.equals("char"))
+        {
+            return Kind.INT;
+        }
+        if (t.startsWith("bool"))
+        {
+            return Kind.BOOLEAN;
+        }
+        if (t.equals("string"))
+        {
+            return Kind.STRING;
+        }
+        return Kind.TREE;
+    }
+
+    protected void writeMethods(final StringBuilder src,
+            final Service.Info service, final Type args, final Type response)
+    {
+        String method = lowerCamel(service.name);
+        String params, argsValue;
+        switch (args.kind)
+        {
+        case EMPTY:
+            params = "";
+            argsValue = "null";
+            break;
+        case OBJECT:
+            params = "final " + args.name + " args";
+            argsValue = "args";
+            break;
+        default:
+            // / lists, single values and unknown structures are written by
+            // / an ArgsWriter of their own
+            params = "final " + args.javaType() + " args";
+            argsValue = argsWriter(args);
+        }
+
+        String returnType, reader;
+        switch (response.kind)
+        {
+        case OBJECT:
+            returnType = response.name;
+            reader = response.name + ".READER";
+            break;
+        case EMPTY:
+            returnType = "void";
+            reader = "SKIP";
+            break;
+        default:
+            returnType = "JsonNode";
+            reader = "TREE";
+        }
+
+        src.append("\n");
+        writeDoc(src, service.description, "    ");
+        src.append("    public ").append(returnType).append(' ')
+                .append(method).append('(').append(params).append(")\n");
+        src.append("    {\n");
+        src.append("        ").append(returnType.equals("void") ? "" : "return ")
+                .append("service(\"").append(service.name)
+                .append("\").call(").append(argsValue).append(", ")
+                .append(reader).append(");\n");
+        src.append("    }\n");
+
+        if (response.kind == Kind.OBJECT)
+        {
+            src.append("\n");
+            src.append("    /**\n");
+            src.append("     * Like {@link #").append(method)
+                    .append("}, but updates the given response in place.\n");
+            src.append("     */\n");
+            src.append("    public ").append(returnType).append(' ')
+                    .append(method).append('(').append(params)
+                    .append(params.length() > 0 ? ", " : "").append("final ")
+                    .append(returnType).append(" target)\n");
+            src.append("    {\n");
+            src.append("        return service(\"").append(service.name)
+                    .append("\").call(").append(argsValue)
+                    .append(", new Service.ResponseReader<")
+                    .append(returnType).append(">()\n");
+            src.append("        {\n");
+            src.append("            public ").append(returnType)
+                    .append(" readResponse(JsonParser parser) throws IOException\n");
+            src.append("            {\n");
+            src.append("                return ").append(returnType)
+                    .append(".readFrom(parser, target);\n");
+            src.append("            }\n");
+            src.append("        });\n");
+            src.append("    }\n");
+        }
+    }
+
+    /**
+     * Returns an expression creating an ArgsWriter for arguments which are
+     * not an object, passed as "args".
+     */
+    protected static String argsWriter(final Type args)
+    {
+        StringBuilder src = new StringBuilder();
+        src.append("new Service.ArgsWriter()\n");
+        src.append("        {\n");
+        src.append("            public void writeArgs(JsonGenerator generator) throws IOException\n");
+        src.append("            {\n");
+        writeValue(src, args, "args", "                ");
+        src.append("            }\n");
+        src.append("        }");
+        return src.toString();
+    }
+
+    protected void writeClass(final StringBuilder src, final Type type,
+            final String indent, final boolean isArgs, final boolean isResponse)
+    {
+        String in = indent + "    ";
+        src.append(indent).append("public static class ").append(type.name)
+                .append(" extends GenericPrintable");
+        if (isArgs)
+        {
+            src.append(" implements Service.ArgsWriter");
+        }
+        src.append("\n").append(indent).append("{\n");
+
+        // / fields
+        for (Entry<String, Type> field : type.fields.entrySet())
+        {
+            src.append(in).append("public ")
+                    .append(field.getValue().javaType()).append(' ')
+                    .append(identifier(field.getKey())).append(";\n");
+        }
+
+        if (isResponse)
+        {
+            src.append("\n");
+            src.append(in).append("public static final Service.ResponseReader<")
+                    .append(type.name).append("> READER = new Service.ResponseReader<")
+                    .append(type.name).append(">()\n");
+            src.append(in).append("{\n");
+            src.append(in).append("    public ").append(type.name)
+                    .append(" readResponse(JsonParser parser) throws IOException\n");
+            src.append(in).append("    {\n");
+            src.append(in).append("        return readFrom(parser, new ")
+                    .append(type.name).append("());\n");
+            src.append(in).append("    }\n");
+            src.append(in).append("};\n");
+        }
+        if (isArgs)
+        {
+            src.append("\n");
+            src.append(in).append("public void writeArgs(JsonGenerator generator) throws IOException\n");
+            src.append(in).append("{\n");
+            src.append(in).append("    writeTo(generator);\n");
+            src.append(in).append("}\n");
+        }
+
+        // / writer
+        src.append("\n");
+        src.append(in).append("public void writeTo(JsonGenerator generator) throws IOException\n");
+        src.append(in).append("{\n");
+        src.append(in).append("    generator.writeStartObject();\n");
+        for (Entry<String, Type> field : type.fields.entrySet())
+        {
+            src.append(in).append("    generator.writeFieldName(\"")
+                    .append(field.getKey()).append("\");\n");
+            writeValue(src, field.getValue(), identifier(field.getKey()), in
+                    + "    ");
+        }
+        src.append(in).append("    generator.writeEndObject();\n");
+        src.append(in).append("}\n");
+
+        // / reader
+        src.append("\n");
+        src.append(in).append("/**\n");
+        src.append(in).append(" * Reads the object at the parser's current token into target,\n");
+        src.append(in).append(" * skipping unknown fields.\n");
+        src.append(in).append(" */\n");
+        src.append(in).append("public static ").append(type.name)
+                .append(" readFrom(JsonParser parser, ").append(type.name)
+                .append(" target) throws IOException\n");
+        src.append(in).append("{\n");
+        src.append(in).append("    if (parser.getCurrentToken() != JsonToken.START_OBJECT)\n");
+        src.append(in).append("    {\n");
+        src.append(in).append("        throw new IOException(\"Expected object for ")
+                .append(type.name).append(" but got \" + parser.getCurrentToken());\n");
+        src.append(in).append("    }\n");
+        src.append(in).append("    while (parser.nextToken() == JsonToken.FIELD_NAME)\n");
+        src.append(in).append("    {\n");
+        src.append(in).append("        String field = parser.getCurrentName();\n");
+        src.append(in).append("        parser.nextToken();\n");
+        String keyword = "if";
+        for (Entry<String, Type> field : type.fields.entrySet())
+        {
+            src.append(in).append("        ").append(keyword)
+                    .append(" (\"").append(field.getKey())
+                    .append("\".equals(field))\n");
+            src.append(in).append("        {\n");
+            readField(src, field.getValue(),
+                    "target." + identifier(field.getKey()), in + "            ");
+            keyword = "} else if";
+        }
+        if (type.fields.isEmpty())
+        {
+            src.append(in).append("        parser.skipChildren();\n");
+        } else
+        {
+            src.append(in).append("        } else\n");
+            src.append(in).append("        {\n");
+            src.append(in).append("            parser.skipChildren();\n");
+            src.append(in).append("        }\n");
+        }
+        src.append(in).append("    }\n");
+        src.append(in).append("    return target;\n");
+        src.append(in).append("}\n");
+
+        // / nested classes
+        for (Type field : type.fields.values())
+        {
+            Type nested = field.kind == Kind.LIST ? field.element : field;
+            if (nested.kind == Kind.OBJECT)
+            {
+                src.append("\n");
+                writeClass(src, nested, in, false, false);
+            }
+        }
+
+        src.append(indent).append("}\n");
+    }
+
+    /**
+     * Writes the statements for writing a value.
+     */
+    protected static void writeValue(final StringBuilder src, final Type type,
+            final String value, final String indent)
+    {
+        switch (type.kind)
+        {
+        case DOUBLE:
+        case INT:
+        case LONG:
+            src.append(indent).append("generator.writeNumber(").append(value)
+                    .append(");\n");
+            break;
+        case BOOLEAN:
+            src.append(indent).append("generator.writeBoolean(").append(value)
+                    .append(");\n");
+            break;
+        case STRING:
+            src.append(indent).append("generator.writeString(").append(value)
+                    .append(");\n");
+            break;
+        case OBJECT:
+        case LIST:
+            src.append(indent).append("if (").append(value)
+                    .append(" == null)\n");
+            src.append(indent).append("{\n");
+            src.append(indent).append("    generator.writeNull();\n");
+            src.append(indent).append("} else\n");
+            src.append(indent).append("{\n");
+            if (type.kind == Kind.OBJECT)
+            {
+                src.append(indent).append("    ").append(value)
+                        .append(".writeTo(generator);\n");
+            } else
+            {
+                String element = "e" + indent.length();
+                src.append(indent).append("    generator.writeStartArray();\n");
+                src.append(indent).append("    for (")
+                        .append(type.element.boxedType()).append(' ')
+                        .append(element).append(" : ").append(value)
+                        .append(")\n");
+                src.append(indent).append("    {\n");
+                writeValue(src, type.element, element, indent + "        ");
+                src.append(indent).append("    }\n");
+                src.append(indent).append("    generator.writeEndArray();\n");
+            }
+            src.append(indent).append("}\n");
+            break;
+        default:
+            src.append(indent).append("generator.writeTree(").append(value)
+                    .append(");\n");
+        }
+    }
+
+    /**
+     * Writes the statements for reading a field's value at the parser's
+     * current token.
+     */
+    protected static void readField(final StringBuilder src, final Type type,
+            final String target, final String indent)
+    {
+        switch (type.kind)
+        {
+        case OBJECT:
+            src.append(indent).append(target)
+                    .append(" = parser.getCurrentToken() == JsonToken.VALUE_NULL ? null\n");
+            src.append(indent).append("        : ").append(type.name)
+                    .append(".readFrom(parser, ").append(target)
+                    .append(" != null ? ").append(target).append(" : new ")
+                    .append(type.name).append("());\n");
+            break;
+        case LIST:
+            src.append(indent).append("if (parser.getCurrentToken() == JsonToken.VALUE_NULL)\n");
+            src.append(indent).append("{\n");
+            src.append(indent).append("    ").append(target)
+                    .append(" = null;\n");
+            src.append(indent).append("} else\n");
+            src.append(indent).append("{\n");
+            src.append(indent).append("    if (").append(target)
+                    .append(" == null)\n");
+            src.append(indent).append("    {\n");
+            src.append(indent).append("        ").append(target)
+                    .append(" = new Array").append(type.javaType())
+                    .append("();\n");
+            src.append(indent).append("    } else\n");
+            src.append(indent).append("    {\n");
+            src.append(indent).append("        ").append(target)
+                    .append(".clear();\n");
+            src.append(indent).append("    }\n");
+            src.append(indent).append("    while (parser.nextToken() != JsonToken.END_ARRAY)\n");
+            src.append(indent).append("    {\n");
+            if (type.element.kind == Kind.OBJECT)
+            {
+                src.append(indent).append("        ").append(target)
+                        .append(".add(parser.getCurrentToken() == JsonToken.VALUE_NULL ? null\n");
+                src.append(indent).append("                : ")
+                        .append(type.element.name)
+                        .append(".readFrom(parser, new ")
+                        .append(type.element.name).append("()));\n");
+            } else
+            {
+                src.append(indent).append("        ").append(target)
+                        .append(".add(").append(type.element.kind.read)
+                        .append(");\n");
+            }
+            src.append(indent).append("    }\n");
+            src.append(indent).append("}\n");
+            break;
+        default:
+            src.append(indent).append(target).append(" = ")
+                    .append(type.kind.read).append(";\n");
+        }
+    }
+
+    protected static void writeDoc(final StringBuilder src,
+            final String description, final String indent)
+    {
+        if (description == null || description.trim().isEmpty())
+        {
+            return;
+        }
+        src.append(indent).append("/**\n");
+        for (String line : description.trim().split("\n"))
+        {
+            src.append(indent).append(" * ")
+                    .append(line.replace("*/", "*&#47;").trim()).append("\n");
+        }
+        src.append(indent).append(" */\n");
+    }
+
+    /**
+     * Converts a name like "get_calibration" to "GetCalibration".
+     */
+    protected static String upperCamel(final String name)
+    {
+        StringBuilder sb = new StringBuilder();
+        boolean upper = true;
+        for (char c : name.toCharArray())
+        {
+            if (!Character.isJavaIdentifierPart(c) || c == '_')
+            {
+                upper = true;
+            } else
+            {
+                sb.append(upper ? Character.toUpperCase(c) : c);
+                upper = false;
+            }
+        }
+        if (sb.length() == 0 || !Character.isJavaIdentifierStart(sb.charAt(0)))
+        {
+            sb.insert(0, '_');
+        }
+        return sb.toString();
+    }
+
+    /**
+     * Converts a name like "get_calibration" to "getCalibration".
+     */
+    protected static String lowerCamel(final String name)
+    {
+        String camel = upperCamel(name);
+        return identifier(Character.toLowerCase(camel.charAt(0))
+                + camel.substring(1));
+    }
+
+    /**
+     * Converts a JSON field name into a valid Java identifier.
+     */
+    protected static String identifier(final String name)
+    {
+        StringBuilder sb = new StringBuilder();
+        for (char c : name.toCharArray())
+        {
+            sb.append(Character.isJavaIdentifierPart(c) ? c : '_');
+        }
+        if (sb.length() == 0 || !Character.isJavaIdentifierStart(sb.charAt(0))
+                || Generator.KEYWORDS.contains(sb.toString()))
+        {
+            sb.insert(0, '_');
+        }
+        return sb.toString();
+    }
+
+    /**
+     * Class name for the elements of a list, e.g. "Pose" for "Poses"
+     */
+    protected static String singular(final String name)
+    {
+        if (name.length() > 1 && name.endsWith("s") && !name.endsWith("ss"))
+        {
+            return name.substring(0, name.length() - 1);
+        }
+        return name + "Item";
+    }
+
+    /**
+     * Returns name, with a number appended if already used.
+     */
+    protected static String unique(final Set<String> names, final String name)
+    {
+        String unique = name;
+        for (int i = 2; !names.add(unique); i++)
+        {
+            unique = name + i;
+        }
+        return unique;
+    }
+
+    protected final String packageName, node, className;
+    protected final List<Service.Info> services;
+}
@@ -0,0 +1,244 @@
+/*
+ * Copyright (c) 2018 Roboception GmbH
+ * All rights reserved
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * 1. Redistributions of source code must retain the above copyright notice,
+ * this list of conditions and the following disclaimer.
+ *
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ * this list of conditions and the following disclaimer in the documentation
+ * and/or other materials provided with the distribution.
+ *
+ * 3. Neither the name of the copyright holder nor the names of its contributors
+ * may be used to endorse or promote products derived from this software without
+ * specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package com.roboception.rcapi.codegen;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Map.Entry;
+
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.roboception.rcapi.core.Node;
+import com.roboception.rcapi.core.Service;
+import com.roboception.rcapi.core.Visard;
+
+/**
+ * Generates typed service clients from the service descriptions of an
+ * rc_visard, see {@link ClientWriter}.
+ *
+ * The descriptions are read either from a live device or from a snapshot
+ * file, which can be saved from a device for generating the clients without
+ * one, e.g. during builds.
+ *
+ */
+public class Generator
+{
+
+    public static void printUsage()
+    {
+        System.out
+                .println("Generates typed service clients with reflection-free serializers\n"
+                        + "from the service descriptions of an rc_visard or a snapshot of them.\n\n"
+                        + "Usage:\t Generator <rc-visard-hostname-or-ip | snapshot.json> <output-dir> <package>\n"
+                        + "\t           [--save <snapshot.json>] [node ...]\n\n"
+                        + "Examples:"
+                        + "\n\t Generator rc-visard-02938425.local src/main/java com.example.rcvisard --save services.json"
+                        + "\n\t Generator services.json target/generated-sources/rcapi com.example.rcvisard rc_hand_eye_calibration\n");
+    }
+
+    public static void main(String[] args) throws IOException
+    {
+        if (args.length < 3)
+        {
+            System.out
+                    .println("ERROR: Wrong number of command line arguments!");
+            printUsage();
+            System.exit(1);
+        }
+
+        String source = args[0];
+        File outputDir = new File(args[1]);
+        String packageName = args[2];
+        File save = null;
+        List<String> nodes = new ArrayList<String>();
+        for (int i = 3; i < args.length; i++)
+        {
+            if (args[i].equals("--save") && i + 1 < args.length)
+            {
+                save = new File(args[++i]);
+            } else
+            {
+                nodes.add(args[i]);
+            }
+        }
+
+        Map<String, List<Service.Info>> descriptions;
+        if (new File(source).isFile())
+        {
+            System.out.println("Reading service descriptions from " + source
+                    + "...");
+            descriptions = readSnapshot(new File(source));
+        } else
+        {
+            System.out.println("Connecting to " + source + "...");
+            descriptions = query(source);
+        }
+        if (!nodes.isEmpty())
+        {
+            descriptions.keySet().retainAll(nodes);
+        }
+        if (save != null)
+        {
+            writeSnapshot(descriptions, save);
+            System.out.println("Saved service descriptions to " + save);
+        }
+
+        for (File file : generate(descriptions, outputDir, packageName))
+        {
+            System.out.println("Generated " + file);
+        }
+    }
+
+    /**
+     * Queries the service descriptions of all nodes of a device.
+     *
+     * @param host
+     *            the device's host name (DNS) or IP address as known in the
+     *            network
+     * @return node names to descriptions of their services
+     */
+    public static Map<String, List<Service.Info>> query(final String host)
+    {
+        Map<String, List<Service.Info>> descriptions = new LinkedHashMap<String, List<Service.Info>>();
+        for (Node.Info node : Visard.connectTo(host).getAvailableNodes())
+        {
+            List<Service.Info> services = new ArrayList<Service.Info>();
+            if (node.services != null)
+            {
+                for (String service : node.services)
+                {
+                    services.add(Service.connectTo(host, node.name, service)
+                            .getInfo());
+                }
+            }
+            descriptions.put(node.name, services);
+        }
+        return descriptions;
+    }
+
+    /**
+     * Reads service descriptions from a snapshot file.
+     *
+     * @param file
+     *            JSON object of node names to lists of service descriptions
+     * @return node names to descriptions of their services
+     * @throws IOException
+     */
+    public static Map<String, List<Service.Info>> readSnapshot(final File file)
+            throws IOException
+    {
+        return MAPPER.readValue(file,
+                new TypeReference<LinkedHashMap<String, List<Service.Info>>>()
+                {
+                });
+    }
+
+    /**
+     * Writes service descriptions to a snapshot file.
+     *
+     * @param descriptions
+     *            node names to descriptions of their services
+     * @param file
+     * @throws IOException
+     */
+    public static void writeSnapshot(
+            final Map<String, List<Service.Info>> descriptions, final File file)
+            throws IOException
+    {
+        MAPPER.writerWithDefaultPrettyPrinter().writeValue(file, descriptions);
+    }
+
+    /**
+     * Generates a client for each node.
+     *
+     * @param descriptions
+     *            node names to descriptions of their services
+     * @param outputDir
+     *            root directory of the generated sources
+     * @param packageName
+     *            package of the generated clients
+     * @return the generated files
+     * @throws IOException
+     */
+    public static List<File> generate(
+            final Map<String, List<Service.Info>> descriptions,
+            final File outputDir, final String packageName) throws IOException
+    {
+        File dir = new File(outputDir, packageName.replace('.', File.separatorChar));
+        if (!dir.isDirectory() && !dir.mkdirs())
+        {
+            throw new IOException("Could not create directory " + dir);
+        }
+
+        List<File> files = new ArrayList<File>();
+        for (Entry<String, List<Service.Info>> node : descriptions.entrySet())
+        {
+            ClientWriter client = new ClientWriter(packageName, node.getKey(),
+                    node.getValue());
+            File file = new File(dir, client.getClassName() + ".java");
+            Writer out = new OutputStreamWriter(new FileOutputStream(file),
+                    UTF8);
+            try
+            {
+                client.writeTo(out);
+            } finally
+            {
+                out.close();
+            }
+            files.add(file);
+        }
+        return files;
+    }
+
+    protected static final ObjectMapper MAPPER = new ObjectMapper();
+    protected static final Charset UTF8 = Charset.forName("UTF-8");
+
+    // / names which must not be used as Java identifiers
+    protected static final List<String> KEYWORDS = Arrays.asList("abstract",
+            "assert", "boolean", "break", "byte", "case", "catch", "char",
+            "class", "const", "continue", "default", "do", "double", "else",
+            "enum", "extends", "false", "final", "finally", "float", "for",
+            "goto", "if", "implements", "import", "instanceof", "int",
+            "interface", "long", "native", "new", "null", "package",
+            "private", "protected", "public", "return", "short", "static",
+            "strictfp", "super", "switch", "synchronized", "this", "throw",
+            "throws", "transient", "true", "try", "void", "volatile", "while");
+}
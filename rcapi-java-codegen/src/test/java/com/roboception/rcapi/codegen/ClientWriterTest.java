@@ -0,0 +1,218 @@
+/*
+ * Copyright (c) 2018 Roboception GmbH
+ * All rights reserved
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * 1. Redistributions of source code must retain the above copyright notice,
+ * this list of conditions and the following disclaimer.
+ *
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ * this list of conditions and the following disclaimer in the documentation
+ * and/or other materials provided with the distribution.
+ *
+ * 3. Neither the name of the copyright holder nor the names of its contributors
+ * may be used to endorse or promote products derived from this software without
+ * specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package com.roboception.rcapi.codegen;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.io.StringWriter;
+import java.net.URL;
+import java.net.URLClassLoader;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import javax.tools.Diagnostic;
+import javax.tools.DiagnosticCollector;
+import javax.tools.JavaCompiler;
+import javax.tools.JavaFileObject;
+import javax.tools.StandardJavaFileManager;
+import javax.tools.ToolProvider;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import com.fasterxml.jackson.annotation.JsonProperty;
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.roboception.rcapi.core.Service;
+
+public class ClientWriterTest
+{
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    @Test
+    public void generatedClientCompilesAndRoundTripsResponses()
+            throws Exception
+    {
+        ClassLoader loader = generateAndCompile();
+        Class<?> response = loader.loadClass(PACKAGE
+                + ".RcHandEyeCalibrationClient$GetCalibrationResponse");
+        String json = "{\"success\":true,\"status\":3,\"message\":\"ok\",\"error\":0.25,"
+                + "\"pose\":{\"position\":{\"x\":1.0,\"y\":2.0,\"z\":3.0},"
+                + "\"orientation\":{\"x\":0.0,\"y\":0.0,\"z\":0.0,\"w\":1.0}},"
+                + "\"poses\":[{\"x\":1.5,\"class\":\"a\"},{\"x\":2.5,\"class\":\"b\"}],"
+                + "\"tags\":[\"x\",\"y\"],\"raw\":[[1,2],[3]]}";
+
+        Service.ResponseReader<?> reader = (Service.ResponseReader<?>) response
+                .getField("READER").get(null);
+        JsonParser parser = JSON.createParser(json);
+        parser.nextToken();
+        Object value = reader.readResponse(parser);
+
+        StringWriter written = new StringWriter();
+        JsonGenerator generator = JSON.createGenerator(written);
+        response.getMethod("writeTo", JsonGenerator.class).invoke(value,
+                generator);
+        generator.close();
+        assertEquals(MAPPER.readTree(json), MAPPER.readTree(written.toString()));
+
+        // / unknown fields are skipped, and the target is updated in place
+        parser = JSON.createParser("{\"unknown\":{\"a\":[1]},\"status\":4}");
+        parser.nextToken();
+        Object updated = response.getMethod("readFrom", JsonParser.class,
+                response).invoke(null, parser, value);
+        assertEquals(value, updated);
+        assertEquals(4, response.getField("status").get(value));
+        assertEquals("ok", response.getField("message").get(value));
+    }
+
+    @Test
+    public void argumentsKeepTheirRoleAndKind() throws Exception
+    {
+        ClassLoader loader = generateAndCompile();
+        Class<?> client = loader.loadClass(PACKAGE
+                + ".RcHandEyeCalibrationClient");
+
+        // / "set" gets "SetArgs2" as "SetArgs" is taken by "set_args"
+        Class<?> setArgs = loader.loadClass(PACKAGE
+                + ".RcHandEyeCalibrationClient$SetArgs2");
+        assertTrue(Service.ArgsWriter.class.isAssignableFrom(setArgs));
+        client.getMethod("set", setArgs);
+
+        client.getMethod("setExposure", double.class);
+        client.getMethod("setPoses", List.class);
+        client.getMethod("setRaw", JsonNode.class);
+        client.getMethod("resetDefaults");
+    }
+
+    @Test
+    public void writesNonObjectArguments() throws Exception
+    {
+        Map<String, List<Service.Info>> descriptions = Generator
+                .readSnapshot(snapshot());
+        StringWriter src = new StringWriter();
+        new ClientWriter(PACKAGE, "rc_hand_eye_calibration",
+                descriptions.get("rc_hand_eye_calibration")).writeTo(src);
+
+        assertTrue(src.toString().contains(
+                "public SetExposureResponse setExposure(final double args)"));
+        assertTrue(src.toString().contains("generator.writeNumber(args);"));
+        assertTrue(src.toString().contains("generator.writeTree(args);"));
+    }
+
+    /**
+     * Generates the clients of the fixture snapshot and compiles them.
+     *
+     * @return a class loader for the compiled clients
+     */
+    protected ClassLoader generateAndCompile() throws Exception
+    {
+        File sources = folder.newFolder("src");
+        File classes = folder.newFolder("classes");
+        List<File> files = Generator.generate(
+                Generator.readSnapshot(snapshot()), sources, PACKAGE);
+
+        JavaCompiler compiler = ToolProvider.getSystemJavaCompiler();
+        DiagnosticCollector<JavaFileObject> diagnostics = new DiagnosticCollector<JavaFileObject>();
+        StandardJavaFileManager fileManager = compiler.getStandardFileManager(
+                diagnostics, null, null);
+        try
+        {
+            boolean compiled = compiler.getTask(
+                    null,
+                    fileManager,
+                    diagnostics,
+                    Arrays.asList("-classpath", classpath(), "-d",
+                            classes.getPath()), null,
+                    fileManager.getJavaFileObjectsFromFiles(files)).call();
+            StringBuilder errors = new StringBuilder();
+            for (Diagnostic<? extends JavaFileObject> d : diagnostics
+                    .getDiagnostics())
+            {
+                errors.append(d).append('\n');
+            }
+            assertTrue(errors.toString(), compiled);
+        } finally
+        {
+            fileManager.close();
+        }
+        return new URLClassLoader(new URL[] { classes.toURI().toURL() },
+                getClass().getClassLoader());
+    }
+
+    /**
+     * Class path of the generated clients' dependencies, independent of how
+     * the tests are launched.
+     */
+    protected static String classpath() throws Exception
+    {
+        Set<String> entries = new LinkedHashSet<String>();
+        for (Class<?> dependency : new Class<?>[] { Service.class,
+                JsonFactory.class, ObjectMapper.class, JsonProperty.class })
+        {
+            entries.add(new File(dependency.getProtectionDomain()
+                    .getCodeSource().getLocation().toURI()).getPath());
+        }
+        entries.addAll(Arrays.asList(System.getProperty("java.class.path")
+                .split(File.pathSeparator)));
+        StringBuilder path = new StringBuilder();
+        for (String entry : new ArrayList<String>(entries))
+        {
+            path.append(path.length() > 0 ? File.pathSeparator : "").append(
+                    entry);
+        }
+        return path.toString();
+    }
+
+    protected static File snapshot() throws Exception
+    {
+        return new File(ClientWriterTest.class.getResource("/services.json")
+                .toURI());
+    }
+
+    protected static final String PACKAGE = "com.example.rcvisard";
+    protected static final ObjectMapper MAPPER = new ObjectMapper();
+
+    // / with a codec for JsonNodes, like the factory Service uses
+    protected static final JsonFactory JSON = MAPPER.getFactory();
+}
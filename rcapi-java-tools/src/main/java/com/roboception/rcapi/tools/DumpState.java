@@ -0,0 +1,342 @@
+/*
+ * Copyright (c) 2018 Roboception GmbH
+ * All rights reserved
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * 1. Redistributions of source code must retain the above copyright notice,
+ * this list of conditions and the following disclaimer.
+ *
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ * this list of conditions and the following disclaimer in the documentation
+ * and/or other materials provided with the distribution.
+ *
+ * 3. Neither the name of the copyright holder nor the names of its contributors
+ * may be used to endorse or promote products derived from this software without
+ * specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package com.roboception.rcapi.tools;
+
+import java.io.BufferedOutputStream;
+import java.io.BufferedReader;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletionService;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorCompletionService;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.roboception.rcapi.core.Endpoints;
+import com.roboception.rcapi.core.ExecutionBackend;
+
+/**
+ * Dumps the complete state of many rc_visard devices: system info, and for
+ * each node its status, parameters (with min, max and default values) and
+ * service descriptions.
+ *
+ * All devices and their nodes are queried in parallel, and each record is
+ * written as soon as it is complete.
+ *
+ */
+public class DumpState
+{
+
+    public static void printUsage()
+    {
+        System.err
+                .println("Dumps the system info and the status, parameters, and services of all nodes\n"
+                        + "of many rc_visard devices in parallel, as JSON lines or in a binary format.\n\n"
+                        + "Usage:\t DumpState [--binary] [--output <file>] [--threads <n>] <host | @hosts-file> ...\n\n"
+                        + "Examples:"
+                        + "\n\t DumpState rc-visard-02938425.local 10.0.2.55 > cell.jsonl"
+                        + "\n\t DumpState --binary --output cell.rcsd --threads 64 @hosts.txt\n");
+    }
+
+    public static void main(String[] args) throws IOException
+    {
+        boolean binary = false;
+        String output = null;
+        int threads = 32;
+        Set<String> hosts = new LinkedHashSet<String>();
+        try
+        {
+            for (int i = 0; i < args.length; i++)
+            {
+                if (args[i].equals("--binary"))
+                {
+                    binary = true;
+                } else if (args[i].equals("--output"))
+                {
+                    output = args[++i];
+                } else if (args[i].equals("--threads"))
+                {
+                    threads = Integer.parseInt(args[++i]);
+                } else if (args[i].startsWith("@"))
+                {
+                    hosts.addAll(readHosts(args[i].substring(1)));
+                } else
+                {
+                    hosts.add(args[i]);
+                }
+            }
+        } catch (RuntimeException e)
+        {
+            hosts.clear();
+        }
+        if (hosts.isEmpty() || threads < 1)
+        {
+            System.err.println("ERROR: Wrong command line arguments!");
+            printUsage();
+            System.exit(1);
+        }
+
+        OutputStream out = new BufferedOutputStream(
+                output == null ? System.out : new FileOutputStream(output));
+        int failures;
+        try
+        {
+            StateWriter writer = binary ? new StateWriter.Binary(out)
+                    : new StateWriter.JsonLines(out);
+            failures = dump(new ArrayList<String>(hosts), writer, threads);
+        } finally
+        {
+            out.close();
+        }
+        System.err.println("Dumped " + hosts.size() + " devices, " + failures
+                + " failures.");
+        System.exit(failures == 0 ? 0 : 2);
+    }
+
+    /**
+     * Dumps the state of the given devices.
+     *
+     * Failures are written as records of type "error" with a section "error"
+     * holding the message.
+     *
+     * @param hosts
+     *            the devices' host names (DNS) or IP addresses as known in the
+     *            network
+     * @param writer
+     *            receives the records
+     * @param threads
+     *            maximum number of requests at the same time
+     * @return the number of failures
+     * @throws IOException
+     *             if writing a record failed
+     */
+    public static int dump(final List<String> hosts, final StateWriter writer,
+            final int threads) throws IOException
+    {
+        final AtomicInteger failures = new AtomicInteger();
+        ExecutorService executor = ExecutionBackend.newExecutor("rcapi-dump",
+                threads);
+        CompletionService<List<Callable<Void>>> tasks = new ExecutorCompletionService<List<Callable<Void>>>(
+                executor);
+        try
+        {
+            // / devices first; each yields the tasks for its nodes
+            int pending = 0;
+            for (final String host : hosts)
+            {
+                tasks.submit(new Callable<List<Callable<Void>>>()
+                {
+                    public List<Callable<Void>> call() throws IOException
+                    {
+                        return dumpDevice(host, writer, failures);
+                    }
+                });
+                pending++;
+            }
+            for (; pending > 0; pending--)
+            {
+                for (Callable<Void> node : tasks.take().get())
+                {
+                    tasks.submit(wrap(node));
+                    pending++;
+                }
+            }
+        } catch (InterruptedException e)
+        {
+            Thread.currentThread().interrupt();
+            throw new IOException("Interrupted during dump");
+        } catch (ExecutionException e)
+        {
+            if (e.getCause() instanceof IOException)
+            {
+                throw (IOException) e.getCause();
+            }
+            throw new RuntimeException(e.getCause());
+        } finally
+        {
+            executor.shutdownNow();
+        }
+        return failures.get();
+    }
+
+    /**
+     * Writes the system info of a device.
+     *
+     * @return the tasks dumping the device's nodes
+     */
+    protected static List<Callable<Void>> dumpDevice(final String host,
+            final StateWriter writer, final AtomicInteger failures)
+            throws IOException
+    {
+        final Endpoints endpoints = Endpoints.forHost(host);
+        List<Callable<Void>> nodes = new ArrayList<Callable<Void>>();
+        try
+        {
+            writer.write(host, null, "system",
+                    Collections.singletonMap("system", endpoints.system()
+                            .read().getBytes()));
+            for (JsonNode info : endpoints.nodes().read()
+                    .decode(JsonNode.class))
+            {
+                final String node = info.path("name").asText();
+                nodes.add(new Callable<Void>()
+                {
+                    public Void call() throws IOException
+                    {
+                        dumpNode(endpoints, node, writer, failures);
+                        return null;
+                    }
+                });
+            }
+        } catch (RuntimeException e)
+        {
+            failures.incrementAndGet();
+            writeError(writer, host, null, e);
+        }
+        return nodes;
+    }
+
+    /**
+     * Writes the status, parameters and services of a node.
+     */
+    protected static void dumpNode(final Endpoints endpoints,
+            final String node, final StateWriter writer,
+            final AtomicInteger failures) throws IOException
+    {
+        Map<String, byte[]> sections = new LinkedHashMap<String, byte[]>();
+        try
+        {
+            sections.put("status", endpoints.status(node).read().getBytes());
+            sections.put("parameters", endpoints.parameters(node).read()
+                    .getBytes());
+            sections.put("services", endpoints.services(node).read()
+                    .getBytes());
+        } catch (RuntimeException e)
+        {
+            failures.incrementAndGet();
+            writeError(writer, endpoints.getHost(), node, e);
+            return;
+        }
+        writer.write(endpoints.getHost(), node, "node", sections);
+    }
+
+    protected static void writeError(final StateWriter writer,
+            final String host, final String node, final Exception e)
+            throws IOException
+    {
+        String message = e.getMessage() != null ? e.getMessage() : e
+                .toString();
+        writer.write(host, node, "error",
+                Collections.singletonMap("error", quote(message)));
+    }
+
+    /**
+     * Encodes a string as JSON document.
+     */
+    protected static byte[] quote(final String string)
+    {
+        StringBuilder sb = new StringBuilder("\"");
+        for (char c : string.toCharArray())
+        {
+            if (c == '"' || c == '\\')
+            {
+                sb.append('\\').append(c);
+            } else if (c < 0x20)
+            {
+                sb.append(String.format("\\u%04x", (int) c));
+            } else
+            {
+                sb.append(c);
+            }
+        }
+        return sb.append('"').toString().getBytes(UTF8);
+    }
+
+    /**
+     * Adapts a node's task to the result type of the completion service.
+     */
+    protected static Callable<List<Callable<Void>>> wrap(
+            final Callable<Void> task)
+    {
+        return new Callable<List<Callable<Void>>>()
+        {
+            public List<Callable<Void>> call() throws Exception
+            {
+                task.call();
+                return Collections.emptyList();
+            }
+        };
+    }
+
+    /**
+     * Reads hosts from a file, one per line, ignoring empty lines and
+     * comments starting with '#'.
+     */
+    protected static List<String> readHosts(final String file)
+            throws IOException
+    {
+        List<String> hosts = new ArrayList<String>();
+        BufferedReader in = new BufferedReader(new InputStreamReader(
+                new FileInputStream(file), UTF8));
+        try
+        {
+            String line;
+            while ((line = in.readLine()) != null)
+            {
+                line = line.trim();
+                if (!line.isEmpty() && !line.startsWith("#"))
+                {
+                    hosts.add(line);
+                }
+            }
+        } finally
+        {
+            in.close();
+        }
+        return hosts;
+    }
+
+    protected static final Charset UTF8 = Charset.forName("UTF-8");
+}
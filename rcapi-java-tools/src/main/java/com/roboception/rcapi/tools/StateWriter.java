@@ -0,0 +1,192 @@
+/*
+ * Copyright (c) 2018 Roboception GmbH
+ * All rights reserved
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * 1. Redistributions of source code must retain the above copyright notice,
+ * this list of conditions and the following disclaimer.
+ *
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ * this list of conditions and the following disclaimer in the documentation
+ * and/or other materials provided with the distribution.
+ *
+ * 3. Neither the name of the copyright holder nor the names of its contributors
+ * may be used to endorse or promote products derived from this software without
+ * specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package com.roboception.rcapi.tools;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.Map;
+import java.util.Map.Entry;
+
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.core.JsonParser;
+
+/**
+ * Writes state records of devices to a stream, one record at a time.
+ *
+ * A record belongs to a host and optionally one of its nodes, has a type
+ * (e.g. "system", "node" or "error") and consists of named sections, each of
+ * which is a JSON document as returned by the device. The sections are copied
+ * without binding them to Java objects.
+ *
+ * Records may be written from several threads at once; each record is
+ * encoded completely before being written, so that records never interleave.
+ *
+ */
+public abstract class StateWriter
+{
+
+    /**
+     * Writes records as JSON lines: one JSON object per line with fields
+     * "host", "node" (if any), "type", and a field per section.
+     */
+    public static class JsonLines extends StateWriter
+    {
+        public JsonLines(final OutputStream out)
+        {
+            super(out);
+        }
+
+        @Override
+        protected void encode(final OutputStream buffer, final String host,
+                final String node, final String type,
+                final Map<String, byte[]> sections) throws IOException
+        {
+            JsonGenerator generator = JSON.createGenerator(buffer);
+            generator.writeStartObject();
+            generator.writeStringField("host", host);
+            if (node != null)
+            {
+                generator.writeStringField("node", node);
+            }
+            generator.writeStringField("type", type);
+            for (Entry<String, byte[]> section : sections.entrySet())
+            {
+                generator.writeFieldName(section.getKey());
+                // / copied token by token, as devices may format their JSON
+                // / across several lines
+                JsonParser parser = JSON.createParser(section.getValue());
+                if (parser.nextToken() == null)
+                {
+                    generator.writeNull();
+                } else
+                {
+                    generator.copyCurrentStructure(parser);
+                }
+                parser.close();
+            }
+            generator.writeEndObject();
+            generator.close();
+            buffer.write('\n');
+        }
+
+        protected static final JsonFactory JSON = new JsonFactory();
+    }
+
+    /**
+     * Writes records in a binary format: the magic 'RCSD' and a format
+     * version (int), followed by the records, each of them framed by its
+     * length (int) and consisting of host, node ("" if none) and type as
+     * modified UTF-8, the number of sections (short), and each section's name
+     * (modified UTF-8), length (int) and UTF-8 encoded JSON.
+     */
+    public static class Binary extends StateWriter
+    {
+        public Binary(final OutputStream out) throws IOException
+        {
+            super(out);
+            DataOutputStream data = new DataOutputStream(out);
+            data.writeInt(MAGIC);
+            data.writeInt(VERSION);
+            data.flush();
+        }
+
+        @Override
+        protected void encode(final OutputStream buffer, final String host,
+                final String node, final String type,
+                final Map<String, byte[]> sections) throws IOException
+        {
+            ByteArrayOutputStream record = new ByteArrayOutputStream();
+            DataOutputStream data = new DataOutputStream(record);
+            data.writeUTF(host);
+            data.writeUTF(node != null ? node : "");
+            data.writeUTF(type);
+            data.writeShort(sections.size());
+            for (Entry<String, byte[]> section : sections.entrySet())
+            {
+                data.writeUTF(section.getKey());
+                data.writeInt(section.getValue().length);
+                data.write(section.getValue());
+            }
+            data.flush();
+
+            DataOutputStream framed = new DataOutputStream(buffer);
+            framed.writeInt(record.size());
+            record.writeTo(framed);
+            framed.flush();
+        }
+
+        // / 'RCSD'
+        public static final int MAGIC = 0x52435344;
+        public static final int VERSION = 1;
+    }
+
+    /**
+     * Writes a record.
+     *
+     * @param host
+     * @param node
+     *            or null for records of the whole device
+     * @param type
+     * @param sections
+     *            names to JSON documents
+     * @throws IOException
+     *             as thrown by the underlying stream
+     */
+    public void write(final String host, final String node, final String type,
+            final Map<String, byte[]> sections) throws IOException
+    {
+        ByteArrayOutputStream buffer = new ByteArrayOutputStream();
+        encode(buffer, host, node, type, sections);
+        synchronized (out)
+        {
+            buffer.writeTo(out);
+            out.flush();
+        }
+    }
+
+    /**
+     * Encodes a record into the buffer.
+     */
+    protected abstract void encode(OutputStream buffer, String host,
+            String node, String type, Map<String, byte[]> sections)
+            throws IOException;
+
+    protected StateWriter(final OutputStream out)
+    {
+        this.out = out;
+    }
+
+    protected final OutputStream out;
+}
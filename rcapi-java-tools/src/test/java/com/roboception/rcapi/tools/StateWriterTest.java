@@ -0,0 +1,212 @@
+/*
+ * Copyright (c) 2018 Roboception GmbH
+ * All rights reserved
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * 1. Redistributions of source code must retain the above copyright notice,
+ * this list of conditions and the following disclaimer.
+ *
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ * this list of conditions and the following disclaimer in the documentation
+ * and/or other materials provided with the distribution.
+ *
+ * 3. Neither the name of the copyright holder nor the names of its contributors
+ * may be used to endorse or promote products derived from this software without
+ * specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package com.roboception.rcapi.tools;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.io.BufferedReader;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.InputStreamReader;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import org.junit.Test;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+public class StateWriterTest
+{
+
+    @Test
+    public void framesBinaryRecordsByLength() throws Exception
+    {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        StateWriter writer = new StateWriter.Binary(out);
+        writer.write("rc-visard-1", null, "system",
+                sections("sysinfo", "{\"ready\":true}"));
+        writer.write("rc-visard-1", "rc_stereo", "node",
+                sections("status", "{\"status\":\"running\"}", "parameters",
+                        "[]"));
+
+        DataInputStream in = new DataInputStream(new ByteArrayInputStream(
+                out.toByteArray()));
+        assertEquals(StateWriter.Binary.MAGIC, in.readInt());
+        assertEquals(StateWriter.Binary.VERSION, in.readInt());
+
+        byte[] record = new byte[in.readInt()];
+        in.readFully(record);
+        DataInputStream first = new DataInputStream(new ByteArrayInputStream(
+                record));
+        assertEquals("rc-visard-1", first.readUTF());
+        assertEquals("", first.readUTF());
+        assertEquals("system", first.readUTF());
+        assertEquals(1, first.readShort());
+        assertEquals("sysinfo", first.readUTF());
+        assertEquals("{\"ready\":true}", readSection(first));
+        assertEquals(-1, first.read());
+
+        record = new byte[in.readInt()];
+        in.readFully(record);
+        DataInputStream second = new DataInputStream(new ByteArrayInputStream(
+                record));
+        assertEquals("rc-visard-1", second.readUTF());
+        assertEquals("rc_stereo", second.readUTF());
+        assertEquals("node", second.readUTF());
+        assertEquals(2, second.readShort());
+        assertEquals("status", second.readUTF());
+        assertEquals("{\"status\":\"running\"}", readSection(second));
+        assertEquals("parameters", second.readUTF());
+        assertEquals("[]", readSection(second));
+        assertEquals(-1, second.read());
+        assertEquals(-1, in.read());
+    }
+
+    @Test
+    public void writesOneJsonObjectPerLine() throws Exception
+    {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        StateWriter writer = new StateWriter.JsonLines(out);
+        writer.write("rc-visard-1", "rc_stereo", "node",
+                sections("status", "{\n  \"status\": \"running\"\n}\n",
+                        "parameters", ""));
+        writer.write("rc-visard-2", null, "error",
+                sections("error", "\"timeout\""));
+
+        List<String> lines = lines(out);
+        assertEquals(2, lines.size());
+        JsonNode first = MAPPER.readTree(lines.get(0));
+        assertEquals("rc-visard-1", first.get("host").asText());
+        assertEquals("rc_stereo", first.get("node").asText());
+        assertEquals("node", first.get("type").asText());
+        assertEquals("running", first.get("status").get("status").asText());
+        assertTrue(first.get("parameters").isNull());
+
+        JsonNode second = MAPPER.readTree(lines.get(1));
+        assertFalse(second.has("node"));
+        assertEquals("timeout", second.get("error").asText());
+    }
+
+    @Test(timeout = 20000)
+    public void concurrentRecordsDoNotInterleave() throws Exception
+    {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        final StateWriter writer = new StateWriter.JsonLines(out);
+        final int threads = 8, records = 200;
+        List<Thread> writers = new ArrayList<Thread>();
+        for (int t = 0; t < threads; t++)
+        {
+            final String host = "rc-visard-" + t;
+            Thread thread = new Thread()
+            {
+                public void run()
+                {
+                    try
+                    {
+                        for (int i = 0; i < records; i++)
+                        {
+                            writer.write(host, "node" + i, "node", sections(
+                                    "status", "{\"values\":{\"i\":" + i
+                                            + "}}"));
+                        }
+                    } catch (Exception e)
+                    {
+                        throw new RuntimeException(e);
+                    }
+                }
+            };
+            thread.start();
+            writers.add(thread);
+        }
+        for (Thread thread : writers)
+        {
+            thread.join();
+        }
+
+        List<String> lines = lines(out);
+        assertEquals(threads * records, lines.size());
+        Set<String> seen = new HashSet<String>();
+        for (String line : lines)
+        {
+            JsonNode record = MAPPER.readTree(line);
+            assertEquals(record.get("node").asText(), "node"
+                    + record.get("status").get("values").get("i").asInt());
+            seen.add(record.get("host").asText() + "/"
+                    + record.get("node").asText());
+        }
+        assertEquals(threads * records, seen.size());
+    }
+
+    protected static Map<String, byte[]> sections(final String... namesAndJson)
+    {
+        Map<String, byte[]> sections = new LinkedHashMap<String, byte[]>();
+        for (int i = 0; i < namesAndJson.length; i += 2)
+        {
+            sections.put(namesAndJson[i], namesAndJson[i + 1].getBytes(UTF8));
+        }
+        return sections;
+    }
+
+    protected static String readSection(final DataInputStream in)
+            throws Exception
+    {
+        byte[] json = new byte[in.readInt()];
+        in.readFully(json);
+        return new String(json, UTF8);
+    }
+
+    protected static List<String> lines(final ByteArrayOutputStream out)
+            throws Exception
+    {
+        BufferedReader reader = new BufferedReader(new InputStreamReader(
+                new ByteArrayInputStream(out.toByteArray()), UTF8));
+        List<String> lines = new ArrayList<String>();
+        String line;
+        while ((line = reader.readLine()) != null)
+        {
+            lines.add(line);
+        }
+        return lines;
+    }
+
+    protected static final Charset UTF8 = Charset.forName("UTF-8");
+    protected static final ObjectMapper MAPPER = new ObjectMapper();
+}
@@ -91,6 +91,12 @@ public final class ApiUrls
         return node(host, node) + "/status";
     }
 
+    /// the system state
+    public static String system(final String host)
+    {
+        return entrypoint(host) + "/system";
+    }
+
     /// dynamics' data streams
     public static String streamsURL(String host)
     {
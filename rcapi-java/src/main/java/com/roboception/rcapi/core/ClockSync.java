@@ -0,0 +1,347 @@
+/*
+ * Copyright (c) 2018 Roboception GmbH
+ * All rights reserved
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * 1. Redistributions of source code must retain the above copyright notice,
+ * this list of conditions and the following disclaimer.
+ *
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ * this list of conditions and the following disclaimer in the documentation
+ * and/or other materials provided with the distribution.
+ *
+ * 3. Neither the name of the copyright holder nor the names of its contributors
+ * may be used to endorse or promote products derived from this software without
+ * specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package com.roboception.rcapi.core;
+
+import java.util.LinkedList;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Background estimator of the offset and drift between a sensor's clock and
+ * the local clock.
+ *
+ * The sensor's system state (including its current time) is sampled
+ * periodically and each sample is assigned to the middle of the local
+ * request's round trip. Samples with a round trip time considerably above the
+ * best recent ones are discarded, and a line (offset and drift) is fitted to
+ * the remaining samples of a sliding window.
+ *
+ * Converting timestamps via {@link #sensorToLocal(double)} and
+ * {@link #localToSensor(double)} does not issue any request and does not
+ * block, as it only reads the most recent immutable {@link Model}.
+ *
+ * All timestamps are UNIX timestamps in seconds, as e.g. SysInfo.time.
+ *
+ */
+public class ClockSync
+{
+
+    /**
+     * Immutable model of the sensor clock: sensor time = local time +
+     * offset + drift * (local time - reference time)
+     *
+     */
+    public static final class Model extends GenericPrintable
+    {
+        // / offset of the sensor clock at the reference time in s
+        public final double offset;
+
+        // / drift of the sensor clock relative to the local clock in s/s
+        public final double drift;
+
+        // / local reference time of offset in s
+        public final double reference;
+
+        // / standard deviation of the used samples from the model in s
+        public final double deviation;
+
+        // / best round trip time within the sample window in s
+        public final double minRoundTrip;
+
+        // / number of samples the model is based on
+        public final int samples;
+
+        // / the sensor's PTP state and offset statistics of the last sample
+        public final Visard.SysInfo.PtpStatus ptp;
+
+        /**
+         * @param local
+         *            local UNIX timestamp in s
+         * @return the sensor clock's offset at that time in s
+         */
+        public double offsetAt(final double local)
+        {
+            return offset + drift * (local - reference);
+        }
+
+        protected Model(final double offset, final double drift,
+                final double reference, final double deviation,
+                final double minRoundTrip, final int samples,
+                final Visard.SysInfo.PtpStatus ptp)
+        {
+            this.offset = offset;
+            this.drift = drift;
+            this.reference = reference;
+            this.deviation = deviation;
+            this.minRoundTrip = minRoundTrip;
+            this.samples = samples;
+            this.ptp = ptp;
+        }
+    }
+
+    /**
+     * Starts estimating the clock of a sensor in the background.
+     *
+     * @param host
+     *            the device's host name (DNS) or IP address as known in the
+     *            network
+     * @param period
+     *            time between two samples
+     * @param unit
+     *            unit of period
+     * @return the running estimator
+     */
+    public static ClockSync start(final String host, final long period,
+            final TimeUnit unit)
+    {
+        ClockSync sync = new ClockSync(host, unit.toNanos(period));
+        sync.thread.start();
+        return sync;
+    }
+
+    /**
+     * Stops sampling. The last model stays available.
+     */
+    public void stop()
+    {
+        running = false;
+        thread.interrupt();
+    }
+
+    /**
+     * Converts a sensor timestamp into the local clock.
+     *
+     * @param sensor
+     *            UNIX timestamp in s of the sensor clock
+     * @return UNIX timestamp in s of the local clock
+     * @throws IllegalStateException
+     *             if no sample has been taken yet
+     */
+    public double sensorToLocal(final double sensor)
+    {
+        Model m = getModel();
+        return (sensor - m.offset + m.drift * m.reference) / (1 + m.drift);
+    }
+
+    /**
+     * Converts a local timestamp into the sensor clock.
+     *
+     * @param local
+     *            UNIX timestamp in s of the local clock
+     * @return UNIX timestamp in s of the sensor clock
+     * @throws IllegalStateException
+     *             if no sample has been taken yet
+     */
+    public double localToSensor(final double local)
+    {
+        return local + getModel().offsetAt(local);
+    }
+
+    /**
+     * @return the current model of the sensor clock
+     * @throws IllegalStateException
+     *             if no sample has been taken yet
+     */
+    public Model getModel()
+    {
+        Model m = model;
+        if (m == null)
+        {
+            throw new IllegalStateException("No clock sample of " + host
+                    + " available yet!");
+        }
+        return m;
+    }
+
+    /**
+     * @return true as soon as a model is available
+     */
+    public boolean isValid()
+    {
+        return model != null;
+    }
+
+    /**
+     * @return the most recent sampling failure, or null
+     */
+    public Exception getLastError()
+    {
+        return lastError;
+    }
+
+    /**
+     * @return the local clock as UNIX timestamp in s, with sub-millisecond
+     *         resolution
+     */
+    public static double now()
+    {
+        return (BASE_MILLIS + (System.nanoTime() - BASE_NANOS) / 1e6) / 1e3;
+    }
+
+    protected static final class Sample
+    {
+        protected Sample(final double local, final double offset,
+                final double roundTrip)
+        {
+            this.local = local;
+            this.offset = offset;
+            this.roundTrip = roundTrip;
+        }
+
+        protected final double local, offset, roundTrip;
+    }
+
+    protected void sampleLoop()
+    {
+        Endpoints.Endpoint endpoint = Endpoints.forHost(host).system();
+        while (running)
+        {
+            try
+            {
+                double before = now();
+                Visard.SysInfo sysInfo = endpoint.newResource().get(
+                        Visard.SysInfo.class);
+                double after = now();
+                double local = (before + after) / 2;
+                addSample(new Sample(local, sysInfo.time - local, after
+                        - before), sysInfo.ptp_status);
+                lastError = null;
+            } catch (Exception e)
+            {
+                lastError = e;
+            }
+
+            try
+            {
+                TimeUnit.NANOSECONDS.sleep(periodNanos);
+            } catch (InterruptedException e)
+            {
+                // woken up by stop()
+            }
+        }
+    }
+
+    /**
+     * Adds a sample to the window and publishes an updated model.
+     */
+    protected void addSample(final Sample sample,
+            final Visard.SysInfo.PtpStatus ptp)
+    {
+        window.add(sample);
+        if (window.size() > WINDOW_SIZE)
+        {
+            window.removeFirst();
+        }
+
+        // only use samples whose round trip is close to the best one
+        double minRoundTrip = Double.MAX_VALUE;
+        for (Sample s : window)
+        {
+            minRoundTrip = Math.min(minRoundTrip, s.roundTrip);
+        }
+        double maxRoundTrip = minRoundTrip * 1.5 + ROUND_TRIP_SLACK;
+
+        int n = 0;
+        double sumLocal = 0, sumOffset = 0;
+        for (Sample s : window)
+        {
+            if (s.roundTrip <= maxRoundTrip)
+            {
+                n++;
+                sumLocal += s.local;
+                sumOffset += s.offset;
+            }
+        }
+        double reference = sumLocal / n;
+        double offset = sumOffset / n;
+
+        // least squares fit of the drift around the mean
+        double sxx = 0, sxy = 0;
+        for (Sample s : window)
+        {
+            if (s.roundTrip <= maxRoundTrip)
+            {
+                sxx += (s.local - reference) * (s.local - reference);
+                sxy += (s.local - reference) * (s.offset - offset);
+            }
+        }
+        double drift = sxx > 0 ? sxy / sxx : 0;
+
+        double sumSq = 0;
+        for (Sample s : window)
+        {
+            if (s.roundTrip <= maxRoundTrip)
+            {
+                double residual = s.offset
+                        - (offset + drift * (s.local - reference));
+                sumSq += residual * residual;
+            }
+        }
+
+        model = new Model(offset, drift, reference, Math.sqrt(sumSq / n),
+                minRoundTrip, n, ptp);
+    }
+
+    // / number of samples taken into account
+    protected static final int WINDOW_SIZE = 32;
+
+    // / tolerance in s for the round trip of samples to be used
+    protected static final double ROUND_TRIP_SLACK = 0.001;
+
+    // / base of the local clock, see now()
+    private static final long BASE_MILLIS = System.currentTimeMillis();
+    private static final long BASE_NANOS = System.nanoTime();
+
+    protected final String host;
+    protected final long periodNanos;
+    protected final Thread thread;
+
+    // / only accessed by the sampling thread
+    protected final LinkedList<Sample> window = new LinkedList<Sample>();
+
+    protected volatile Model model;
+    protected volatile Exception lastError;
+    protected volatile boolean running = true;
+
+    protected ClockSync(final String host, final long periodNanos)
+    {
+        this.host = host;
+        this.periodNanos = periodNanos;
+        this.thread = ExecutionBackend.newThread("rcapi-clocksync-" + host,
+                new Runnable()
+                {
+                    public void run()
+                    {
+                        sampleLoop();
+                    }
+                });
+    }
+}
@@ -0,0 +1,314 @@
+/*
+ * Copyright (c) 2018 Roboception GmbH
+ * All rights reserved
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * 1. Redistributions of source code must retain the above copyright notice,
+ * this list of conditions and the following disclaimer.
+ *
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ * this list of conditions and the following disclaimer in the documentation
+ * and/or other materials provided with the distribution.
+ *
+ * 3. Neither the name of the copyright holder nor the names of its contributors
+ * may be used to endorse or promote products derived from this software without
+ * specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package com.roboception.rcapi.core;
+
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.InflaterInputStream;
+
+import org.restlet.data.ClientInfo;
+import org.restlet.data.Encoding;
+import org.restlet.data.Preference;
+import org.restlet.representation.InputRepresentation;
+import org.restlet.representation.Representation;
+
+/**
+ * Opt-in HTTP compression of responses, e.g. for large parameter lists,
+ * service descriptions and service responses on congested networks.
+ *
+ * When enabled, requests offer gzip and deflate encoded responses, and encoded
+ * responses are decompressed while being streamed into the JSON parser.
+ * Compression is only offered for endpoints whose last response had at least
+ * a threshold size (default: 1024 bytes), so that small responses like a
+ * single parameter do not cost the sensor compression effort.
+ *
+ * Statistics about the bytes received and saved are collected globally.
+ *
+ */
+public final class Compression
+{
+
+    /**
+     * Statistics about compressed responses
+     *
+     */
+    public static final class Stats extends GenericPrintable
+    {
+        /**
+         * @return number of compressed responses received
+         */
+        public long getResponses()
+        {
+            return responses.get();
+        }
+
+        /**
+         * @return bytes of compressed responses as received over the network
+         */
+        public long getReceivedBytes()
+        {
+            return receivedBytes.get();
+        }
+
+        /**
+         * @return bytes of compressed responses after decompression
+         */
+        public long getDecodedBytes()
+        {
+            return decodedBytes.get();
+        }
+
+        /**
+         * @return bytes not transferred thanks to compression
+         */
+        public long getSavedBytes()
+        {
+            return decodedBytes.get() - receivedBytes.get();
+        }
+
+        public void reset()
+        {
+            responses.set(0);
+            receivedBytes.set(0);
+            decodedBytes.set(0);
+        }
+
+        private final AtomicLong responses = new AtomicLong();
+        private final AtomicLong receivedBytes = new AtomicLong();
+        private final AtomicLong decodedBytes = new AtomicLong();
+    }
+
+    /**
+     * Enables or disables offering compressed responses (default: disabled).
+     *
+     * @param enabled
+     */
+    public static void setEnabled(final boolean enabled)
+    {
+        Compression.enabled = enabled;
+    }
+
+    public static boolean isEnabled()
+    {
+        return enabled;
+    }
+
+    /**
+     * Sets the response size below which compression is not offered anymore
+     * for an endpoint.
+     *
+     * @param bytes
+     */
+    public static void setThreshold(final long bytes)
+    {
+        threshold = bytes;
+    }
+
+    public static long getThreshold()
+    {
+        return threshold;
+    }
+
+    public static Stats getStats()
+    {
+        return stats;
+    }
+
+    /**
+     * Offers compressed responses in the given request if enabled and worth
+     * it for the endpoint.
+     *
+     * @param clientInfo
+     *            of the request
+     * @param lastResponseSize
+     *            size of the endpoint's last response, or a negative value if
+     *            unknown
+     */
+    protected static void offer(final ClientInfo clientInfo,
+            final long lastResponseSize)
+    {
+        if (enabled && (lastResponseSize < 0 || lastResponseSize >= threshold))
+        {
+            clientInfo.getAcceptedEncodings().add(
+                    new Preference<Encoding>(Encoding.GZIP));
+            clientInfo.getAcceptedEncodings().add(
+                    new Preference<Encoding>(Encoding.DEFLATE));
+        }
+    }
+
+    /**
+     * Callback for the decoded size of a response
+     */
+    protected static interface SizeListener
+    {
+        void responseSize(long bytes);
+    }
+
+    /**
+     * Wraps a response entity so that it is decompressed while being read, if
+     * it is encoded.
+     *
+     * @param entity
+     *            the response entity, may be null
+     * @param listener
+     *            notified of the decoded size once the entity has been read,
+     *            may be null
+     * @return the decoding entity, or the original one if not encoded
+     */
+    protected static Representation decode(final Representation entity,
+            final SizeListener listener) throws IOException
+    {
+        if (entity == null)
+        {
+            return null;
+        }
+
+        boolean gzip = entity.getEncodings().contains(Encoding.GZIP);
+        boolean deflate = entity.getEncodings().contains(Encoding.DEFLATE);
+        if (!gzip && !deflate)
+        {
+            if (listener != null && entity.getSize() >= 0)
+            {
+                listener.responseSize(entity.getSize());
+            }
+            return entity;
+        }
+
+        final CountingInputStream received = new CountingInputStream(
+                entity.getStream(), null);
+        InputStream decompressed = gzip ? new GZIPInputStream(received)
+                : new InflaterInputStream(received);
+        CountingInputStream decoded = new CountingInputStream(decompressed,
+                new SizeListener()
+                {
+                    public void responseSize(long bytes)
+                    {
+                        stats.responses.incrementAndGet();
+                        stats.receivedBytes.addAndGet(received.count);
+                        stats.decodedBytes.addAndGet(bytes);
+                        if (listener != null)
+                        {
+                            listener.responseSize(bytes);
+                        }
+                    }
+                });
+        return new InputRepresentation(decoded, entity.getMediaType());
+    }
+
+    /**
+     * Counts the bytes read and reports them once on end of stream or close
+     */
+    protected static class CountingInputStream extends FilterInputStream
+    {
+        protected CountingInputStream(final InputStream in,
+                final SizeListener listener)
+        {
+            super(in);
+            this.listener = listener;
+        }
+
+        @Override
+        public int read() throws IOException
+        {
+            int b = super.read();
+            if (b < 0)
+            {
+                report();
+            } else
+            {
+                count++;
+            }
+            return b;
+        }
+
+        @Override
+        public int read(final byte[] b, final int off, final int len)
+                throws IOException
+        {
+            int n = super.read(b, off, len);
+            if (n < 0)
+            {
+                report();
+            } else
+            {
+                count += n;
+            }
+            return n;
+        }
+
+        @Override
+        public long skip(final long n) throws IOException
+        {
+            long skipped = super.skip(n);
+            count += skipped;
+            return skipped;
+        }
+
+        @Override
+        public boolean markSupported()
+        {
+            return false;
+        }
+
+        @Override
+        public void close() throws IOException
+        {
+            report();
+            super.close();
+        }
+
+        protected void report()
+        {
+            if (!reported && listener != null)
+            {
+                reported = true;
+                listener.responseSize(count);
+            }
+        }
+
+        protected final SizeListener listener;
+        protected long count = 0;
+        protected boolean reported = false;
+    }
+
+    private static volatile boolean enabled = false;
+    private static volatile long threshold = 1024;
+    private static final Stats stats = new Stats();
+
+    private Compression()
+    {
+        // to prevent instantiation
+    }
+}
@@ -0,0 +1,566 @@
+/*
+ * Copyright (c) 2018 Roboception GmbH
+ * All rights reserved
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * 1. Redistributions of source code must retain the above copyright notice,
+ * this list of conditions and the following disclaimer.
+ *
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ * this list of conditions and the following disclaimer in the documentation
+ * and/or other materials provided with the distribution.
+ *
+ * 3. Neither the name of the copyright holder nor the names of its contributors
+ * may be used to endorse or promote products derived from this software without
+ * specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package com.roboception.rcapi.core;
+
+import java.io.IOException;
+import java.util.Date;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+
+import org.restlet.Client;
+import org.restlet.Restlet;
+import org.restlet.data.Protocol;
+import org.restlet.data.Reference;
+import org.restlet.data.Tag;
+import org.restlet.representation.Representation;
+
+/**
+ * Registry of the REST-API endpoints of a single host.
+ *
+ * Each endpoint's URL is built and parsed only once per host. The resulting
+ * {@link Endpoint}s are immutable and can be shared between threads; they
+ * create lightweight client resources on demand, which all share a single
+ * HTTP client connector instead of creating one each.
+ *
+ */
+public final class Endpoints
+{
+
+    /**
+     * A single, pre-parsed endpoint of the REST-API serving as a template for
+     * requests.
+     *
+     */
+    public static final class Endpoint
+    {
+        /**
+         * Reads the endpoint's current payload.
+         *
+         * Concurrent reads of the same endpoint are coalesced: while a GET is
+         * in flight, further callers wait for its result instead of sending
+         * requests of their own. Reads of different endpoints do not affect
+         * each other.
+         *
+         * Writes (i.e. any request other than GET or HEAD) through resources
+         * of this endpoint detach the read in flight once they are answered,
+         * so that reads following a write never join a GET that started
+         * before it. Writes to other endpoints, e.g. to a node's parameters
+         * while reading a single parameter, do not detach reads.
+         *
+         * @return the payload, shared with all callers waiting for the same
+         *         request
+         */
+        public Payload read()
+        {
+            FutureTask<Payload> task = inFlight.get();
+            while (task == null)
+            {
+                FutureTask<Payload> created = new FutureTask<Payload>(
+                        new Callable<Payload>()
+                        {
+                            public Payload call() throws IOException
+                            {
+                                RCClientResource resource = newResource();
+                                Representation rep = resource.get();
+                                return new Payload(PayloadCache.readAll(rep),
+                                        rep == null ? null : rep.getTag(),
+                                        rep == null ? null : rep
+                                                .getModificationDate());
+                            }
+                        });
+                if (inFlight.compareAndSet(null, created))
+                {
+                    try
+                    {
+                        created.run();
+                    } finally
+                    {
+                        inFlight.compareAndSet(created, null);
+                    }
+                    task = created;
+                } else
+                {
+                    task = inFlight.get();
+                }
+            }
+
+            try
+            {
+                return task.get();
+            } catch (InterruptedException e)
+            {
+                Thread.currentThread().interrupt();
+                throw new RuntimeException("Interrupted while reading " + url,
+                        e);
+            } catch (ExecutionException e)
+            {
+                if (e.getCause() instanceof RuntimeException)
+                {
+                    throw (RuntimeException) e.getCause();
+                }
+                throw new RuntimeException("Could not read response of "
+                        + url, e.getCause());
+            }
+        }
+
+        /**
+         * Lets further reads start a new GET instead of joining the one in
+         * flight, whose callers still get its result.
+         */
+        protected void detachRead()
+        {
+            inFlight.set(null);
+        }
+
+        /**
+         * Creates a new client resource for requests to this endpoint.
+         *
+         * Client resources are not thread-safe, so each thread needs its own;
+         * but creating them is cheap, unless the host's address is not cached
+         * yet: then it is looked up on the calling thread, see
+         * {@link HostResolver#resolve(String)}.
+         *
+         * @return the client resource
+         */
+        public RCClientResource newResource()
+        {
+            RCClientResource resource = new RCClientResource(new Reference(
+                    reference));
+            setUp(resource);
+            return resource;
+        }
+
+        /**
+         * Takes a client resource for requests to this endpoint from the
+         * endpoint's pool, or creates a new one if the pool is empty.
+         *
+         * Pooled resources are set up again as if newly created, see
+         * {@link #newResource()}, so that they pick up changes of the host's
+         * address, of the transport, and of the compression offer. Other
+         * settings (e.g. conditions) are not reset and must not be made on
+         * pooled resources.
+         *
+         * @return the client resource, to be handed back with
+         *         {@link #releaseResource(RCClientResource)} once its response
+         *         has been consumed
+         */
+        public RCClientResource acquireResource()
+        {
+            RCClientResource resource = pool.poll();
+            if (resource == null)
+            {
+                return newResource();
+            }
+            pooled.decrementAndGet();
+            resource.setReference(new Reference(reference));
+            setUp(resource);
+            return resource;
+        }
+
+        /**
+         * Hands back a client resource taken with {@link #acquireResource()}.
+         * At most {@link #MAX_POOLED_RESOURCES} resources are kept, further
+         * ones are left to the GC.
+         *
+         * @param resource
+         *            the resource, not to be used by the caller anymore
+         */
+        public void releaseResource(final RCClientResource resource)
+        {
+            if (pooled.incrementAndGet() > MAX_POOLED_RESOURCES)
+            {
+                pooled.decrementAndGet();
+                return;
+            }
+            pool.offer(resource);
+        }
+
+        protected void setUp(final RCClientResource resource)
+        {
+            resource.host = null;
+            Restlet next = transport;
+            if (next == httpClient)
+            {
+                // / connect to the cached address instead of resolving the
+                // / host on each connection
+                String address = HostResolver.resolve(host);
+                if (!address.equals(host))
+                {
+                    resource.getReference().setHostDomain(address);
+                    resource.host = host;
+                }
+            }
+            resource.setNext(next);
+            resource.setRequestEntityBuffering(true);
+            resource.setResponseEntityBuffering(true);
+            resource.sizeListener = sizeListener;
+            resource.scheduler = scheduler;
+            resource.writePriority = writePriority;
+            resource.endpoint = this;
+            resource.setPriority(null);
+            resource.getClientInfo().getAcceptedEncodings().clear();
+            Compression.offer(resource.getClientInfo(), lastResponseSize);
+        }
+
+        /**
+         * @return the full URL of this endpoint
+         */
+        public String getUrl()
+        {
+            return url;
+        }
+
+        @Override
+        public String toString()
+        {
+            return url;
+        }
+
+        protected Endpoint(final String url, final RequestScheduler scheduler,
+                final RequestScheduler.Priority writePriority)
+        {
+            this.url = url;
+            this.reference = new Reference(url);
+            this.host = reference.getHostDomain();
+            this.scheduler = scheduler;
+            this.writePriority = writePriority;
+        }
+
+        protected final String url;
+        protected final Reference reference;
+        protected final String host;
+
+        // / scheduler of the endpoint's host, and priority of requests other
+        // / than reads
+        protected final RequestScheduler scheduler;
+        protected final RequestScheduler.Priority writePriority;
+
+        // / number of client resources kept in each endpoint's pool
+        public static final int MAX_POOLED_RESOURCES = 4;
+
+        // / client resources ready for reuse, see acquireResource()
+        protected final ConcurrentLinkedQueue<RCClientResource> pool = new ConcurrentLinkedQueue<RCClientResource>();
+        protected final AtomicInteger pooled = new AtomicInteger();
+
+        // / the read currently in flight, if any
+        protected final AtomicReference<FutureTask<Payload>> inFlight = new AtomicReference<FutureTask<Payload>>();
+
+        // / size of the last response, used to decide about compression
+        protected volatile long lastResponseSize = -1;
+        protected final Compression.SizeListener sizeListener = new Compression.SizeListener()
+        {
+            public void responseSize(long bytes)
+            {
+                lastResponseSize = bytes;
+            }
+        };
+    }
+
+    /**
+     * Payload read from an endpoint, see {@link Endpoint#read()}.
+     *
+     * The bytes are shared between all readers and must not be modified.
+     *
+     */
+    public static final class Payload
+    {
+        /**
+         * Decodes the payload's JSON.
+         *
+         * @param type
+         *            Java class to decode into
+         * @return a new object of the given type
+         */
+        public <T> T decode(final Class<T> type)
+        {
+            try
+            {
+                return PayloadCache.MAPPER.readValue(bytes, type);
+            } catch (IOException e)
+            {
+                throw new RuntimeException(
+                        "Caught exception while trying to parse "
+                                + type.getSimpleName() + "!", e);
+            }
+        }
+
+        public byte[] getBytes()
+        {
+            return bytes;
+        }
+
+        public Tag getTag()
+        {
+            return tag;
+        }
+
+        public Date getModificationDate()
+        {
+            return modificationDate;
+        }
+
+        protected Payload(final byte[] bytes, final Tag tag,
+                final Date modificationDate)
+        {
+            this.bytes = bytes;
+            this.tag = tag;
+            this.modificationDate = modificationDate;
+        }
+
+        protected final byte[] bytes;
+        protected final Tag tag;
+        protected final Date modificationDate;
+    }
+
+    /**
+     * Returns the endpoint registry of a host, creating it on first access.
+     *
+     * @param host
+     *            the device's host name (DNS) or IP address as known in the
+     *            network
+     * @return the registry
+     */
+    public static Endpoints forHost(final String host)
+    {
+        Endpoints endpoints = registry.get(host);
+        if (endpoints == null)
+        {
+            endpoints = new Endpoints(host);
+            Endpoints existing = registry.putIfAbsent(host, endpoints);
+            if (existing != null)
+            {
+                endpoints = existing;
+            }
+        }
+        return endpoints;
+    }
+
+    /**
+     * Replaces the HTTP client connector used by all client resources created
+     * from now on, e.g. by a {@link TrafficReplay}.
+     *
+     * @param replacement
+     *            the transport to use, or null for the default HTTP client
+     */
+    public static void setTransport(final Restlet replacement)
+    {
+        transport = replacement != null ? replacement : httpClient;
+    }
+
+    public String getHost()
+    {
+        return host;
+    }
+
+    /**
+     * @return the scheduler of all requests to this host
+     */
+    public RequestScheduler getScheduler()
+    {
+        return scheduler;
+    }
+
+    /// base entrypoint of the API
+    public Endpoint entrypoint()
+    {
+        return entrypoint;
+    }
+
+    /// nodes' URI
+    public Endpoint nodes()
+    {
+        return nodes;
+    }
+
+    /// the system state
+    public Endpoint system()
+    {
+        return system;
+    }
+
+    /// a single node
+    public Endpoint node(final String node)
+    {
+        return nodeEndpoints(node).node;
+    }
+
+    /// services' URI
+    public Endpoint services(final String node)
+    {
+        return nodeEndpoints(node).services;
+    }
+
+    /// a single service
+    public Endpoint service(final String node, final String service)
+    {
+        return lookup(nodeEndpoints(node).service, service,
+                ApiUrls.service(host, node, service),
+                RequestScheduler.Priority.SERVICE);
+    }
+
+    /// parameters of a single node
+    public Endpoint parameters(final String node)
+    {
+        return nodeEndpoints(node).parameters;
+    }
+
+    /// a node's single parameter
+    public Endpoint parameter(final String node, final String param)
+    {
+        return lookup(nodeEndpoints(node).parameter, param,
+                ApiUrls.parameter(host, node, param),
+                RequestScheduler.Priority.CONTROL);
+    }
+
+    /// a node's status
+    public Endpoint status(final String node)
+    {
+        return nodeEndpoints(node).status;
+    }
+
+    /**
+     * Endpoints of a single node
+     */
+    protected static final class NodeEndpoints
+    {
+        protected NodeEndpoints(final String host, final String node,
+                final RequestScheduler scheduler)
+        {
+            this.node = new Endpoint(ApiUrls.node(host, node), scheduler,
+                    RequestScheduler.Priority.SERVICE);
+            services = new Endpoint(ApiUrls.services(host, node), scheduler,
+                    RequestScheduler.Priority.SERVICE);
+            parameters = new Endpoint(ApiUrls.parameters(host, node),
+                    scheduler, RequestScheduler.Priority.CONTROL);
+            status = new Endpoint(ApiUrls.statusURL(host, node), scheduler,
+                    RequestScheduler.Priority.MONITORING);
+        }
+
+        protected final Endpoint node, services, parameters, status;
+        protected final ConcurrentMap<String, Endpoint> service = new ConcurrentHashMap<String, Endpoint>();
+        protected final ConcurrentMap<String, Endpoint> parameter = new ConcurrentHashMap<String, Endpoint>();
+    }
+
+    protected NodeEndpoints nodeEndpoints(final String node)
+    {
+        NodeEndpoints endpoints = nodeEndpoints.get(node);
+        if (endpoints == null)
+        {
+            endpoints = new NodeEndpoints(host, node, scheduler);
+            NodeEndpoints existing = nodeEndpoints.putIfAbsent(node, endpoints);
+            if (existing != null)
+            {
+                endpoints = existing;
+            }
+        }
+        return endpoints;
+    }
+
+    protected Endpoint lookup(final ConcurrentMap<String, Endpoint> map,
+            final String name, final String url,
+            final RequestScheduler.Priority writePriority)
+    {
+        Endpoint endpoint = map.get(name);
+        if (endpoint == null)
+        {
+            endpoint = new Endpoint(url, scheduler, writePriority);
+            Endpoint existing = map.putIfAbsent(name, endpoint);
+            if (existing != null)
+            {
+                endpoint = existing;
+            }
+        }
+        return endpoint;
+    }
+
+    /**
+     * @return the transport currently used by new client resources
+     */
+    protected static Restlet getTransport()
+    {
+        return transport;
+    }
+
+    /**
+     * @return true if the given transport is the shared HTTP client connector
+     */
+    protected static boolean isHttpClient(final Object transport)
+    {
+        return transport == httpClient;
+    }
+
+    /**
+     * Creates the HTTP client connector shared by all client resources.
+     */
+    protected static Restlet createTransport()
+    {
+        Client client = new Client(Protocol.HTTP);
+        try
+        {
+            client.start();
+        } catch (Exception e)
+        {
+            throw new RuntimeException("Could not start HTTP client!", e);
+        }
+        return client;
+    }
+
+    // / all registries created so far
+    private static final ConcurrentMap<String, Endpoints> registry = new ConcurrentHashMap<String, Endpoints>();
+
+    // / HTTP client connector shared by all client resources, and the
+    // / transport currently used instead
+    private static final Restlet httpClient = createTransport();
+    private static volatile Restlet transport = httpClient;
+
+    private final String host;
+    private final RequestScheduler scheduler = new RequestScheduler();
+    private final Endpoint entrypoint, nodes, system;
+    private final ConcurrentMap<String, NodeEndpoints> nodeEndpoints = new ConcurrentHashMap<String, NodeEndpoints>();
+
+    private Endpoints(final String host)
+    {
+        this.host = host;
+        entrypoint = new Endpoint(ApiUrls.entrypoint(host), scheduler,
+                RequestScheduler.Priority.SERVICE);
+        nodes = new Endpoint(ApiUrls.nodes(host), scheduler,
+                RequestScheduler.Priority.SERVICE);
+        system = new Endpoint(ApiUrls.system(host), scheduler,
+                RequestScheduler.Priority.MONITORING);
+    }
+}
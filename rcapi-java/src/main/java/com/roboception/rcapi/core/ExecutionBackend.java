@@ -0,0 +1,111 @@
+/*
+ * Copyright (c) 2018 Roboception GmbH
+ * All rights reserved
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * 1. Redistributions of source code must retain the above copyright notice,
+ * this list of conditions and the following disclaimer.
+ *
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ * this list of conditions and the following disclaimer in the documentation
+ * and/or other materials provided with the distribution.
+ *
+ * 3. Neither the name of the copyright holder nor the names of its contributors
+ * may be used to endorse or promote products derived from this software without
+ * specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package com.roboception.rcapi.core;
+
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Creates the threads all blocking REST-API calls and polling loops of this
+ * library run on.
+ *
+ * This is the platform thread implementation. When running on Java 21 or
+ * newer, the multi-release jar provides an implementation based on virtual
+ * threads instead (see src/main/java21), which can be disabled by setting the
+ * system property rcapi.virtualThreads=false.
+ *
+ */
+public final class ExecutionBackend
+{
+
+    /**
+     * Creates an executor running at most maxThreads tasks at the same time.
+     * Threads are daemon threads, so that forgotten executors do not prevent
+     * the JVM from exiting; executors should be shut down nevertheless.
+     *
+     * @param name
+     *            prefix for the threads' names
+     * @param maxThreads
+     *            maximum number of concurrently running tasks
+     * @return the executor
+     */
+    public static ExecutorService newExecutor(final String name,
+            final int maxThreads)
+    {
+        return Executors.newFixedThreadPool(maxThreads, threadFactory(name));
+    }
+
+    /**
+     * Creates a (not yet started) daemon thread, e.g. for a polling loop.
+     *
+     * @param name
+     *            the thread's name
+     * @param task
+     *            the thread's task
+     * @return the thread
+     */
+    public static Thread newThread(final String name, final Runnable task)
+    {
+        Thread thread = new Thread(task, name);
+        thread.setDaemon(true);
+        return thread;
+    }
+
+    /**
+     * @return true if tasks are executed on virtual threads
+     */
+    public static boolean isVirtual()
+    {
+        return false;
+    }
+
+    protected static ThreadFactory threadFactory(final String name)
+    {
+        return new ThreadFactory()
+        {
+            public Thread newThread(Runnable task)
+            {
+                return ExecutionBackend.newThread(
+                        name + "-" + counter.incrementAndGet(), task);
+            }
+
+            private final AtomicInteger counter = new AtomicInteger();
+        };
+    }
+
+    private ExecutionBackend()
+    {
+        // to prevent instantiation
+    }
+}
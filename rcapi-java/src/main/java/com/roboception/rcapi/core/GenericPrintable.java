@@ -33,15 +33,27 @@
 
 package com.roboception.rcapi.core;
 
+import java.io.IOException;
 import java.lang.reflect.Field;
+import java.lang.reflect.Modifier;
 import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Iterator;
 import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
 
 /**
  * Convenience class for easy printing of all fields of a class. Simply use this
- * class as super-class, and you might add fields which should be ignored when
- * printing, see ignoreFieldWhenPrinting.
+ * class as super-class, and you might annotate fields which should be ignored
+ * when printing, see {@link PrintIgnore}.
+ *
+ * The printable fields of each class are looked up via reflection only once
+ * and cached, so that instances do not carry any printing state.
  *
  * @author emmerich
  *
@@ -49,59 +61,173 @@ import java.util.List;
 public class GenericPrintable
 {
     /**
-     * Prints all fields of the called object except the ones that have been
-     * added by method ignoreFieldWhenPrinting
+     * Prints all fields of the called object except the ones annotated with
+     * {@link PrintIgnore}
      */
     public String toString()
     {
         StringBuilder sb = new StringBuilder();
-        Class<?> cls = getClass();
-        List<Field> fields = getAllFields(new ArrayList<Field>(), cls);
         try
         {
-            fields.remove(GenericPrintable.class
-                    .getDeclaredField("ignored_fields"));
-        } catch (Exception e)
+            printTo(sb);
+        } catch (IOException e)
         {
-            throw new RuntimeException("This should never happen! cls=" + cls
-                    + " fields=" + fields, e);
+            throw new RuntimeException("This should never happen!", e);
         }
+        return sb.toString();
+    }
 
-        if (fields.size() > 0)
+    /**
+     * Prints all fields of the called object except the ones annotated with
+     * {@link PrintIgnore} directly to the given output, e.g. a Writer, without
+     * building intermediate strings.
+     *
+     * @param out
+     * @throws IOException
+     *             as thrown by out
+     */
+    public void printTo(Appendable out) throws IOException
+    {
+        out.append('{');
+        boolean firstField = true;
+        for (Field field : printableFields(getClass()))
         {
-            boolean firstField = true;
-            for (Field field : fields)
+            Object value;
+            try
+            {
+                value = field.get(this);
+            } catch (IllegalAccessException e)
             {
-                if (!ignored_fields.contains(field))
+                throw new RuntimeException("This should never happen! field="
+                        + field, e);
+            }
+            if (!firstField)
+            {
+                out.append(", ");
+            }
+            out.append(field.getName()).append('=');
+            print(out, value);
+            firstField = false;
+        }
+        out.append('}');
+    }
+
+    /**
+     * Prints a single value to the given output. GenericPrintables, as well as
+     * collections and maps, are printed recursively without building
+     * intermediate strings.
+     *
+     * @param out
+     * @param value
+     * @throws IOException
+     *             as thrown by out
+     */
+    protected static void print(Appendable out, Object value)
+            throws IOException
+    {
+        if (value instanceof GenericPrintable)
+        {
+            ((GenericPrintable) value).printTo(out);
+        } else if (value instanceof Collection)
+        {
+            // / not any Iterable, e.g. JsonNodes print themselves as JSON
+            out.append('[');
+            Iterator<?> it = ((Collection<?>) value).iterator();
+            while (it.hasNext())
+            {
+                print(out, it.next());
+                if (it.hasNext())
                 {
-                    field.setAccessible(true);
-                    try
-                    {
-                        if (!firstField)
-                        {
-                            sb.append(", ");
-                        }
-                        sb.append(field.getName() + "=" + field.get(this));
-                        firstField = false;
-                    } catch (Exception e)
-                    {
-                        e.printStackTrace();
-                    }
+                    out.append(", ");
                 }
             }
+            out.append(']');
+        } else if (value instanceof Map)
+        {
+            out.append('{');
+            Iterator<? extends Map.Entry<?, ?>> it = ((Map<?, ?>) value)
+                    .entrySet().iterator();
+            while (it.hasNext())
+            {
+                Map.Entry<?, ?> entry = it.next();
+                print(out, entry.getKey());
+                out.append('=');
+                print(out, entry.getValue());
+                if (it.hasNext())
+                {
+                    out.append(", ");
+                }
+            }
+            out.append('}');
+        } else
+        {
+            out.append(String.valueOf(value));
         }
-        return "{" + sb.toString() + "}";
     }
 
     /**
-     * Child classes can use this method to ignore fields when being printed
+     * Child classes can use this method to ignore fields when being printed.
      *
+     * The field is ignored for all objects of its class, just like fields
+     * annotated with {@link PrintIgnore}, since the printable fields are
+     * cached per class.
+     *
+     * @deprecated annotate the field with {@link PrintIgnore} instead
      * @param f
      *            Field to be ignored when printed
      */
+    @Deprecated
     protected void ignoreFieldWhenPrinting(Field f)
     {
-        ignored_fields.add(f);
+        if (ignoredFields.add(f))
+        {
+            printableFieldsCache.clear();
+        }
+    }
+
+    /**
+     * @return true if the field is annotated with {@link PrintIgnore}, or has
+     *         been passed to the deprecated ignoreFieldWhenPrinting
+     */
+    protected static boolean isPrintIgnored(Field field)
+    {
+        return field.isAnnotationPresent(PrintIgnore.class)
+                || ignoredFields.contains(field);
+    }
+
+    /**
+     * Returns all non-static fields of the given class that are not ignored
+     * when printing, made accessible. The result is computed once per class
+     * and cached.
+     *
+     * @param type
+     * @return
+     */
+    protected static Field[] printableFields(Class<?> type)
+    {
+        Field[] fields = printableFieldsCache.get(type);
+        if (fields == null)
+        {
+            List<Field> all = getAllFields(new ArrayList<Field>(), type);
+            List<Field> printable = new ArrayList<Field>(all.size());
+            for (Field field : all)
+            {
+                if (!Modifier.isStatic(field.getModifiers())
+                        && !field.isSynthetic()
+                        && !isPrintIgnored(field))
+                {
+                    field.setAccessible(true);
+                    printable.add(field);
+                }
+            }
+            fields = printable.toArray(new Field[printable.size()]);
+            Field[] existing = printableFieldsCache.putIfAbsent(type, fields);
+            if (existing != null)
+            {
+                fields = existing;
+            }
+        }
+        return fields;
     }
 
     /**
@@ -123,6 +249,11 @@ public class GenericPrintable
         return fields;
     }
 
-    private final List<Field> ignored_fields = new ArrayList<Field>();
+    // / printable fields per class
+    private static final ConcurrentMap<Class<?>, Field[]> printableFieldsCache = new ConcurrentHashMap<Class<?>, Field[]>();
+
+    // / fields passed to ignoreFieldWhenPrinting
+    private static final Set<Field> ignoredFields = Collections
+            .newSetFromMap(new ConcurrentHashMap<Field, Boolean>());
 
 }
@@ -0,0 +1,209 @@
+/*
+ * Copyright (c) 2018 Roboception GmbH
+ * All rights reserved
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * 1. Redistributions of source code must retain the above copyright notice,
+ * this list of conditions and the following disclaimer.
+ *
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ * this list of conditions and the following disclaimer in the documentation
+ * and/or other materials provided with the distribution.
+ *
+ * 3. Neither the name of the copyright holder nor the names of its contributors
+ * may be used to endorse or promote products derived from this software without
+ * specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package com.roboception.rcapi.core;
+
+import java.net.Inet6Address;
+import java.net.InetAddress;
+import java.net.UnknownHostException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
+
+import org.restlet.representation.Representation;
+
+/**
+ * Resolves host names once and caches their addresses, so that requests do
+ * not each pay for a (possibly slow mDNS) lookup.
+ *
+ * Cached addresses are resolved again after their time to live, and as soon
+ * as a connection to them fails. If the lookup fails, the last known address
+ * keeps being used and the lookup is retried a few seconds later.
+ *
+ * Link-local IPv6 addresses, as often found for mDNS ".local" names, are only
+ * reachable together with their zone (interface). For hosts resolving to such
+ * scoped addresses the host name itself is used, leaving the lookup to the
+ * connection.
+ *
+ */
+public final class HostResolver
+{
+
+    /**
+     * Returns the address of a host as to be used in URLs.
+     *
+     * On a cache miss, the lookup runs on the calling thread and blocks it as
+     * long as the system's resolver takes, e.g. several seconds for an
+     * unanswered mDNS query. This also applies to the first request to a host
+     * made in a deadline-bound operation like {@link ParameterFanOut}; use
+     * {@link #prewarm(String, int)} to resolve hosts in advance.
+     *
+     * @param host
+     *            host name or IP address
+     * @return the cached address of the host, or the host itself if it cannot
+     *         be resolved or resolves to a scoped IPv6 address
+     */
+    public static String resolve(final String host)
+    {
+        Entry entry = cache.get(host);
+        long now = System.nanoTime();
+        if (entry != null && now - entry.expires < 0)
+        {
+            return entry.address;
+        }
+
+        String address;
+        long ttl = timeToLive;
+        try
+        {
+            address = toUrlHost(InetAddress.getByName(host), host);
+        } catch (UnknownHostException e)
+        {
+            address = entry != null ? entry.address : host;
+            ttl = RETRY_NANOS;
+        }
+        cache.put(host, new Entry(address, now + ttl));
+        return address;
+    }
+
+    /**
+     * Forgets the cached address of a host, e.g. after failing to connect to
+     * it, so that it is resolved again on next use.
+     *
+     * @param host
+     */
+    public static void invalidate(final String host)
+    {
+        cache.remove(host);
+    }
+
+    /**
+     * Sets how long resolved addresses are used before resolving them again.
+     * Default: 5 minutes
+     *
+     * @param time
+     * @param unit
+     */
+    public static void setTimeToLive(final long time, final TimeUnit unit)
+    {
+        if (time <= 0)
+        {
+            throw new IllegalArgumentException("Time to live must be positive!");
+        }
+        timeToLive = unit.toNanos(time);
+    }
+
+    /**
+     * Resolves a host and opens connections to it in the background, so that
+     * the first requests find them established.
+     *
+     * @param host
+     * @param connections
+     *            number of connections to open
+     */
+    public static void prewarm(final String host, final int connections)
+    {
+        resolve(host);
+        for (int i = 0; i < connections; i++)
+        {
+            ExecutionBackend.newThread("rcapi-prewarm-" + host, new Runnable()
+            {
+                public void run()
+                {
+                    try
+                    {
+                        Representation rep = Endpoints.forHost(host)
+                                .entrypoint().newResource().get();
+                        if (rep != null)
+                        {
+                            rep.exhaust();
+                            rep.release();
+                        }
+                    } catch (Exception e)
+                    {
+                        // / the actual requests will report the error
+                    }
+                }
+            }).start();
+        }
+    }
+
+    /**
+     * Formats an address as host of a URL.
+     *
+     * @param address
+     * @param host
+     *            the name the address has been resolved from
+     * @return the address, or the host name for scoped IPv6 addresses, whose
+     *         zone is not portably expressible in URLs
+     */
+    protected static String toUrlHost(final InetAddress address,
+            final String host)
+    {
+        String literal = address.getHostAddress();
+        if (address instanceof Inet6Address)
+        {
+            if (literal.indexOf('%') >= 0)
+            {
+                return host;
+            }
+            return "[" + literal + "]";
+        }
+        return literal;
+    }
+
+    /**
+     * A cached address
+     */
+    protected static final class Entry
+    {
+        protected Entry(final String address, final long expires)
+        {
+            this.address = address;
+            this.expires = expires;
+        }
+
+        protected final String address;
+
+        // / System.nanoTime() after which the address is resolved again
+        protected final long expires;
+    }
+
+    // / time after which failed lookups are retried
+    protected static final long RETRY_NANOS = TimeUnit.SECONDS.toNanos(5);
+
+    private static final ConcurrentMap<String, Entry> cache = new ConcurrentHashMap<String, Entry>();
+    private static volatile long timeToLive = TimeUnit.MINUTES.toNanos(5);
+
+    private HostResolver()
+    {
+    }
+}
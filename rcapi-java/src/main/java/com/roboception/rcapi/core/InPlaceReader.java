@@ -0,0 +1,296 @@
+/*
+ * Copyright (c) 2018 Roboception GmbH
+ * All rights reserved
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * 1. Redistributions of source code must retain the above copyright notice,
+ * this list of conditions and the following disclaimer.
+ *
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ * this list of conditions and the following disclaimer in the documentation
+ * and/or other materials provided with the distribution.
+ *
+ * 3. Neither the name of the copyright holder nor the names of its contributors
+ * may be used to endorse or promote products derived from this software without
+ * specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package com.roboception.rcapi.core;
+
+import java.io.IOException;
+import java.lang.reflect.Modifier;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
+import com.fasterxml.jackson.databind.AnnotationIntrospector;
+import com.fasterxml.jackson.databind.BeanDescription;
+import com.fasterxml.jackson.databind.DeserializationFeature;
+import com.fasterxml.jackson.databind.JavaType;
+import com.fasterxml.jackson.databind.JsonMappingException;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.exc.UnrecognizedPropertyException;
+import com.fasterxml.jackson.databind.introspect.AnnotatedMember;
+import com.fasterxml.jackson.databind.introspect.AnnotatedMethod;
+import com.fasterxml.jackson.databind.introspect.BeanPropertyDefinition;
+
+/**
+ * Reads JSON objects into existing objects, updating nested objects in place
+ * instead of replacing them, see {@link Service#callInto(Object, Object)}.
+ *
+ * Properties are found as Jackson binds them (public fields, setters, and
+ * annotated members). A property currently holding a bean, i.e. an object of
+ * a concrete class outside of java.*, is read into that bean. A property
+ * holding an ArrayList of beans is updated element by element: existing
+ * elements are read into, missing ones created, and surplus ones removed.
+ * All other values, including nulls, are created anew by the mapper.
+ *
+ * Jackson 2.9's @JsonMerge does the same, but is not available with the
+ * Jackson version used here.
+ *
+ */
+class InPlaceReader
+{
+
+    InPlaceReader(final ObjectMapper mapper)
+    {
+        this.mapper = mapper;
+    }
+
+    /**
+     * Reads the JSON object the parser is positioned at into the target.
+     *
+     * @param parser
+     *            parser whose current token is the object's START_OBJECT
+     * @param target
+     *            object to be updated
+     */
+    void read(final JsonParser parser, final Object target) throws IOException
+    {
+        if (parser.getCurrentToken() != JsonToken.START_OBJECT)
+        {
+            throw new JsonMappingException("Expected a JSON object to read "
+                    + target.getClass().getName() + " from, but got "
+                    + parser.getCurrentToken(), parser.getCurrentLocation());
+        }
+        Bean bean = beanOf(target.getClass());
+        while (parser.nextToken() == JsonToken.FIELD_NAME)
+        {
+            String name = parser.getCurrentName();
+            JsonToken token = parser.nextToken();
+            Property property = bean.properties.get(name);
+            if (property != null)
+            {
+                property.read(parser, token, target);
+            } else if (bean.ignoreUnknown || bean.ignored.contains(name))
+            {
+                parser.skipChildren();
+            } else
+            {
+                throw UnrecognizedPropertyException.from(parser, target, name,
+                        new ArrayList<Object>(bean.properties.keySet()));
+            }
+        }
+    }
+
+    /**
+     * A property of a bean as found by Jackson
+     */
+    protected class Property
+    {
+        protected void read(final JsonParser parser, final JsonToken token,
+                final Object target) throws IOException
+        {
+            Object current = accessor != null ? accessor.getValue(target)
+                    : null;
+            if (current != null && token == JsonToken.START_OBJECT
+                    && isBean(current.getClass()))
+            {
+                InPlaceReader.this.read(parser, current);
+                return;
+            }
+            if (current instanceof ArrayList && token == JsonToken.START_ARRAY
+                    && type.isCollectionLikeType()
+                    && isBean(type.getContentType().getRawClass()))
+            {
+                @SuppressWarnings("unchecked")
+                List<Object> list = (List<Object>) current;
+                readList(parser, list, type.getContentType());
+                return;
+            }
+            if (mutator == null)
+            {
+                parser.skipChildren();
+                return;
+            }
+            mutator.setValue(target, mapper.readValue(parser, type));
+        }
+
+        protected Property(final AnnotatedMember accessor,
+                final AnnotatedMember mutator, final JavaType type)
+        {
+            this.accessor = accessor;
+            this.mutator = mutator;
+            this.type = type;
+        }
+
+        // / getter or field for the current value, setter or field for the
+        // / new one, either may be null
+        protected final AnnotatedMember accessor, mutator;
+        protected final JavaType type;
+    }
+
+    /**
+     * Properties of a class, and how to handle unknown ones
+     */
+    protected static class Bean
+    {
+        protected final Map<String, Property> properties = new HashMap<String, Property>();
+        protected Set<String> ignored = Collections.emptySet();
+        protected boolean ignoreUnknown;
+    }
+
+    protected void readList(final JsonParser parser, final List<Object> list,
+            final JavaType elementType) throws IOException
+    {
+        int i = 0;
+        while (parser.nextToken() != JsonToken.END_ARRAY)
+        {
+            Object element = i < list.size() ? list.get(i) : null;
+            if (element != null
+                    && parser.getCurrentToken() == JsonToken.START_OBJECT
+                    && isBean(element.getClass()))
+            {
+                read(parser, element);
+            } else if (i < list.size())
+            {
+                list.set(i, mapper.readValue(parser, elementType));
+            } else
+            {
+                list.add(mapper.readValue(parser, elementType));
+            }
+            i++;
+        }
+        while (list.size() > i)
+        {
+            list.remove(list.size() - 1);
+        }
+    }
+
+    /**
+     * Returns the cached properties of the given class
+     */
+    protected Bean beanOf(final Class<?> clazz)
+    {
+        Bean bean = beans.get(clazz);
+        if (bean == null)
+        {
+            bean = introspect(clazz);
+            Bean previous = beans.putIfAbsent(clazz, bean);
+            if (previous != null)
+            {
+                bean = previous;
+            }
+        }
+        return bean;
+    }
+
+    protected Bean introspect(final Class<?> clazz)
+    {
+        BeanDescription description = mapper.getDeserializationConfig()
+                .introspect(mapper.constructType(clazz));
+        Bean bean = new Bean();
+        for (BeanPropertyDefinition definition : description
+                .findProperties())
+        {
+            AnnotatedMember mutator = definition.getMutator();
+            AnnotatedMember accessor = definition.getAccessor();
+            if (mutator == null && accessor == null)
+            {
+                continue;
+            }
+            JavaType type;
+            if (mutator instanceof AnnotatedMethod)
+            {
+                type = description.bindingsForBeanType().resolveType(
+                        ((AnnotatedMethod) mutator).getGenericParameterType(0));
+            } else if (mutator != null)
+            {
+                type = mutator.getType(description.bindingsForBeanType());
+            } else
+            {
+                type = accessor.getType(description.bindingsForBeanType());
+            }
+            if (mapper.getDeserializationConfig().canOverrideAccessModifiers())
+            {
+                if (mutator != null)
+                {
+                    mutator.fixAccess();
+                }
+                if (accessor != null)
+                {
+                    accessor.fixAccess();
+                }
+            }
+            bean.properties.put(definition.getName(), new Property(accessor,
+                    mutator, type));
+        }
+
+        AnnotationIntrospector introspector = mapper
+                .getDeserializationConfig().getAnnotationIntrospector();
+        Boolean ignoreUnknown = introspector
+                .findIgnoreUnknownProperties(description.getClassInfo());
+        bean.ignoreUnknown = ignoreUnknown != null ? ignoreUnknown : !mapper
+                .getDeserializationConfig().isEnabled(
+                        DeserializationFeature.FAIL_ON_UNKNOWN_PROPERTIES);
+        String[] ignored = introspector.findPropertiesToIgnore(description
+                .getClassInfo());
+        if (ignored != null)
+        {
+            bean.ignored = new HashSet<String>();
+            Collections.addAll(bean.ignored, ignored);
+        }
+        return bean;
+    }
+
+    /**
+     * @return true if values of the class are read into instead of replaced
+     */
+    protected static boolean isBean(final Class<?> clazz)
+    {
+        return !clazz.isPrimitive() && !clazz.isArray() && !clazz.isEnum()
+                && !clazz.isInterface()
+                && !Modifier.isAbstract(clazz.getModifiers())
+                && !clazz.getName().startsWith("java.")
+                && !clazz.getName().startsWith("javax.")
+                && !JsonNode.class.isAssignableFrom(clazz);
+    }
+
+    protected final ObjectMapper mapper;
+
+    // / properties per class
+    protected final ConcurrentMap<Class<?>, Bean> beans = new ConcurrentHashMap<Class<?>, Bean>();
+}
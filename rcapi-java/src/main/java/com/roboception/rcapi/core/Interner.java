@@ -0,0 +1,100 @@
+/*
+ * Copyright (c) 2018 Roboception GmbH
+ * All rights reserved
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * 1. Redistributions of source code must retain the above copyright notice,
+ * this list of conditions and the following disclaimer.
+ *
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ * this list of conditions and the following disclaimer in the documentation
+ * and/or other materials provided with the distribution.
+ *
+ * 3. Neither the name of the copyright holder nor the names of its contributors
+ * may be used to endorse or promote products derived from this software without
+ * specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package com.roboception.rcapi.core;
+
+import java.lang.ref.WeakReference;
+import java.util.Map;
+import java.util.WeakHashMap;
+
+/**
+ * Canonicalizes immutable values by content, so that equal values received
+ * from many devices (e.g. parameter metadata of devices running the same
+ * firmware) are held only once.
+ *
+ * Values are referenced weakly: a canonical value is dropped as soon as no
+ * one else refers to it anymore, e.g. after all devices of an old firmware
+ * version have been disconnected.
+ *
+ * Thread-safe. The values are spread over several independently locked
+ * segments by their hash, so that concurrent callers rarely wait for each
+ * other.
+ *
+ */
+class Interner<T>
+{
+
+    /**
+     * Returns the canonical instance equal to the given value, which becomes
+     * the canonical instance itself if there is none yet.
+     *
+     * @param value
+     *            must not be modified after being interned
+     * @return the canonical instance, or null if value is null
+     */
+    T intern(final T value)
+    {
+        if (value == null)
+        {
+            return null;
+        }
+        int hash = value.hashCode();
+        Map<T, WeakReference<T>> segment = segments[(hash ^ hash >>> 16)
+                & (SEGMENTS - 1)];
+        synchronized (segment)
+        {
+            WeakReference<T> ref = segment.get(value);
+            T existing = ref != null ? ref.get() : null;
+            if (existing != null)
+            {
+                return existing;
+            }
+            segment.put(value, new WeakReference<T>(value));
+            return value;
+        }
+    }
+
+    @SuppressWarnings({ "unchecked", "rawtypes" })
+    Interner()
+    {
+        segments = new Map[SEGMENTS];
+        for (int i = 0; i < SEGMENTS; i++)
+        {
+            segments[i] = new WeakHashMap<T, WeakReference<T>>();
+        }
+    }
+
+    // / number of segments, a power of two
+    private static final int SEGMENTS = 16;
+
+    // / canonical instances, keyed by themselves
+    private final Map<T, WeakReference<T>>[] segments;
+}
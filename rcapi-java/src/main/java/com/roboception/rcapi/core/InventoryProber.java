@@ -0,0 +1,314 @@
+/*
+ * Copyright (c) 2018 Roboception GmbH
+ * All rights reserved
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * 1. Redistributions of source code must retain the above copyright notice,
+ * this list of conditions and the following disclaimer.
+ *
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ * this list of conditions and the following disclaimer in the documentation
+ * and/or other materials provided with the distribution.
+ *
+ * 3. Neither the name of the copyright holder nor the names of its contributors
+ * may be used to endorse or promote products derived from this software without
+ * specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package com.roboception.rcapi.core;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+import org.restlet.Client;
+import org.restlet.Context;
+import org.restlet.Restlet;
+import org.restlet.data.Protocol;
+
+/**
+ * Checks which of many devices are reachable by querying their system state
+ * concurrently, with short timeouts so that offline devices do not hold up
+ * the others. Example:
+ *
+ * <pre>
+ * InventoryProber.Result result = InventoryProber.create()
+ *         .withConnectTimeout(300, TimeUnit.MILLISECONDS).probe(hosts);
+ * for (Map.Entry&lt;String, Visard.SysInfo&gt; device : result.getReachable()
+ *         .entrySet())
+ * {
+ *     System.out.println(device.getKey() + &quot;: &quot; + device.getValue().serial);
+ * }
+ * </pre>
+ *
+ * Hosts may include a port, e.g. "localhost:8080". Probed hosts are not
+ * registered with {@link Endpoints}, and host names are resolved by the probe's
+ * own connections rather than cached by {@link HostResolver}.
+ *
+ */
+public class InventoryProber
+{
+
+    /**
+     * Outcome of a probe, per device.
+     *
+     */
+    public static class Result extends GenericPrintable
+    {
+        /**
+         * @return host to the system state reported by the device, in the
+         *         order the hosts were given
+         */
+        public Map<String, Visard.SysInfo> getReachable()
+        {
+            return reachable;
+        }
+
+        /**
+         * @return hosts which did not answer properly, in the order they were
+         *         given
+         */
+        public List<String> getUnreachable()
+        {
+            return new ArrayList<String>(errors.keySet());
+        }
+
+        /**
+         * @return unreachable host to the cause of failure, e.g. a
+         *         TimeoutException if the deadline has passed before the
+         *         device answered
+         */
+        public Map<String, Exception> getErrors()
+        {
+            return errors;
+        }
+
+        /**
+         * @return host to the duration of the query in ns, for reachable
+         *         devices
+         */
+        public Map<String, Long> getLatencies()
+        {
+            return latencies;
+        }
+
+        protected final Map<String, Visard.SysInfo> reachable = new LinkedHashMap<String, Visard.SysInfo>();
+        protected final Map<String, Exception> errors = new LinkedHashMap<String, Exception>();
+        protected final Map<String, Long> latencies = new LinkedHashMap<String, Long>();
+    }
+
+    /**
+     * @return a prober with default settings
+     */
+    public static InventoryProber create()
+    {
+        return new InventoryProber();
+    }
+
+    /**
+     * Sets the time to wait for a connection to be established (default:
+     * 500 ms).
+     *
+     * @param timeout
+     * @param unit
+     * @return reference to this InventoryProber
+     */
+    public InventoryProber withConnectTimeout(final long timeout,
+            final TimeUnit unit)
+    {
+        connectTimeoutMs = (int) Math.max(1, unit.toMillis(timeout));
+        return this;
+    }
+
+    /**
+     * Sets the time to wait for the answer on an established connection
+     * (default: 2 s).
+     *
+     * @param timeout
+     * @param unit
+     * @return reference to this InventoryProber
+     */
+    public InventoryProber withReadTimeout(final long timeout,
+            final TimeUnit unit)
+    {
+        readTimeoutMs = (int) Math.max(1, unit.toMillis(timeout));
+        return this;
+    }
+
+    /**
+     * Limits the number of devices queried at the same time (default: 64).
+     *
+     * @param maxParallel
+     * @return reference to this InventoryProber
+     */
+    public InventoryProber withMaxParallel(final int maxParallel)
+    {
+        if (maxParallel < 1)
+        {
+            throw new IllegalArgumentException(
+                    "maxParallel must be at least 1!");
+        }
+        this.maxParallel = maxParallel;
+        return this;
+    }
+
+    /**
+     * Sets the time the whole probe has to be finished within (default: 10
+     * s).
+     *
+     * @param timeout
+     * @param unit
+     * @return reference to this InventoryProber
+     */
+    public InventoryProber withDeadline(final long timeout, final TimeUnit unit)
+    {
+        this.deadlineNanos = unit.toNanos(timeout);
+        return this;
+    }
+
+    /**
+     * Queries the system state of the given hosts.
+     *
+     * @param hosts
+     *            the devices' host names (DNS) or IP addresses as known in the
+     *            network, optionally with port
+     * @return the outcome, keyed by host
+     */
+    public Result probe(final Collection<String> hosts)
+    {
+        Result result = new Result();
+        Set<String> uniqueHosts = new LinkedHashSet<String>(hosts);
+        if (uniqueHosts.isEmpty())
+        {
+            return result;
+        }
+
+        final Client client = createClient();
+        List<Callable<Object[]>> tasks = new ArrayList<Callable<Object[]>>();
+        for (final String host : uniqueHosts)
+        {
+            tasks.add(new Callable<Object[]>()
+            {
+                public Object[] call()
+                {
+                    long start = System.nanoTime();
+                    // / not via Endpoints.forHost, which would keep a registry
+                    // / for each probed host
+                    RCClientResource resource = new RCClientResource(ApiUrls
+                            .system(host));
+                    Restlet transport = Endpoints.getTransport();
+                    resource.setNext(Endpoints.isHttpClient(transport) ? client
+                            : transport);
+                    resource.setResponseEntityBuffering(true);
+                    Visard.SysInfo sysInfo = resource.get(Visard.SysInfo.class);
+                    return new Object[] { sysInfo, System.nanoTime() - start };
+                }
+            });
+        }
+
+        ExecutorService executor = ExecutionBackend.newExecutor(
+                "rcapi-inventory", Math.min(uniqueHosts.size(), maxParallel));
+        try
+        {
+            List<Future<Object[]>> futures = executor.invokeAll(tasks,
+                    deadlineNanos, TimeUnit.NANOSECONDS);
+            int i = 0;
+            for (String host : uniqueHosts)
+            {
+                Future<Object[]> future = futures.get(i++);
+                try
+                {
+                    Object[] outcome = future.get();
+                    if (outcome[0] == null)
+                    {
+                        throw new ExecutionException(new IllegalStateException(
+                                "Device returned no system state!"));
+                    }
+                    result.reachable.put(host, (Visard.SysInfo) outcome[0]);
+                    result.latencies.put(host, (Long) outcome[1]);
+                } catch (CancellationException e)
+                {
+                    result.errors.put(host, new TimeoutException(
+                            "No answer within deadline!"));
+                } catch (ExecutionException e)
+                {
+                    result.errors.put(host, e.getCause() instanceof Exception
+                            ? (Exception) e.getCause() : e);
+                }
+            }
+        } catch (InterruptedException e)
+        {
+            Thread.currentThread().interrupt();
+            throw new RuntimeException("Interrupted during inventory probe", e);
+        } finally
+        {
+            executor.shutdownNow();
+            try
+            {
+                client.stop();
+            } catch (Exception e)
+            {
+                // nothing left to do
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Creates an HTTP client connector with this prober's timeouts.
+     */
+    protected Client createClient()
+    {
+        Context context = new Context();
+        String connect = Integer.toString(connectTimeoutMs);
+        String read = Integer.toString(readTimeoutMs);
+        // / names differ between the connectors Restlet may be using
+        context.getParameters().add("socketConnectTimeoutMs", connect);
+        context.getParameters().add("connectTimeout", connect);
+        context.getParameters().add("readTimeout", read);
+        context.getParameters().add("socketTimeout", read);
+        Client client = new Client(context, Protocol.HTTP);
+        try
+        {
+            client.start();
+        } catch (Exception e)
+        {
+            throw new RuntimeException("Could not start HTTP client!", e);
+        }
+        return client;
+    }
+
+    protected int connectTimeoutMs = 500;
+    protected int readTimeoutMs = 2000;
+    protected int maxParallel = 64;
+    protected long deadlineNanos = TimeUnit.SECONDS.toNanos(10);
+
+    protected InventoryProber()
+    {
+    }
+}
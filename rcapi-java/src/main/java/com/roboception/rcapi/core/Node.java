@@ -33,16 +33,20 @@
 
 package com.roboception.rcapi.core;
 
+import java.io.IOException;
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.HashMap;
 import java.util.Iterator;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Map.Entry;
+import java.util.concurrent.TimeUnit;
 
-import org.restlet.resource.ClientResource;
 import org.restlet.resource.Get;
 import org.restlet.resource.Put;
+import org.reactivestreams.Publisher;
 
 import com.fasterxml.jackson.databind.JsonNode;
 
@@ -129,10 +133,42 @@ public class Node extends GenericPrintable
          */
         public Parameters syncFromRemote()
         {
-            this.setParamValuesFrom(remote.get());
+            syncFromRemoteIfChanged();
             return this;
         }
 
+        /**
+         * Overwrite the local parameters with values from the remote
+         * representatives, unless the remote parameters did not change since
+         * the last sync and none of the local parameters has changed since
+         * then, neither by setting its value nor by any other sync.
+         *
+         * @return true if the local parameters have been updated, false if
+         *         nothing changed
+         */
+        public boolean syncFromRemoteIfChanged()
+        {
+            synchronized (cache)
+            {
+                for (int i = 0; i < synced.length; i++)
+                {
+                    if (paramList.get(i).state != synced[i])
+                    {
+                        cache.invalidate();
+                        break;
+                    }
+                }
+                byte[] payload = cache.fetch(endpoint);
+                if (payload == null)
+                {
+                    return false;
+                }
+                this.setParamValuesFrom(decode(payload));
+                rememberSynced();
+                return true;
+            }
+        }
+
         /**
          * Get read, write and sync access to a single Parameter of this node.
          *
@@ -154,24 +190,70 @@ public class Node extends GenericPrintable
         @Override
         public String toString()
         {
-            return paramList.toString();
+            StringBuilder sb = new StringBuilder();
+            try
+            {
+                printTo(sb);
+            } catch (IOException e)
+            {
+                throw new RuntimeException("This should never happen!", e);
+            }
+            return sb.toString();
+        }
+
+        /**
+         * Prints all parameters directly to the given output, e.g. a Writer,
+         * without building intermediate strings.
+         *
+         * @param out
+         * @throws IOException
+         *             as thrown by out
+         */
+        public void printTo(Appendable out) throws IOException
+        {
+            GenericPrintable.print(out, paramList);
         }
 
         protected Parameters(final String remoteHost, final String node)
         {
-            ClientResource resource = new RCClientResource(ApiUrls.parameters(
-                    remoteHost, node));
-            resource.setRequestEntityBuffering(true);
-            resource.setResponseEntityBuffering(true);
-            remote = resource.wrap(ClientInterface.class);
+            endpoint = Endpoints.forHost(remoteHost).parameters(node);
+            remote = endpoint.newResource().wrap(ClientInterface.class);
 
             // initial full sync from remote, creating hash map as well
-            paramList = remote.get();
-            paramMap = new HashMap<String, Parameter>();
+            paramList = decode(cache.fetch(endpoint));
+            Map<String, Parameter> params = new HashMap<String, Parameter>();
             for (Parameter param : paramList)
             {
                 param.setRemote(remoteHost, node);
-                paramMap.put(param.getName(), param);
+                param.shareMetadata();
+                params.put(param.getName(), param);
+            }
+            paramMap = Collections.unmodifiableMap(params);
+            synced = new Parameter.State[paramList.size()];
+            rememberSynced();
+        }
+
+        /**
+         * Remembers the parameters' states as set from the cached payload.
+         */
+        protected void rememberSynced()
+        {
+            for (int i = 0; i < synced.length; i++)
+            {
+                synced[i] = paramList.get(i).state;
+            }
+        }
+
+        protected static ParamListType decode(final byte[] payload)
+        {
+            try
+            {
+                return PayloadCache.MAPPER.readValue(payload,
+                        ParamListType.class);
+            } catch (IOException e)
+            {
+                throw new RuntimeException(
+                        "Caught exception while trying to parse parameters!", e);
             }
         }
 
@@ -185,7 +267,7 @@ public class Node extends GenericPrintable
         {
             for (Parameter otherParam : others)
             {
-                Parameter localParam = paramMap.get(otherParam.name);
+                Parameter localParam = paramMap.get(otherParam.getName());
                 if (localParam != null)
                 {
                     localParam.setFromOther(otherParam);
@@ -193,6 +275,47 @@ public class Node extends GenericPrintable
             }
         }
 
+        /**
+         * Queries all parameters of a remote node without creating a local
+         * Parameters representative.
+         *
+         * @param remoteHost
+         * @param node
+         * @return list of the remote parameters
+         */
+        protected static ParamListType getAll(final String remoteHost,
+                final String node)
+        {
+            return Endpoints.forHost(remoteHost).parameters(node).newResource()
+                    .get(ParamListType.class);
+        }
+
+        /**
+         * Sets the values of several parameters of a remote node in a single
+         * request without creating a local Parameters representative.
+         *
+         * @param remoteHost
+         * @param node
+         * @param values
+         *            parameter names to values
+         * @return list of the remote parameters as returned by the remote node
+         */
+        protected static ParamListType putValues(final String remoteHost,
+                final String node, final Map<String, ?> values)
+        {
+            List<Map<String, Object>> body = new ArrayList<Map<String, Object>>();
+            for (Entry<String, ?> value : values.entrySet())
+            {
+                Map<String, Object> param = new LinkedHashMap<String, Object>();
+                param.put("name", value.getKey());
+                param.put("value", value.getValue());
+                body.add(param);
+            }
+
+            return Endpoints.forHost(remoteHost).parameters(node).newResource()
+                    .put(body, ParamListType.class);
+        }
+
         @SuppressWarnings("serial")
         protected static class ParamListType extends ArrayList<Parameter>
         {
@@ -211,7 +334,19 @@ public class Node extends GenericPrintable
         // / remote resource of this Parameter
         protected ClientInterface remote;
 
-        // / this node's parameters
+        // / template for requests to the remote parameters
+        protected final Endpoints.Endpoint endpoint;
+
+        // / last payload from remote, to skip decoding unchanged ones; syncs
+        // / fetch and apply payloads while holding its lock
+        protected final PayloadCache cache = new PayloadCache();
+
+        // / parameters' states as set from the cached payload; any other state
+        // / means the payload no longer reflects the local values (guarded by
+        // / the cache's lock)
+        protected final Parameter.State[] synced;
+
+        // / this node's parameters, never modified after construction
         protected final ParamListType paramList;
         protected final Map<String, Parameter> paramMap;
 
@@ -240,12 +375,76 @@ public class Node extends GenericPrintable
         // / the node-specific status values
         public Map<String, String> values;
 
+        /**
+         * Creates a publisher emitting snapshots of a node's status at the
+         * given rate. Share the publisher between all subscribers interested
+         * in the same status, as each publisher polls the remote status on
+         * its own.
+         *
+         * @param remoteHost
+         * @param node
+         * @param period
+         *            time between two snapshots
+         * @param unit
+         *            unit of period
+         * @return the publisher
+         */
+        public static Publisher<Status> publisher(final String remoteHost,
+                final String node, final long period, final TimeUnit unit)
+        {
+            final Endpoints.Endpoint endpoint = Endpoints.forHost(remoteHost)
+                    .status(node);
+            return new PollingPublisher<Status>("rcapi-status-" + node,
+                    new PollingPublisher.Source<Status>()
+                    {
+                        public Status poll()
+                        {
+                            return new Status(endpoint.read().decode(
+                                    JsonNode.class));
+                        }
+                    }, period, unit);
+        }
+
         public Status syncFromRemote()
         {
-            setFromJson(resource.get(JsonNode.class));
+            syncFromRemoteIfChanged();
             return this;
         }
 
+        /**
+         * Updates this status from remote, unless the remote status did not
+         * change since the last sync.
+         *
+         * @return true if this status has been updated, false if nothing
+         *         changed
+         */
+        public boolean syncFromRemoteIfChanged()
+        {
+            if (endpoint == null)
+            {
+                throw new IllegalStateException(
+                        "Status snapshots cannot be synced from remote!");
+            }
+            synchronized (cache)
+            {
+                byte[] payload = cache.fetch(endpoint);
+                if (payload == null)
+                {
+                    return false;
+                }
+                try
+                {
+                    setFromJson(PayloadCache.MAPPER.readTree(payload));
+                } catch (IOException e)
+                {
+                    throw new RuntimeException(
+                            "Caught exception while trying to parse status!",
+                            e);
+                }
+                return true;
+            }
+        }
+
         protected void setFromJson(final JsonNode json)
         {
             processingStatus = ProcessingStatus.valueOf(json.get("status")
@@ -267,18 +466,30 @@ public class Node extends GenericPrintable
 
         protected Status(final String remoteHost, final String node)
         {
-            try
-            {
-                ignoreFieldWhenPrinting(getClass().getDeclaredField("resource"));
-            } catch (Exception e)
-            {
-                throw new RuntimeException(e);
-            }
-            resource = new RCClientResource(ApiUrls.statusURL(remoteHost, node));
+            endpoint = Endpoints.forHost(remoteHost).status(node);
             syncFromRemote();
         }
 
-        protected final ClientResource resource;
+        /**
+         * Creates a status snapshot not connected to the remote status.
+         *
+         * @param json
+         *            the status' JSON representation
+         */
+        protected Status(final JsonNode json)
+        {
+            endpoint = null;
+            setFromJson(json);
+        }
+
+        // / template for requests to the remote status
+        @PrintIgnore
+        protected final Endpoints.Endpoint endpoint;
+
+        // / last payload from remote, to skip decoding unchanged ones; syncs
+        // / fetch and apply payloads while holding its lock
+        @PrintIgnore
+        protected final PayloadCache cache = new PayloadCache();
     }
 
     public static Node connectTo(final String remoteHost, final String node)
@@ -352,39 +563,45 @@ public class Node extends GenericPrintable
     }
 
     @Override
-    public String toString()
+    public void printTo(Appendable out) throws IOException
     {
-        StringBuilder sb = new StringBuilder(info.name);
+        out.append(info.name);
 
         // Node status
-        sb.append("\nstatus: " + status);
+        out.append("\nstatus: ");
+        status.printTo(out);
 
         // Node params
         {
-            sb.append("\nparameters: {");
+            out.append("\nparameters: {");
             Iterator<Parameter> paramIt = params.paramList.iterator();
             while (paramIt.hasNext())
             {
                 Parameter param = paramIt.next();
-                sb.append(param.getName() + "=" + param.getValue()
-                        + (paramIt.hasNext() ? "," : ""));
+                out.append(param.getName()).append('=');
+                print(out, param.getValue());
+                if (paramIt.hasNext())
+                {
+                    out.append(',');
+                }
             }
-            sb.append("}");
+            out.append('}');
         }
 
         // Node services
         {
-            sb.append("\nservices: {");
+            out.append("\nservices: {");
             Iterator<String> servIt = services.keySet().iterator();
             while (servIt.hasNext())
             {
-                String serviceName = servIt.next();
-                sb.append(serviceName + (servIt.hasNext() ? "," : ""));
+                out.append(servIt.next());
+                if (servIt.hasNext())
+                {
+                    out.append(',');
+                }
             }
-            sb.append("}");
+            out.append('}');
         }
-
-        return sb.toString();
     }
 
     /**
@@ -398,8 +615,8 @@ public class Node extends GenericPrintable
     {
 
         // gather initial info about this node
-        ClientResource tmpInfoResource = new RCClientResource(ApiUrls.node(remoteHost, node));
-        info = tmpInfoResource.get(Info.class);
+        Endpoints endpoints = Endpoints.forHost(remoteHost);
+        info = endpoints.node(node).newResource().get(Info.class);
 
         // initial creation of params - syncing from remote of all param data
         params = Parameters.connectTo(remoteHost, node);
@@ -410,14 +627,12 @@ public class Node extends GenericPrintable
         // creation of services - one sync from remote for getting all
         // descriptions
         services = new HashMap<String, Service>();
-        ClientResource tmpServicesGetter = new RCClientResource(
-                ApiUrls.services(remoteHost, node));
-        _ServiceInfoList serviceInfos = tmpServicesGetter
+        _ServiceInfoList serviceInfos = endpoints.services(node).newResource()
                 .get(_ServiceInfoList.class);
         for (Service.Info serviceInfo : serviceInfos)
         {
             Service s = new Service();
-            s.info = serviceInfo;
+            s.info = serviceInfo.share();
             s.setRemote(remoteHost, node, serviceInfo.name, false);
             services.put(serviceInfo.name, s);
         }
@@ -33,12 +33,16 @@
 
 package com.roboception.rcapi.core;
 
-import org.restlet.resource.ClientResource;
+import java.io.IOException;
+import java.util.Arrays;
+
 import org.restlet.resource.Get;
 import org.restlet.resource.Put;
 
+import com.fasterxml.jackson.annotation.JsonCreator;
 import com.fasterxml.jackson.annotation.JsonIgnore;
 import com.fasterxml.jackson.annotation.JsonProperty;
+import com.fasterxml.jackson.annotation.JsonValue;
 import com.roboception.rcapi.core.GenericPrintable;
 
 /**
@@ -50,11 +54,215 @@ import com.roboception.rcapi.core.GenericPrintable;
  * values. This class offers methods to get and set this data as well as to
  * synchronize the local entity to/from the remote resource.
  *
+ * The description, type, min, max and default values of a Parameter are held
+ * in a {@link Metadata} instance shared by all Parameters with equal metadata,
+ * so that holding the same Parameters of many devices costs little more than
+ * their values.
+ *
+ * A Parameter can be shared between threads: its properties are held in an
+ * immutable {@link State} that is replaced as a whole on each change, so that
+ * readers never block and never see a partially updated parameter. Use
+ * {@link #getState()} to read several properties consistently.
+ *
  * @author emmerich
  */
 public class Parameter extends GenericPrintable
 {
 
+    /**
+     * Immutable description of a Parameter: everything but its value.
+     *
+     * Metadata is shared by content: all Parameters connected to a device
+     * and having equal metadata, e.g. the same parameter of many devices
+     * running the same firmware, refer to the same instance. Parameters
+     * merely decoded from JSON keep their own instance.
+     */
+    public static final class Metadata extends GenericPrintable
+    {
+        /**
+         * @return the shared Metadata with the given properties
+         */
+        public static Metadata of(final String name, final String description,
+                final String type, final Object min, final Object max,
+                final Object default_value)
+        {
+            return shared.intern(new Metadata(name, description, type, min,
+                    max, default_value));
+        }
+
+        public String getName()
+        {
+            return name;
+        }
+
+        public String getDescription()
+        {
+            return description;
+        }
+
+        public String getType()
+        {
+            return type;
+        }
+
+        public Object getMin()
+        {
+            return min;
+        }
+
+        public Object getMax()
+        {
+            return max;
+        }
+
+        public Object getDefault()
+        {
+            return default_value;
+        }
+
+        @Override
+        public boolean equals(final Object obj)
+        {
+            if (this == obj)
+            {
+                return true;
+            }
+            if (!(obj instanceof Metadata))
+            {
+                return false;
+            }
+            Metadata other = (Metadata) obj;
+            return equal(name, other.name)
+                    && equal(description, other.description)
+                    && equal(type, other.type) && equal(min, other.min)
+                    && equal(max, other.max)
+                    && equal(default_value, other.default_value);
+        }
+
+        @Override
+        public int hashCode()
+        {
+            return Arrays.hashCode(new Object[] { name, description, type,
+                    min, max, default_value });
+        }
+
+        protected static boolean equal(final Object a, final Object b)
+        {
+            return a == null ? b == null : a.equals(b);
+        }
+
+        protected Metadata(final String name, final String description,
+                final String type, final Object min, final Object max,
+                final Object default_value)
+        {
+            this.name = name;
+            this.description = description;
+            this.type = type;
+            this.min = min;
+            this.max = max;
+            this.default_value = default_value;
+        }
+
+        // / Properties of an rcapi Parameter except its value
+        protected final String name, description, type;
+        protected final Object min, max, default_value;
+
+        // / canonical instances of all Parameters
+        private static final Interner<Metadata> shared = new Interner<Metadata>();
+    }
+
+    /**
+     * Immutable snapshot of a Parameter's properties: its shared
+     * {@link Metadata} and its value.
+     */
+    public static final class State extends GenericPrintable
+    {
+        @JsonIgnore
+        public Metadata getMetadata()
+        {
+            return metadata;
+        }
+
+        public String getName()
+        {
+            return metadata.name;
+        }
+
+        public String getDescription()
+        {
+            return metadata.description;
+        }
+
+        public String getType()
+        {
+            return metadata.type;
+        }
+
+        public Object getValue()
+        {
+            return value;
+        }
+
+        public Object getMin()
+        {
+            return metadata.min;
+        }
+
+        public Object getMax()
+        {
+            return metadata.max;
+        }
+
+        @JsonProperty("default")
+        public Object getDefault()
+        {
+            return metadata.default_value;
+        }
+
+        /**
+         * Prints the properties of the Parameter, as if they were fields of
+         * this State
+         */
+        @Override
+        public void printTo(Appendable out) throws IOException
+        {
+            out.append("{name=").append(metadata.name);
+            out.append(", description=").append(metadata.description);
+            out.append(", type=").append(metadata.type);
+            out.append(", value=");
+            print(out, value);
+            out.append(", min=");
+            print(out, metadata.min);
+            out.append(", max=");
+            print(out, metadata.max);
+            out.append(", default_value=");
+            print(out, metadata.default_value);
+            out.append('}');
+        }
+
+        protected State(final Metadata metadata, final Object value,
+                final boolean locallyModified)
+        {
+            this.metadata = metadata;
+            this.value = value;
+            this.locallyModified = locallyModified;
+        }
+
+        protected State withValue(final Object value)
+        {
+            return new State(metadata, value, true);
+        }
+
+        // / shared description of the Parameter
+        protected final Metadata metadata;
+
+        // / the Parameter's value
+        protected final Object value;
+
+        // / whether the value has been set locally since the last sync
+        protected final boolean locallyModified;
+    }
+
     /**
      * Create a Parameter and connect it's inner client with a remote Parameter.
      * During creation an initial synchronization from the remote Parameter is
@@ -75,49 +283,71 @@ public class Parameter extends GenericPrintable
         return (new Parameter(name, host, node)).syncFromRemote();
     }
 
+    /**
+     * @return a consistent snapshot of all properties of this Parameter
+     */
+    @JsonValue
+    public State getState()
+    {
+        return state;
+    }
+
+    /**
+     * @return the description of this Parameter, shared with all Parameters
+     *         having the same metadata
+     */
+    @JsonIgnore
+    public Metadata getMetadata()
+    {
+        return state.metadata;
+    }
+
     public String getName()
     {
-        return name;
+        return state.metadata.name;
     };
 
     public String getDescription()
     {
-        return description;
+        return state.metadata.description;
     };
 
     public String getType()
     {
-        return type;
+        return state.metadata.type;
     };
 
     @SuppressWarnings("unchecked")
     public <T> T getValue()
     {
-        return (T) value;
+        return (T) state.value;
     };
 
     @SuppressWarnings("unchecked")
     public <T> T getMin()
     {
-        return (T) min;
+        return (T) state.metadata.min;
     };
 
     @SuppressWarnings("unchecked")
     public <T> T getMax()
     {
-        return (T) max;
+        return (T) state.metadata.max;
     };
 
     @SuppressWarnings("unchecked")
     public <T> T getDefault()
     {
-        return (T) default_value;
+        return (T) state.metadata.default_value;
     };
 
     public Parameter setValue(final Object value)
     {
         // TODO: check for type mismatch
-        this.value = value;
+        synchronized (this)
+        {
+            state = state.withValue(value);
+        }
         return this;
     };
 
@@ -125,11 +355,24 @@ public class Parameter extends GenericPrintable
      * Update the remote Parameter's value with the local value.
      *
      * Note: After syncing to remote, this local entity is updated with the
-     * values from remote.
+     * values from remote, unless its value has been set again meanwhile.
      */
     public Parameter syncToRemote()
     {
-        this.setFromOther(remote.put(this));
+        State sent = state;
+        State got = remote.put(sent).state;
+        synchronized (this)
+        {
+            Metadata metadata = share(got.metadata);
+            if (state == sent)
+            {
+                state = new State(metadata, got.value, false);
+            } else
+            {
+                // / keep the newer local value for the next sync
+                state = new State(metadata, state.value, true);
+            }
+        }
         return this;
     }
 
@@ -138,10 +381,19 @@ public class Parameter extends GenericPrintable
      */
     public Parameter syncFromRemote()
     {
-        this.setFromOther(remote.get());
+        this.setFromOther(endpoint.read().decode(Parameter.class));
         return this;
     }
 
+    /**
+     * Prints the properties of this Parameter
+     */
+    @Override
+    public void printTo(Appendable out) throws IOException
+    {
+        state.printTo(out);
+    }
+
     /**
      * Set this Parameter's values from other Parameter
      *
@@ -149,13 +401,60 @@ public class Parameter extends GenericPrintable
      */
     protected void setFromOther(Parameter other)
     {
-        name = other.name;
-        description = other.description;
-        type = other.type;
-        value = other.value;
-        min = other.min;
-        max = other.max;
-        default_value = other.default_value;
+        State from = other.state;
+        synchronized (this)
+        {
+            state = new State(share(from.metadata), from.value, false);
+        }
+    }
+
+    /**
+     * Replaces this Parameter's metadata with the shared instance.
+     */
+    protected void shareMetadata()
+    {
+        synchronized (this)
+        {
+            state = new State(Metadata.shared.intern(state.metadata),
+                    state.value, state.locallyModified);
+        }
+    }
+
+    /**
+     * Returns the shared instance of received metadata. Usually, the metadata
+     * did not change, and the current instance is kept without consulting
+     * the shared instances.
+     *
+     * @param received
+     * @return the current metadata if equal to the received one, else the
+     *         shared instance equal to the received one
+     */
+    protected Metadata share(final Metadata received)
+    {
+        Metadata current = state.metadata;
+        return current.equals(received) ? current : Metadata.shared
+                .intern(received);
+    }
+
+    /**
+     * Compares two parameter values, treating numbers of different boxed types
+     * (e.g. Integer and Double) as equal if they denote the same value.
+     *
+     * @param a
+     * @param b
+     * @return true if both values are equal
+     */
+    protected static boolean valuesEqual(final Object a, final Object b)
+    {
+        if (a == null || b == null)
+        {
+            return a == b;
+        }
+        if (a instanceof Number && b instanceof Number)
+        {
+            return ((Number) a).doubleValue() == ((Number) b).doubleValue();
+        }
+        return a.equals(b);
     }
 
     /**
@@ -166,18 +465,14 @@ public class Parameter extends GenericPrintable
      */
     protected void setRemote(final String remoteHost, final String remoteNode)
     {
-        ClientResource resource = new RCClientResource(ApiUrls.parameter(
-                remoteHost, remoteNode, this.name));
-        resource.setRequestEntityBuffering(true);
-        resource.setResponseEntityBuffering(true);
-        remote = resource.wrap(ClientInterface.class);
+        endpoint = Endpoints.forHost(remoteHost).parameter(remoteNode,
+                getName());
+        remote = endpoint.newResource().wrap(ClientInterface.class);
     }
 
-    // / Properties of an rcapi Parameter
-    protected String name, description, type;
-    protected Object value, min, max;
-    @JsonProperty("default")
-    protected Object default_value;
+    // / current properties, replaced as a whole by writers synchronizing on
+    // / this Parameter
+    protected volatile State state;
 
     /**
      * client interface for sending and retrieving the Parameter to and from the
@@ -189,13 +484,18 @@ public class Parameter extends GenericPrintable
         public Parameter get();
 
         @Put
-        public Parameter put(Parameter p);
+        public Parameter put(State p);
     }
 
     // / remote resource of this Parameter
     @JsonIgnore
     protected ClientInterface remote;
 
+    // / endpoint of this Parameter, for coalesced reads
+    @JsonIgnore
+    @PrintIgnore
+    protected Endpoints.Endpoint endpoint;
+
     /**
      * Constructor for Parameter with type and name
      *
@@ -206,14 +506,23 @@ public class Parameter extends GenericPrintable
      */
     protected Parameter(final String name, final String host, final String node)
     {
-        this();
-        value = min = max = default_value = null;
-        this.name = name;
+        this(name, null, null, null, null, null, null);
         setRemote(host, node);
     }
 
-    // / private default constructor for JSON
-    private Parameter()
+    // / constructor for JSON and detached copies
+    @JsonCreator
+    protected Parameter(@JsonProperty("name") final String name,
+            @JsonProperty("description") final String description,
+            @JsonProperty("type") final String type,
+            @JsonProperty("value") final Object value,
+            @JsonProperty("min") final Object min,
+            @JsonProperty("max") final Object max,
+            @JsonProperty("default") final Object default_value)
     {
+        // / not shared yet, as most decoded Parameters are only used to update
+        // / connected ones
+        state = new State(new Metadata(name, description, type, min, max,
+                default_value), value, false);
     }
 }
@@ -0,0 +1,277 @@
+/*
+ * Copyright (c) 2018 Roboception GmbH
+ * All rights reserved
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * 1. Redistributions of source code must retain the above copyright notice,
+ * this list of conditions and the following disclaimer.
+ *
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ * this list of conditions and the following disclaimer in the documentation
+ * and/or other materials provided with the distribution.
+ *
+ * 3. Neither the name of the copyright holder nor the names of its contributors
+ * may be used to endorse or promote products derived from this software without
+ * specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package com.roboception.rcapi.core;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+/**
+ * Sets the same parameter to the same value on many devices at once.
+ *
+ * All writes are issued concurrently by a bounded number of worker threads
+ * and have to finish within a single deadline. Example:
+ *
+ * <pre>
+ * ParameterFanOut.Result result = ParameterFanOut
+ *         .set(&quot;rc_stereocamera&quot;, &quot;exp_value&quot;, 0.005)
+ *         .withDeadline(2, TimeUnit.SECONDS).on(hosts);
+ * </pre>
+ *
+ */
+public class ParameterFanOut
+{
+
+    /**
+     * Aggregated outcome of a fan-out, per device.
+     *
+     */
+    public static class Result extends GenericPrintable
+    {
+        /**
+         * @return host to the value reported back by the device
+         */
+        public Map<String, Object> getAccepted()
+        {
+            return accepted;
+        }
+
+        /**
+         * @return host to the cause of failure, e.g. a TimeoutException if
+         *         the deadline has passed before the device answered
+         */
+        public Map<String, Exception> getErrors()
+        {
+            return errors;
+        }
+
+        /**
+         * @return host to the duration of the write in ns; not available for
+         *         devices which did not answer before the deadline
+         */
+        public Map<String, Long> getLatencies()
+        {
+            return latencies;
+        }
+
+        /**
+         * @return true if all devices accepted the requested value
+         */
+        public boolean isSuccess()
+        {
+            if (!errors.isEmpty())
+            {
+                return false;
+            }
+            for (Object value : accepted.values())
+            {
+                if (!Parameter.valuesEqual(requested, value))
+                {
+                    return false;
+                }
+            }
+            return true;
+        }
+
+        protected Result(final Object requested)
+        {
+            this.requested = requested;
+        }
+
+        protected final Object requested;
+        protected final Map<String, Object> accepted = new LinkedHashMap<String, Object>();
+        protected final Map<String, Exception> errors = new LinkedHashMap<String, Exception>();
+        protected final Map<String, Long> latencies = new LinkedHashMap<String, Long>();
+    }
+
+    /**
+     * Prepares a fan-out setting a node's parameter to a value.
+     *
+     * @param node
+     *            the name of the node that exhibits the Parameter
+     * @param param
+     *            the name of the Parameter
+     * @param value
+     *            the value to set
+     * @return the fan-out, to be issued by one of the on() methods
+     */
+    public static ParameterFanOut set(final String node, final String param,
+            final Object value)
+    {
+        return new ParameterFanOut(node, param, value);
+    }
+
+    /**
+     * Limits the number of writes issued at the same time (default: 32).
+     *
+     * @param maxParallel
+     * @return reference to this ParameterFanOut
+     */
+    public ParameterFanOut withMaxParallel(final int maxParallel)
+    {
+        if (maxParallel < 1)
+        {
+            throw new IllegalArgumentException(
+                    "maxParallel must be at least 1!");
+        }
+        this.maxParallel = maxParallel;
+        return this;
+    }
+
+    /**
+     * Sets the time all writes have to be finished within (default: 10 s).
+     *
+     * @param timeout
+     * @param unit
+     * @return reference to this ParameterFanOut
+     */
+    public ParameterFanOut withDeadline(final long timeout, final TimeUnit unit)
+    {
+        this.deadlineNanos = unit.toNanos(timeout);
+        return this;
+    }
+
+    /**
+     * Issues the writes to the given devices.
+     *
+     * @param visards
+     * @return the aggregated result, keyed by host
+     */
+    public Result onVisards(final Collection<Visard> visards)
+    {
+        List<String> hosts = new ArrayList<String>();
+        for (Visard visard : visards)
+        {
+            hosts.add(visard.getHost());
+        }
+        return on(hosts);
+    }
+
+    /**
+     * Issues the writes to the given hosts.
+     *
+     * @param hosts
+     *            the devices' host names (DNS) or IP addresses as known in the
+     *            network
+     * @return the aggregated result, keyed by host
+     */
+    public Result on(final Collection<String> hosts)
+    {
+        Result result = new Result(value);
+        Set<String> uniqueHosts = new LinkedHashSet<String>(hosts);
+        if (uniqueHosts.isEmpty())
+        {
+            return result;
+        }
+
+        final Map<String, Object> body = new LinkedHashMap<String, Object>();
+        body.put("name", param);
+        body.put("value", value);
+
+        List<Callable<Object[]>> tasks = new ArrayList<Callable<Object[]>>();
+        for (final String host : uniqueHosts)
+        {
+            tasks.add(new Callable<Object[]>()
+            {
+                public Object[] call()
+                {
+                    long start = System.nanoTime();
+                    Parameter accepted = Endpoints.forHost(host)
+                            .parameter(node, param).newResource()
+                            .put(body, Parameter.class);
+                    return new Object[] { accepted.getValue(),
+                            System.nanoTime() - start };
+                }
+            });
+        }
+
+        ExecutorService executor = ExecutionBackend.newExecutor(
+                "rcapi-fanout", Math.min(uniqueHosts.size(), maxParallel));
+        try
+        {
+            List<Future<Object[]>> futures = executor.invokeAll(tasks,
+                    deadlineNanos, TimeUnit.NANOSECONDS);
+            int i = 0;
+            for (String host : uniqueHosts)
+            {
+                Future<Object[]> future = futures.get(i++);
+                try
+                {
+                    Object[] outcome = future.get();
+                    result.accepted.put(host, outcome[0]);
+                    result.latencies.put(host, (Long) outcome[1]);
+                } catch (CancellationException e)
+                {
+                    result.errors.put(host, new TimeoutException(
+                            "No answer within deadline!"));
+                } catch (ExecutionException e)
+                {
+                    result.errors.put(host, e.getCause() instanceof Exception
+                            ? (Exception) e.getCause() : e);
+                }
+            }
+        } catch (InterruptedException e)
+        {
+            Thread.currentThread().interrupt();
+            throw new RuntimeException("Interrupted during fan-out of "
+                    + node + "/" + param, e);
+        } finally
+        {
+            executor.shutdownNow();
+        }
+        return result;
+    }
+
+    protected final String node, param;
+    protected final Object value;
+    protected int maxParallel = 32;
+    protected long deadlineNanos = TimeUnit.SECONDS.toNanos(10);
+
+    protected ParameterFanOut(final String node, final String param,
+            final Object value)
+    {
+        this.node = node;
+        this.param = param;
+        this.value = value;
+    }
+}
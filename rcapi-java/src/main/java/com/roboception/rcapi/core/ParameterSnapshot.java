@@ -0,0 +1,538 @@
+/*
+ * Copyright (c) 2018 Roboception GmbH
+ * All rights reserved
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * 1. Redistributions of source code must retain the above copyright notice,
+ * this list of conditions and the following disclaimer.
+ *
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ * this list of conditions and the following disclaimer in the documentation
+ * and/or other materials provided with the distribution.
+ *
+ * 3. Neither the name of the copyright holder nor the names of its contributors
+ * may be used to endorse or promote products derived from this software without
+ * specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package com.roboception.rcapi.core;
+
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Map.Entry;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+
+/**
+ * Snapshot of all parameters of several nodes of a device, e.g. for rollback
+ * and auditing of a sensor configuration.
+ *
+ * Snapshots can be written to and read from a compact binary format. All
+ * strings (names, types, descriptions, string values) are stored only once in
+ * a string table, so that snapshots of many nodes stay small.
+ *
+ * Format (version 1), all integers as unsigned LEB128 varints unless noted:
+ *
+ * <pre>
+ * magic 'RCPS' (4 bytes), version (1 byte), timestamp (8 bytes, ms)
+ * string count, strings (byte length + UTF-8 bytes)
+ * host (string index)
+ * node count, nodes: name (string index), parameter count, parameters:
+ *     name, type, description (string indices), value, min, max, default
+ * </pre>
+ *
+ * Each value is a tag byte followed by its data: null, false, true, integer
+ * (zig-zag varint), double (8 bytes), or string (string index).
+ *
+ */
+public class ParameterSnapshot
+{
+
+    /**
+     * Captures all parameters of all nodes of an rc_visard device.
+     *
+     * @param visard
+     * @return the snapshot
+     */
+    public static ParameterSnapshot capture(final Visard visard)
+    {
+        List<String> nodes = new ArrayList<String>();
+        for (Node.Info info : visard.getAvailableNodes())
+        {
+            nodes.add(info.name);
+        }
+        return capture(visard.getHost(), nodes);
+    }
+
+    /**
+     * Captures all parameters of the given nodes of a device. The nodes are
+     * queried in parallel.
+     *
+     * @param host
+     *            the device's host name (DNS) or IP address as known in the
+     *            network
+     * @param nodes
+     *            names of the nodes to be captured
+     * @return the snapshot
+     */
+    public static ParameterSnapshot capture(final String host,
+            final Collection<String> nodes)
+    {
+        ParameterSnapshot snapshot = new ParameterSnapshot(host,
+                System.currentTimeMillis());
+        if (nodes.isEmpty())
+        {
+            return snapshot;
+        }
+
+        ExecutorService executor = ExecutionBackend.newExecutor(
+                "rcapi-snapshot", Math.min(nodes.size(), Profile.MAX_PARALLEL_NODES));
+        try
+        {
+            Map<String, Future<List<Parameter>>> pending = new LinkedHashMap<String, Future<List<Parameter>>>();
+            for (final String node : nodes)
+            {
+                pending.put(node,
+                        executor.submit(new Callable<List<Parameter>>()
+                        {
+                            public List<Parameter> call()
+                            {
+                                return Node.Parameters.getAll(host, node);
+                            }
+                        }));
+            }
+            for (Entry<String, Future<List<Parameter>>> node : pending
+                    .entrySet())
+            {
+                snapshot.params.put(node.getKey(), node.getValue().get());
+            }
+        } catch (ExecutionException e)
+        {
+            throw new RuntimeException("Could not capture parameters of "
+                    + host, e.getCause());
+        } catch (InterruptedException e)
+        {
+            Thread.currentThread().interrupt();
+            throw new RuntimeException("Interrupted while capturing parameters of "
+                    + host, e);
+        } finally
+        {
+            executor.shutdownNow();
+        }
+        return snapshot;
+    }
+
+    /**
+     * Reads a snapshot from its binary format.
+     *
+     * @param in
+     * @return the snapshot
+     * @throws IOException
+     *             in case of read errors, unsupported formats or corrupt data
+     */
+    public static ParameterSnapshot readFrom(final InputStream in)
+            throws IOException
+    {
+        DataInputStream data = new DataInputStream(in);
+        if (data.readInt() != MAGIC)
+        {
+            throw new IOException("Not a parameter snapshot!");
+        }
+        int version = data.readUnsignedByte();
+        if (version != VERSION)
+        {
+            throw new IOException("Unsupported parameter snapshot version "
+                    + version + "!");
+        }
+        long timestamp = data.readLong();
+
+        // / counts and lengths are not trusted for allocation, as corrupt
+        // / files run out of data long before reaching them
+        int stringCount = readVarInt(data);
+        List<String> strings = new ArrayList<String>(Math.min(stringCount,
+                MAX_PREALLOCATED));
+        for (int i = 0; i < stringCount; i++)
+        {
+            int length = readVarInt(data);
+            if (length > MAX_STRING_LENGTH)
+            {
+                throw new IOException("Corrupt parameter snapshot!");
+            }
+            byte[] bytes = new byte[length];
+            data.readFully(bytes);
+            strings.add(new String(bytes, UTF8));
+        }
+
+        ParameterSnapshot snapshot = new ParameterSnapshot(readString(data,
+                strings), timestamp);
+        int nodeCount = readVarInt(data);
+        for (int n = 0; n < nodeCount; n++)
+        {
+            String node = readString(data, strings);
+            int paramCount = readVarInt(data);
+            List<Parameter> params = new ArrayList<Parameter>(Math.min(
+                    paramCount, MAX_PREALLOCATED));
+            for (int p = 0; p < paramCount; p++)
+            {
+                String name = readString(data, strings);
+                String type = readString(data, strings);
+                String description = readString(data, strings);
+                Object value = readValue(data, strings);
+                Object min = readValue(data, strings);
+                Object max = readValue(data, strings);
+                Object default_value = readValue(data, strings);
+                params.add(new Parameter(name, description, type, value, min,
+                        max, default_value));
+            }
+            snapshot.params.put(node, params);
+        }
+        return snapshot;
+    }
+
+    /**
+     * Writes this snapshot in its binary format.
+     *
+     * @param out
+     * @throws IOException
+     */
+    public void writeTo(final OutputStream out) throws IOException
+    {
+        // build string table first
+        Map<String, Integer> strings = new LinkedHashMap<String, Integer>();
+        intern(strings, host);
+        for (Entry<String, List<Parameter>> node : params.entrySet())
+        {
+            intern(strings, node.getKey());
+            for (Parameter param : node.getValue())
+            {
+                Parameter.State state = param.getState();
+                intern(strings, state.getName());
+                intern(strings, state.getType());
+                intern(strings, state.getDescription());
+                internValue(strings, state.getValue());
+                internValue(strings, state.getMin());
+                internValue(strings, state.getMax());
+                internValue(strings, state.getDefault());
+            }
+        }
+
+        DataOutputStream data = new DataOutputStream(out);
+        data.writeInt(MAGIC);
+        data.writeByte(VERSION);
+        data.writeLong(timestamp);
+        writeVarInt(data, strings.size());
+        for (String string : strings.keySet())
+        {
+            byte[] bytes = string.getBytes(UTF8);
+            writeVarInt(data, bytes.length);
+            data.write(bytes);
+        }
+
+        writeVarInt(data, strings.get(host));
+        writeVarInt(data, params.size());
+        for (Entry<String, List<Parameter>> node : params.entrySet())
+        {
+            writeVarInt(data, strings.get(node.getKey()));
+            writeVarInt(data, node.getValue().size());
+            for (Parameter param : node.getValue())
+            {
+                Parameter.State state = param.getState();
+                writeVarInt(data, strings.get(nonNull(state.getName())));
+                writeVarInt(data, strings.get(nonNull(state.getType())));
+                writeVarInt(data, strings.get(nonNull(state.getDescription())));
+                writeValue(data, strings, state.getValue());
+                writeValue(data, strings, state.getMin());
+                writeValue(data, strings, state.getMax());
+                writeValue(data, strings, state.getDefault());
+            }
+        }
+        data.flush();
+    }
+
+    /**
+     * Pushes all values of this snapshot back to the device it has been
+     * captured from, using one request per node for all nodes in parallel.
+     *
+     * @return the values accepted by the device
+     */
+    public Profile.Result restore()
+    {
+        return restoreTo(host);
+    }
+
+    /**
+     * Pushes all values of this snapshot to a device, using one request per
+     * node for all nodes in parallel.
+     *
+     * @param host
+     *            the device's host name (DNS) or IP address as known in the
+     *            network
+     * @return the values accepted by the device
+     */
+    public Profile.Result restoreTo(final String host)
+    {
+        return toProfile().applyAllTo(host);
+    }
+
+    /**
+     * @return a Profile containing all parameter values of this snapshot
+     */
+    public Profile toProfile()
+    {
+        Map<String, Map<String, Object>> values = new LinkedHashMap<String, Map<String, Object>>();
+        for (String node : params.keySet())
+        {
+            values.put(node, getValues(node));
+        }
+        return Profile.fromMap(values);
+    }
+
+    /**
+     * @return the host this snapshot has been captured from
+     */
+    public String getHost()
+    {
+        return host;
+    }
+
+    /**
+     * @return UNIX timestamp in ms when this snapshot has been captured
+     */
+    public long getTimestamp()
+    {
+        return timestamp;
+    }
+
+    /**
+     * @return names of all nodes in this snapshot
+     */
+    public Set<String> getNodes()
+    {
+        return Collections.unmodifiableSet(params.keySet());
+    }
+
+    /**
+     * @param node
+     * @return all parameters of the node as captured
+     */
+    public List<Parameter> getParameters(final String node)
+    {
+        if (!params.containsKey(node))
+        {
+            throw new IllegalArgumentException("Node '" + node
+                    + "' is not part of this snapshot!\nAvailabe nodes: "
+                    + params.keySet());
+        }
+        return Collections.unmodifiableList(params.get(node));
+    }
+
+    /**
+     * @param node
+     * @return parameter names to values of the node as captured
+     */
+    public Map<String, Object> getValues(final String node)
+    {
+        Map<String, Object> values = new LinkedHashMap<String, Object>();
+        for (Parameter param : getParameters(node))
+        {
+            values.put(param.getName(), param.getValue());
+        }
+        return values;
+    }
+
+    protected static void intern(final Map<String, Integer> strings,
+            final String string)
+    {
+        String s = nonNull(string);
+        if (!strings.containsKey(s))
+        {
+            strings.put(s, strings.size());
+        }
+    }
+
+    protected static void internValue(final Map<String, Integer> strings,
+            final Object value)
+    {
+        if (value instanceof String)
+        {
+            intern(strings, (String) value);
+        }
+    }
+
+    protected static String nonNull(final String string)
+    {
+        return string == null ? "" : string;
+    }
+
+    protected static void writeValue(final DataOutputStream data,
+            final Map<String, Integer> strings, final Object value)
+            throws IOException
+    {
+        if (value == null)
+        {
+            data.writeByte(TAG_NULL);
+        } else if (value instanceof Boolean)
+        {
+            data.writeByte((Boolean) value ? TAG_TRUE : TAG_FALSE);
+        } else if (value instanceof Integer || value instanceof Long
+                || value instanceof Short || value instanceof Byte)
+        {
+            data.writeByte(TAG_INTEGER);
+            long l = ((Number) value).longValue();
+            writeVarLong(data, (l << 1) ^ (l >> 63));
+        } else if (value instanceof Number)
+        {
+            data.writeByte(TAG_DOUBLE);
+            data.writeDouble(((Number) value).doubleValue());
+        } else if (value instanceof String)
+        {
+            data.writeByte(TAG_STRING);
+            writeVarInt(data, strings.get(value));
+        } else
+        {
+            throw new IOException("Unsupported parameter value of type "
+                    + value.getClass().getName() + ": " + value);
+        }
+    }
+
+    protected static Object readValue(final DataInputStream data,
+            final List<String> strings) throws IOException
+    {
+        int tag = data.readUnsignedByte();
+        switch (tag)
+        {
+        case TAG_NULL:
+            return null;
+        case TAG_FALSE:
+            return Boolean.FALSE;
+        case TAG_TRUE:
+            return Boolean.TRUE;
+        case TAG_INTEGER:
+            long zigzag = readVarLong(data);
+            long l = (zigzag >>> 1) ^ -(zigzag & 1);
+            // mimic Jackson which uses Integer whenever possible
+            if (l >= Integer.MIN_VALUE && l <= Integer.MAX_VALUE)
+            {
+                return Integer.valueOf((int) l);
+            }
+            return Long.valueOf(l);
+        case TAG_DOUBLE:
+            return Double.valueOf(data.readDouble());
+        case TAG_STRING:
+            return readString(data, strings);
+        default:
+            throw new IOException("Unknown value tag " + tag
+                    + " in parameter snapshot!");
+        }
+    }
+
+    /**
+     * Reads an index into the string table and returns the string.
+     */
+    protected static String readString(final DataInputStream data,
+            final List<String> strings) throws IOException
+    {
+        int index = readVarInt(data);
+        if (index >= strings.size())
+        {
+            throw new IOException("Corrupt parameter snapshot!");
+        }
+        return strings.get(index);
+    }
+
+    protected static void writeVarInt(final DataOutputStream data,
+            final int value) throws IOException
+    {
+        writeVarLong(data, value & 0xFFFFFFFFL);
+    }
+
+    protected static void writeVarLong(final DataOutputStream data,
+            final long value) throws IOException
+    {
+        long v = value;
+        while ((v & ~0x7FL) != 0)
+        {
+            data.writeByte((int) ((v & 0x7F) | 0x80));
+            v >>>= 7;
+        }
+        data.writeByte((int) v);
+    }
+
+    protected static int readVarInt(final DataInputStream data)
+            throws IOException
+    {
+        long value = readVarLong(data);
+        if (value > Integer.MAX_VALUE)
+        {
+            throw new IOException("Corrupt parameter snapshot!");
+        }
+        return (int) value;
+    }
+
+    protected static long readVarLong(final DataInputStream data)
+            throws IOException
+    {
+        long value = 0;
+        for (int shift = 0; shift < 64; shift += 7)
+        {
+            int b = data.readUnsignedByte();
+            value |= (long) (b & 0x7F) << shift;
+            if ((b & 0x80) == 0)
+            {
+                return value;
+            }
+        }
+        throw new IOException("Corrupt parameter snapshot!");
+    }
+
+    protected static final int MAGIC = 0x52435053; // 'RCPS'
+    protected static final int VERSION = 1;
+
+    protected static final int TAG_NULL = 0, TAG_FALSE = 1, TAG_TRUE = 2,
+            TAG_INTEGER = 3, TAG_DOUBLE = 4, TAG_STRING = 5;
+
+    // / limits for reading possibly corrupt snapshots
+    protected static final int MAX_PREALLOCATED = 1024;
+    protected static final int MAX_STRING_LENGTH = 1024 * 1024;
+
+    protected static final Charset UTF8 = Charset.forName("UTF-8");
+
+    protected final String host;
+    protected final long timestamp;
+
+    // / node name to its parameters
+    protected final Map<String, List<Parameter>> params = new LinkedHashMap<String, List<Parameter>>();
+
+    protected ParameterSnapshot(final String host, final long timestamp)
+    {
+        this.host = host;
+        this.timestamp = timestamp;
+    }
+}
@@ -0,0 +1,166 @@
+/*
+ * Copyright (c) 2018 Roboception GmbH
+ * All rights reserved
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * 1. Redistributions of source code must retain the above copyright notice,
+ * this list of conditions and the following disclaimer.
+ *
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ * this list of conditions and the following disclaimer in the documentation
+ * and/or other materials provided with the distribution.
+ *
+ * 3. Neither the name of the copyright holder nor the names of its contributors
+ * may be used to endorse or promote products derived from this software without
+ * specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package com.roboception.rcapi.core;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Date;
+
+import org.restlet.data.Status;
+import org.restlet.data.Tag;
+import org.restlet.representation.Representation;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+/**
+ * Remembers the last payload of an endpoint, so that polling clients can skip
+ * decoding responses that did not change.
+ *
+ * If the server provides an ETag or Last-Modified date, requests are
+ * conditional and unchanged payloads are not even transferred. Otherwise, the
+ * raw bytes of the response are compared with the previous ones.
+ *
+ * A cache is shared by all callers syncing the same object, e.g. a
+ * Node.Parameters. They must fetch and apply the payload while holding the
+ * cache's lock, so that no caller sees "unchanged" before another one has
+ * applied the new payload; concurrent syncs of the same object are therefore
+ * serialized. Tag, date and last payload are only accessed under that lock.
+ *
+ */
+class PayloadCache
+{
+
+    // / mapper shared for decoding the payloads
+    static final ObjectMapper MAPPER = new ObjectMapper();
+
+    /**
+     * Queries the endpoint.
+     *
+     * @param endpoint
+     * @return the response's bytes, or null if unchanged since the last call
+     */
+    synchronized byte[] fetch(final Endpoints.Endpoint endpoint)
+    {
+        byte[] bytes;
+        if (tag == null && modified == null)
+        {
+            // / unconditional reads are shared with concurrent readers
+            Endpoints.Payload payload = endpoint.read();
+            bytes = payload.getBytes();
+            tag = payload.getTag();
+            modified = payload.getModificationDate();
+        } else
+        {
+            RCClientResource resource = endpoint.newResource();
+            if (tag != null)
+            {
+                resource.getConditions().setNoneMatch(
+                        Collections.singletonList(tag));
+            } else
+            {
+                resource.getConditions().setModifiedSince(modified);
+            }
+
+            Representation rep = resource.get();
+            if (Status.REDIRECTION_NOT_MODIFIED.equals(resource.getStatus()))
+            {
+                return null;
+            }
+
+            try
+            {
+                bytes = readAll(rep);
+            } catch (IOException e)
+            {
+                throw new RuntimeException("Could not read response of "
+                        + endpoint, e);
+            }
+
+            if (rep != null)
+            {
+                tag = rep.getTag();
+                modified = rep.getModificationDate();
+            }
+        }
+        if (last != null && Arrays.equals(last, bytes))
+        {
+            return null;
+        }
+        last = bytes;
+        return bytes;
+    }
+
+    /**
+     * Forgets the last payload, so that the next fetch returns it in any case.
+     */
+    synchronized void invalidate()
+    {
+        last = null;
+        tag = null;
+        modified = null;
+    }
+
+    static byte[] readAll(final Representation rep) throws IOException
+    {
+        if (rep == null)
+        {
+            return new byte[0];
+        }
+        InputStream in = rep.getStream();
+        if (in == null)
+        {
+            return new byte[0];
+        }
+        try
+        {
+            ByteArrayOutputStream out = new ByteArrayOutputStream(
+                    rep.getSize() > 0 ? (int) rep.getSize() : 4096);
+            byte[] buffer = new byte[4096];
+            int n;
+            while ((n = in.read(buffer)) >= 0)
+            {
+                out.write(buffer, 0, n);
+            }
+            return out.toByteArray();
+        } finally
+        {
+            in.close();
+        }
+    }
+
+    private byte[] last;
+    private Tag tag;
+    private Date modified;
+}
@@ -0,0 +1,341 @@
+/*
+ * Copyright (c) 2018 Roboception GmbH
+ * All rights reserved
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * 1. Redistributions of source code must retain the above copyright notice,
+ * this list of conditions and the following disclaimer.
+ *
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ * this list of conditions and the following disclaimer in the documentation
+ * and/or other materials provided with the distribution.
+ *
+ * 3. Neither the name of the copyright holder nor the names of its contributors
+ * may be used to endorse or promote products derived from this software without
+ * specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package com.roboception.rcapi.core;
+
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+
+import org.reactivestreams.Publisher;
+import org.reactivestreams.Subscriber;
+import org.reactivestreams.Subscription;
+
+/**
+ * A reactive-streams {@link Publisher} periodically polling a remote resource
+ * and emitting the results to all of its subscribers.
+ *
+ * One polling thread is shared by all subscribers. It runs only while there
+ * are subscribers, and queries the remote resource only if at least one
+ * subscriber has outstanding demand. Subscribers without demand do not get a
+ * result buffered; they receive the next result polled after they requested
+ * more. Hence, slow subscribers never cause unbounded buffering.
+ *
+ * Polling failures are tolerated up to a number of consecutive failures,
+ * after which all subscribers are terminated with the last failure.
+ *
+ * On Java 9+, the publisher can be converted to a java.util.concurrent.Flow
+ * publisher via org.reactivestreams.FlowAdapters.
+ *
+ * @param <T>
+ *            type of emitted results
+ */
+public class PollingPublisher<T> implements Publisher<T>
+{
+
+    /**
+     * Queries a single result from the remote resource
+     */
+    public static interface Source<T>
+    {
+        T poll() throws Exception;
+    }
+
+    /**
+     * Creates a publisher polling the given source.
+     *
+     * @param name
+     *            name of the polling thread
+     * @param source
+     *            the source
+     * @param period
+     *            time between two polls
+     * @param unit
+     *            unit of period
+     */
+    public PollingPublisher(final String name, final Source<T> source,
+            final long period, final TimeUnit unit)
+    {
+        if (period <= 0)
+        {
+            throw new IllegalArgumentException("Period must be positive!");
+        }
+        this.name = name;
+        this.source = source;
+        this.periodNanos = unit.toNanos(period);
+    }
+
+    /**
+     * Sets the number of consecutive polling failures after which subscribers
+     * are terminated (default: 3).
+     *
+     * @param maxConsecutiveFailures
+     * @return reference to this PollingPublisher
+     */
+    public PollingPublisher<T> withMaxConsecutiveFailures(
+            final int maxConsecutiveFailures)
+    {
+        this.maxConsecutiveFailures = maxConsecutiveFailures;
+        return this;
+    }
+
+    public void subscribe(final Subscriber<? super T> subscriber)
+    {
+        if (subscriber == null)
+        {
+            throw new NullPointerException("Subscriber must not be null!");
+        }
+        PollingSubscription subscription = new PollingSubscription(subscriber);
+        subscriber.onSubscribe(subscription);
+        synchronized (this)
+        {
+            if (!subscription.cancelled)
+            {
+                subscriptions.add(subscription);
+                if (poller == null)
+                {
+                    poller = ExecutionBackend.newThread(name, new Runnable()
+                    {
+                        public void run()
+                        {
+                            pollLoop();
+                        }
+                    });
+                    poller.start();
+                }
+            }
+        }
+    }
+
+    /**
+     * Completes all current subscribers and stops polling.
+     */
+    public synchronized void close()
+    {
+        for (PollingSubscription subscription : subscriptions)
+        {
+            subscription.complete = true;
+        }
+        wakeUp();
+    }
+
+    /**
+     * @return number of current subscribers
+     */
+    public int getSubscriberCount()
+    {
+        return subscriptions.size();
+    }
+
+    protected class PollingSubscription implements Subscription
+    {
+        public void request(final long n)
+        {
+            if (n <= 0)
+            {
+                error = new IllegalArgumentException(
+                        "Requested non-positive number of elements: " + n
+                                + " (see reactive-streams rule 3.9)");
+                return;
+            }
+            long current, next;
+            do
+            {
+                current = demand.get();
+                next = current + n;
+                if (next < 0)
+                {
+                    next = Long.MAX_VALUE;
+                }
+            } while (!demand.compareAndSet(current, next));
+        }
+
+        public void cancel()
+        {
+            cancelled = true;
+            subscriptions.remove(this);
+            wakeUp();
+        }
+
+        protected PollingSubscription(final Subscriber<? super T> subscriber)
+        {
+            this.subscriber = subscriber;
+        }
+
+        protected final Subscriber<? super T> subscriber;
+        protected final AtomicLong demand = new AtomicLong();
+        protected volatile boolean cancelled, complete;
+        protected volatile Throwable error;
+    }
+
+    protected void pollLoop()
+    {
+        int failures = 0;
+        long next = System.nanoTime();
+        while (true)
+        {
+            synchronized (this)
+            {
+                if (subscriptions.isEmpty())
+                {
+                    poller = null;
+                    return;
+                }
+            }
+
+            // deliver pending terminal signals
+            boolean hasDemand = false;
+            for (PollingSubscription subscription : subscriptions)
+            {
+                if (subscription.error != null)
+                {
+                    terminate(subscription, subscription.error);
+                } else if (subscription.complete)
+                {
+                    terminate(subscription, null);
+                } else if (subscription.demand.get() > 0)
+                {
+                    hasDemand = true;
+                }
+            }
+
+            if (System.nanoTime() - next < 0)
+            {
+                // woken up before the next poll is due
+            } else if (hasDemand)
+            {
+                try
+                {
+                    T result = source.poll();
+                    failures = 0;
+                    for (PollingSubscription subscription : subscriptions)
+                    {
+                        if (!subscription.cancelled
+                                && subscription.demand.getAndDecrement() > 0)
+                        {
+                            deliver(subscription, result);
+                        } else
+                        {
+                            subscription.demand.incrementAndGet();
+                        }
+                    }
+                } catch (Exception e)
+                {
+                    if (++failures >= maxConsecutiveFailures)
+                    {
+                        for (PollingSubscription subscription : subscriptions)
+                        {
+                            terminate(subscription, e);
+                        }
+                    }
+                }
+            }
+
+            if (System.nanoTime() - next >= 0)
+            {
+                next += periodNanos;
+                if (next - System.nanoTime() < 0)
+                {
+                    // we are late, e.g. because of a slow remote: do not try
+                    // to catch up with a burst of polls
+                    next = System.nanoTime();
+                }
+            }
+
+            // sleep until the next poll, unless woken up by close() or
+            // cancellation to handle them at loop start
+            long sleep = next - System.nanoTime();
+            if (sleep > 0 && !woken)
+            {
+                LockSupport.parkNanos(this, sleep);
+            }
+            woken = false;
+        }
+    }
+
+    /**
+     * Wakes up the polling thread, without interrupting a running poll.
+     */
+    protected synchronized void wakeUp()
+    {
+        woken = true;
+        if (poller != null)
+        {
+            LockSupport.unpark(poller);
+        }
+    }
+
+    protected void deliver(final PollingSubscription subscription,
+            final T result)
+    {
+        try
+        {
+            subscription.subscriber.onNext(result);
+        } catch (Throwable t)
+        {
+            // subscriber violated rule 2.13, consider it cancelled
+            subscription.cancel();
+        }
+    }
+
+    protected void terminate(final PollingSubscription subscription,
+            final Throwable error)
+    {
+        subscription.cancel();
+        try
+        {
+            if (error != null)
+            {
+                subscription.subscriber.onError(error);
+            } else
+            {
+                subscription.subscriber.onComplete();
+            }
+        } catch (Throwable t)
+        {
+            // subscriber violated rule 2.13, nothing left to do
+        }
+    }
+
+    protected final String name;
+    protected final Source<T> source;
+    protected final long periodNanos;
+    protected int maxConsecutiveFailures = 3;
+
+    protected final CopyOnWriteArrayList<PollingSubscription> subscriptions = new CopyOnWriteArrayList<PollingSubscription>();
+
+    // / the polling thread, if running
+    protected Thread poller;
+
+    // / set to make the polling thread handle cancellation or close() now
+    protected volatile boolean woken;
+}
@@ -0,0 +1,446 @@
+/*
+ * Copyright (c) 2018 Roboception GmbH
+ * All rights reserved
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * 1. Redistributions of source code must retain the above copyright notice,
+ * this list of conditions and the following disclaimer.
+ *
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ * this list of conditions and the following disclaimer in the documentation
+ * and/or other materials provided with the distribution.
+ *
+ * 3. Neither the name of the copyright holder nor the names of its contributors
+ * may be used to endorse or promote products derived from this software without
+ * specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package com.roboception.rcapi.core;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileNotFoundException;
+import java.io.InputStream;
+import java.io.Reader;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Map.Entry;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+
+import org.yaml.snakeyaml.Yaml;
+import org.yaml.snakeyaml.constructor.SafeConstructor;
+
+/**
+ * A configuration profile, i.e. a set of parameter values for several nodes of
+ * an rc_visard, e.g. for a specific product recipe.
+ *
+ * Profiles are loaded from YAML documents mapping node names to parameter
+ * names to values, e.g.
+ *
+ * <pre>
+ * rc_stereocamera:
+ *   exp_auto: false
+ *   exp_value: 0.005
+ * rc_stereomatching:
+ *   quality: High
+ * </pre>
+ *
+ * Applying a profile only sends the parameters whose remote values differ from
+ * the profile, using one request per node, and handles all nodes in parallel.
+ *
+ */
+public class Profile
+{
+
+    /**
+     * Outcome of applying a Profile to a device.
+     *
+     */
+    public static class Result extends GenericPrintable
+    {
+        /**
+         * Values reported back by the device for all parameters that have been
+         * sent, i.e. node name to parameter name to value.
+         */
+        public Map<String, Map<String, Object>> getAccepted()
+        {
+            return accepted;
+        }
+
+        /**
+         * Parameters which have been sent but whose value reported back by the
+         * device differs from the requested one (e.g. because it was clipped
+         * to min/max), i.e. node name to parameter name to accepted value.
+         */
+        public Map<String, Map<String, Object>> getAdjusted()
+        {
+            return adjusted;
+        }
+
+        /**
+         * Parameters which already had the requested value and have not been
+         * sent at all, i.e. node name to parameter names.
+         */
+        public Map<String, List<String>> getUnchanged()
+        {
+            return unchanged;
+        }
+
+        /**
+         * Nodes which could not be configured, i.e. node name to the cause.
+         */
+        public Map<String, Exception> getErrors()
+        {
+            return errors;
+        }
+
+        /**
+         * @return true if all nodes have been configured and the device
+         *         accepted all values as requested
+         */
+        public boolean isSuccess()
+        {
+            return errors.isEmpty() && adjusted.isEmpty();
+        }
+
+        protected final Map<String, Map<String, Object>> accepted = new LinkedHashMap<String, Map<String, Object>>();
+        protected final Map<String, Map<String, Object>> adjusted = new LinkedHashMap<String, Map<String, Object>>();
+        protected final Map<String, List<String>> unchanged = new LinkedHashMap<String, List<String>>();
+        protected final Map<String, Exception> errors = new LinkedHashMap<String, Exception>();
+    }
+
+    /**
+     * Loads a Profile from a YAML document.
+     *
+     * @param in
+     *            stream providing the YAML document
+     * @return the Profile
+     */
+    public static Profile load(final InputStream in)
+    {
+        return fromYaml(yaml().load(in));
+    }
+
+    /**
+     * Loads a Profile from a YAML document.
+     *
+     * @param in
+     *            reader providing the YAML document
+     * @return the Profile
+     */
+    public static Profile load(final Reader in)
+    {
+        return fromYaml(yaml().load(in));
+    }
+
+    /**
+     * Loads a Profile from a YAML file.
+     *
+     * @param file
+     *            the YAML file
+     * @return the Profile
+     * @throws FileNotFoundException
+     */
+    public static Profile load(final File file) throws FileNotFoundException
+    {
+        InputStream in = new FileInputStream(file);
+        try
+        {
+            return load(in);
+        } finally
+        {
+            try
+            {
+                in.close();
+            } catch (Exception e)
+            {
+                // nothing left to do
+            }
+        }
+    }
+
+    /**
+     * Creates a Profile from a map of node name to parameter name to value.
+     *
+     * @param values
+     * @return the Profile
+     */
+    public static Profile fromMap(final Map<String, ? extends Map<String, ?>> values)
+    {
+        Profile profile = new Profile();
+        for (Entry<String, ? extends Map<String, ?>> node : values.entrySet())
+        {
+            profile.values.put(node.getKey(), Collections
+                    .unmodifiableMap(new LinkedHashMap<String, Object>(node
+                            .getValue())));
+        }
+        return profile;
+    }
+
+    /**
+     * @return names of all nodes configured by this Profile
+     */
+    public Set<String> getNodes()
+    {
+        return Collections.unmodifiableSet(values.keySet());
+    }
+
+    /**
+     * @param node
+     * @return parameter names to values this Profile sets for the node
+     */
+    public Map<String, Object> getValues(final String node)
+    {
+        if (!values.containsKey(node))
+        {
+            throw new IllegalArgumentException("Node '" + node
+                    + "' is not part of this profile!\nProfile nodes: "
+                    + values.keySet());
+        }
+        return values.get(node);
+    }
+
+    /**
+     * Applies this Profile to an rc_visard device.
+     *
+     * @param visard
+     * @return the values accepted by the device
+     */
+    public Result applyTo(final Visard visard)
+    {
+        return applyTo(visard.getHost());
+    }
+
+    /**
+     * Applies this Profile to a remote host.
+     *
+     * For each node, the current parameters are queried and only the ones
+     * differing from the Profile are sent to the remote host in a single
+     * request. All nodes are handled in parallel.
+     *
+     * @param host
+     *            the device's host name (DNS) or IP address as known in the
+     *            network
+     * @return the values accepted by the device
+     */
+    public Result applyTo(final String host)
+    {
+        return apply(host, true);
+    }
+
+    /**
+     * Applies all values of this Profile to a remote host without comparing
+     * them to the current remote values first.
+     *
+     * This saves one request per node if most of the values are known to
+     * differ, e.g. when restoring a {@link ParameterSnapshot}.
+     *
+     * @param host
+     *            the device's host name (DNS) or IP address as known in the
+     *            network
+     * @return the values accepted by the device
+     */
+    public Result applyAllTo(final String host)
+    {
+        return apply(host, false);
+    }
+
+    protected Result apply(final String host, final boolean onlyDiffering)
+    {
+        Result result = new Result();
+        if (values.isEmpty())
+        {
+            return result;
+        }
+
+        ExecutorService executor = ExecutionBackend.newExecutor(
+                "rcapi-profile", Math.min(values.size(), MAX_PARALLEL_NODES));
+        try
+        {
+            Map<String, Future<Map<String, Object>>> pending = new LinkedHashMap<String, Future<Map<String, Object>>>();
+            for (final Entry<String, Map<String, Object>> node : values
+                    .entrySet())
+            {
+                pending.put(node.getKey(),
+                        executor.submit(new Callable<Map<String, Object>>()
+                        {
+                            public Map<String, Object> call()
+                            {
+                                return applyToNode(host, node.getKey(),
+                                        node.getValue(), onlyDiffering);
+                            }
+                        }));
+            }
+
+            for (Entry<String, Future<Map<String, Object>>> node : pending
+                    .entrySet())
+            {
+                String nodeName = node.getKey();
+                try
+                {
+                    collect(result, nodeName, values.get(nodeName), node
+                            .getValue().get());
+                } catch (ExecutionException e)
+                {
+                    result.errors.put(nodeName, e.getCause() instanceof Exception
+                            ? (Exception) e.getCause() : e);
+                } catch (InterruptedException e)
+                {
+                    Thread.currentThread().interrupt();
+                    result.errors.put(nodeName, e);
+                }
+            }
+        } finally
+        {
+            executor.shutdownNow();
+        }
+        return result;
+    }
+
+    /**
+     * Applies the given values to a single node.
+     *
+     * @return the values reported back by the remote host for all parameters
+     *         that have been sent
+     */
+    protected static Map<String, Object> applyToNode(final String host,
+            final String node, final Map<String, Object> wanted,
+            final boolean onlyDiffering)
+    {
+        Map<String, Object> changed = wanted;
+        if (onlyDiffering)
+        {
+            Map<String, Object> current = new LinkedHashMap<String, Object>();
+            for (Parameter param : Node.Parameters.getAll(host, node))
+            {
+                current.put(param.getName(), param.getValue());
+            }
+
+            changed = new LinkedHashMap<String, Object>();
+            for (Entry<String, Object> value : wanted.entrySet())
+            {
+                if (!current.containsKey(value.getKey()))
+                {
+                    throw new IllegalArgumentException("Parameter '"
+                            + value.getKey() + "' does not exist!\nAvailabe parameters: "
+                            + current.keySet());
+                }
+                if (!Parameter.valuesEqual(current.get(value.getKey()),
+                        value.getValue()))
+                {
+                    changed.put(value.getKey(), value.getValue());
+                }
+            }
+        }
+
+        Map<String, Object> accepted = new LinkedHashMap<String, Object>();
+        if (!changed.isEmpty())
+        {
+            for (Parameter param : Node.Parameters.putValues(host, node,
+                    changed))
+            {
+                if (changed.containsKey(param.getName()))
+                {
+                    accepted.put(param.getName(), param.getValue());
+                }
+            }
+        }
+        return accepted;
+    }
+
+    protected static void collect(final Result result, final String node,
+            final Map<String, Object> wanted, final Map<String, Object> accepted)
+    {
+        List<String> unchanged = new ArrayList<String>();
+        Map<String, Object> adjusted = new LinkedHashMap<String, Object>();
+        for (Entry<String, Object> value : wanted.entrySet())
+        {
+            if (!accepted.containsKey(value.getKey()))
+            {
+                unchanged.add(value.getKey());
+            } else if (!Parameter.valuesEqual(value.getValue(),
+                    accepted.get(value.getKey())))
+            {
+                adjusted.put(value.getKey(), accepted.get(value.getKey()));
+            }
+        }
+
+        result.accepted.put(node, accepted);
+        if (!unchanged.isEmpty())
+        {
+            result.unchanged.put(node, unchanged);
+        }
+        if (!adjusted.isEmpty())
+        {
+            result.adjusted.put(node, adjusted);
+        }
+    }
+
+    /**
+     * @return a YAML parser constructing only maps, lists and scalars, never
+     *         arbitrary classes named by tags in the document
+     */
+    protected static Yaml yaml()
+    {
+        return new Yaml(new SafeConstructor());
+    }
+
+    protected static Profile fromYaml(final Object yaml)
+    {
+        if (!(yaml instanceof Map))
+        {
+            throw new IllegalArgumentException(
+                    "Profile must be a mapping of node names to parameters! Got: "
+                            + yaml);
+        }
+
+        Map<String, Map<String, Object>> nodes = new LinkedHashMap<String, Map<String, Object>>();
+        for (Entry<?, ?> node : ((Map<?, ?>) yaml).entrySet())
+        {
+            if (!(node.getValue() instanceof Map))
+            {
+                throw new IllegalArgumentException("Node '" + node.getKey()
+                        + "' must map parameter names to values! Got: "
+                        + node.getValue());
+            }
+            Map<String, Object> params = new LinkedHashMap<String, Object>();
+            for (Entry<?, ?> param : ((Map<?, ?>) node.getValue()).entrySet())
+            {
+                params.put(String.valueOf(param.getKey()), param.getValue());
+            }
+            nodes.put(String.valueOf(node.getKey()), params);
+        }
+        return fromMap(nodes);
+    }
+
+    // / upper bound of nodes configured at the same time
+    protected static final int MAX_PARALLEL_NODES = 16;
+
+    // / node name to parameter name to value
+    protected final Map<String, Map<String, Object>> values = new LinkedHashMap<String, Map<String, Object>>();
+
+    protected Profile()
+    {
+    }
+}
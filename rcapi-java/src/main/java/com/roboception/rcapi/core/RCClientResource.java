@@ -33,7 +33,14 @@
 
 package com.roboception.rcapi.core;
 
+import java.io.IOException;
+
+import org.restlet.Request;
 import org.restlet.Response;
+import org.restlet.data.Method;
+import org.restlet.data.Reference;
+import org.restlet.data.MediaType;
+import org.restlet.representation.ByteArrayRepresentation;
 import org.restlet.representation.Representation;
 import org.restlet.resource.ClientResource;
 import org.restlet.resource.ResourceException;
@@ -45,6 +52,11 @@ public class RCClientResource extends ClientResource
     super(uri);
   }
 
+  public RCClientResource(Reference reference)
+  {
+    super(reference);
+  }
+
   /**
    * Simply gives a little more verbose exception than
    * the overrode method.
@@ -61,4 +73,155 @@ public class RCClientResource extends ClientResource
       }
       return result;
   }
+
+  /**
+   * Sends a request, taking these steps in this order:
+   *
+   * 1. Rate scheduling: waits for the host's {@link RequestScheduler} to
+   * admit the request, with the explicitly set priority, else GETs as
+   * monitoring and other requests with the endpoint's write priority. The
+   * slot is released when the exchange is done, whether it failed or not.
+   *
+   * 2. Host rewriting: if the request goes to the host's resolved address,
+   * the host name is put back into the Host header and the recorded URL, see
+   * {@link HostResolver}.
+   *
+   * 3. Traffic recording: the request entity is buffered before sending, so
+   * it can be both sent and recorded. Timing starts only now, so waiting for
+   * the scheduler is not part of the recorded duration.
+   *
+   * 4. Read detachment: once a write (any request but GET or HEAD) is done,
+   * the endpoint's in-flight read is detached, so later reads do not join a
+   * GET that started before the write, see {@link Endpoints.Endpoint#read()}.
+   * This happens even if the write failed, as it may have reached the host.
+   * A connector error then drops the host's cached address.
+   *
+   * 5. Decompression: successful responses are decoded on the fly, see
+   * {@link Compression}. The response is recorded only after this, so the
+   * recorded traffic holds the decoded payloads.
+   */
+  @Override
+  public Response handleOutbound(Request request) {
+      RequestScheduler.Priority p = priority;
+      if (p == null) {
+          p = Method.GET.equals(request.getMethod()) || writePriority == null
+                  ? RequestScheduler.Priority.MONITORING : writePriority;
+      }
+      if (scheduler != null) {
+          try {
+            scheduler.acquire(p);
+          } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new ResourceException(e);
+          }
+      }
+      String url = request.getResourceRef().toString();
+      if (host != null) {
+          // / address the host by name, though connecting to its address
+          Reference named = new Reference(request.getResourceRef());
+          named.setHostDomain(host);
+          url = named.toString();
+          request.setHostRef(named.getHostIdentifier());
+      }
+      TrafficRecorder recorder = TrafficRecorder.active();
+      byte[] requestBytes = null;
+      long start = 0;
+      Response response;
+      try {
+          if (recorder != null) {
+              requestBytes = buffer(request.getEntity());
+              if (requestBytes.length > 0) {
+                  request.setEntity(new ByteArrayRepresentation(requestBytes,
+                          request.getEntity().getMediaType()));
+              }
+              start = System.nanoTime();
+          }
+          response = super.handleOutbound(request);
+      } catch (IOException e) {
+          throw new ResourceException(e);
+      } finally {
+          if (scheduler != null) {
+              scheduler.release();
+          }
+          if (endpoint != null && !Method.GET.equals(request.getMethod())
+                  && !Method.HEAD.equals(request.getMethod())) {
+              // / later reads must not join a GET that started before the write
+              endpoint.detachRead();
+          }
+      }
+      if (host != null && response != null && response.getStatus().isConnectorError()) {
+          HostResolver.invalidate(host);
+      }
+      if (response != null && response.getStatus().isSuccess()) {
+          try {
+            response.setEntity(Compression.decode(response.getEntity(), sizeListener));
+          } catch (IOException e) {
+            throw new ResourceException(e);
+          }
+      }
+      if (recorder != null && response != null) {
+          record(recorder, url, request, response, requestBytes, start);
+      }
+      return response;
+  }
+
+  /**
+   * Appends a request and its response to the recorder's log, see
+   * {@link TrafficRecorder}.
+   */
+  protected static void record(TrafficRecorder recorder, String url,
+          Request request, Response response, byte[] requestBytes, long start) {
+      long duration = System.nanoTime() - start;
+      try {
+          Representation entity = response.getEntity();
+          byte[] responseBytes = buffer(entity);
+          MediaType mediaType = entity == null ? null : entity.getMediaType();
+          if (responseBytes.length > 0) {
+              response.setEntity(new ByteArrayRepresentation(responseBytes, mediaType));
+          }
+          recorder.write(start, duration, request.getMethod().getName(),
+                  url, response.getStatus().getCode(),
+                  mediaType == null ? null : mediaType.getName(), requestBytes,
+                  responseBytes);
+      } catch (IOException e) {
+          throw new ResourceException(e);
+      }
+  }
+
+  /**
+   * Reads an entity completely.
+   */
+  protected static byte[] buffer(Representation entity) throws IOException {
+      if (entity == null || !entity.isAvailable()) {
+          return new byte[0];
+      }
+      return PayloadCache.readAll(entity);
+  }
+
+  /**
+   * Sets the priority of this resource's requests, overriding the default
+   * of its endpoint, see {@link RequestScheduler}.
+   */
+  public void setPriority(RequestScheduler.Priority priority) {
+      this.priority = priority;
+  }
+
+  public RequestScheduler.Priority getPriority() {
+      return priority;
+  }
+
+  // / endpoint whose in-flight read is detached by writes, may be null
+  protected Endpoints.Endpoint endpoint;
+
+  // / notified of the decoded size of responses, may be null
+  protected Compression.SizeListener sizeListener;
+
+  // / name of the host if the request goes to its resolved address, else null
+  protected String host;
+
+  // / scheduler of the host's requests, may be null
+  protected RequestScheduler scheduler;
+
+  // / priority of requests other than reads, and explicitly set priority
+  protected RequestScheduler.Priority writePriority, priority;
 }
@@ -0,0 +1,437 @@
+/*
+ * Copyright (c) 2018 Roboception GmbH
+ * All rights reserved
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * 1. Redistributions of source code must retain the above copyright notice,
+ * this list of conditions and the following disclaimer.
+ *
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ * this list of conditions and the following disclaimer in the documentation
+ * and/or other materials provided with the distribution.
+ *
+ * 3. Neither the name of the copyright holder nor the names of its contributors
+ * may be used to endorse or promote products derived from this software without
+ * specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package com.roboception.rcapi.core;
+
+import java.util.ArrayDeque;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Schedules the requests to a single host.
+ *
+ * Limits the number of requests in flight and the request rate, and serves
+ * waiting requests by priority: control writes before service calls before
+ * monitoring reads. To protect lower priorities from starvation, a waiting
+ * request is promoted by one priority class for each aging period it has been
+ * waiting.
+ *
+ * By default neither the number of requests in flight nor the rate is
+ * limited, so that requests are never queued. Each host's scheduler is
+ * available via {@link Endpoints#getScheduler()}, e.g.
+ *
+ * <pre>
+ * Endpoints.forHost(host).getScheduler().setMaxInFlight(4)
+ *         .setMaxRate(50, 10);
+ * </pre>
+ *
+ */
+public final class RequestScheduler
+{
+
+    /**
+     * Priority classes of requests, from highest to lowest
+     */
+    public static enum Priority
+    {
+        // / writes of parameters
+        CONTROL,
+        // / service calls
+        SERVICE,
+        // / reads of status, parameters and system infos
+        MONITORING
+    }
+
+    /**
+     * Point-in-time metrics of a scheduler
+     */
+    public static final class Metrics extends GenericPrintable
+    {
+        /**
+         * @return number of requests currently in flight
+         */
+        public int getInFlight()
+        {
+            return inFlight;
+        }
+
+        /**
+         * @param priority
+         * @return number of requests of the given priority waiting
+         */
+        public int getQueueDepth(final Priority priority)
+        {
+            return queueDepth[priority.ordinal()];
+        }
+
+        /**
+         * @return number of requests waiting in total
+         */
+        public int getQueueDepth()
+        {
+            int sum = 0;
+            for (int depth : queueDepth)
+            {
+                sum += depth;
+            }
+            return sum;
+        }
+
+        /**
+         * @param priority
+         * @return number of requests of the given priority admitted so far
+         */
+        public long getAdmitted(final Priority priority)
+        {
+            return admitted[priority.ordinal()];
+        }
+
+        /**
+         * @param priority
+         * @return longest time in nanoseconds a request of the given priority
+         *         has been waiting so far
+         */
+        public long getMaxWait(final Priority priority)
+        {
+            return maxWait[priority.ordinal()];
+        }
+
+        protected Metrics(final int inFlight, final int[] queueDepth,
+                final long[] admitted, final long[] maxWait)
+        {
+            this.inFlight = inFlight;
+            this.queueDepth = queueDepth;
+            this.admitted = admitted;
+            this.maxWait = maxWait;
+        }
+
+        protected final int inFlight;
+        protected final int[] queueDepth;
+        protected final long[] admitted, maxWait;
+    }
+
+    /**
+     * Limits the number of requests in flight.
+     *
+     * @param maxInFlight
+     *            maximum number of requests in flight, 0 for no limit
+     * @return this scheduler
+     */
+    public RequestScheduler setMaxInFlight(final int maxInFlight)
+    {
+        if (maxInFlight < 0)
+        {
+            throw new IllegalArgumentException(
+                    "Maximum number of requests in flight must not be negative!");
+        }
+        lock.lock();
+        try
+        {
+            this.maxInFlight = maxInFlight == 0 ? Integer.MAX_VALUE
+                    : maxInFlight;
+            changed.signalAll();
+        } finally
+        {
+            lock.unlock();
+        }
+        return this;
+    }
+
+    /**
+     * Limits the request rate by a token bucket.
+     *
+     * Tokens earned under the previous rate are kept, up to the new burst. A
+     * scheduler without rate limit so far starts with a full bucket, so that
+     * enabling the limit does not throttle a burst right away.
+     *
+     * @param perSecond
+     *            sustained number of requests per second, 0 for no limit
+     * @param burst
+     *            number of requests that may be sent at once after idling
+     * @return this scheduler
+     */
+    public RequestScheduler setMaxRate(final double perSecond, final int burst)
+    {
+        if (perSecond < 0 || burst < 1)
+        {
+            throw new IllegalArgumentException(
+                    "Rate must not be negative and burst must be positive!");
+        }
+        lock.lock();
+        try
+        {
+            long now = System.nanoTime();
+            if (perNano > 0)
+            {
+                refill(now);
+            } else
+            {
+                tokens = burst;
+            }
+            this.perNano = perSecond / 1e9;
+            this.burst = burst;
+            tokens = Math.min(tokens, burst);
+            refilled = now;
+            changed.signalAll();
+        } finally
+        {
+            lock.unlock();
+        }
+        return this;
+    }
+
+    /**
+     * Sets the time after which a waiting request is promoted by one priority
+     * class.
+     *
+     * @param time
+     * @param unit
+     * @return this scheduler
+     */
+    public RequestScheduler setAging(final long time, final TimeUnit unit)
+    {
+        if (time <= 0)
+        {
+            throw new IllegalArgumentException("Aging time must be positive!");
+        }
+        lock.lock();
+        try
+        {
+            agingNanos = unit.toNanos(time);
+            // / the order of waiting requests may have changed
+            changed.signalAll();
+        } finally
+        {
+            lock.unlock();
+        }
+        return this;
+    }
+
+    /**
+     * @return the current metrics of this scheduler
+     */
+    public Metrics getMetrics()
+    {
+        lock.lock();
+        try
+        {
+            int[] depth = new int[queues.length];
+            for (int i = 0; i < queues.length; i++)
+            {
+                depth[i] = queues[i].size();
+            }
+            return new Metrics(inFlight, depth, admitted.clone(),
+                    maxWait.clone());
+        } finally
+        {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Waits until a request of the given priority may be sent. Each successful
+     * call must be followed by a call of {@link #release()} once the request
+     * is done.
+     *
+     * @param priority
+     * @throws InterruptedException
+     *             if interrupted while waiting, the request must not be sent
+     *             then
+     */
+    public void acquire(final Priority priority) throws InterruptedException
+    {
+        lock.lock();
+        try
+        {
+            ArrayDeque<Waiter> queue = queues[priority.ordinal()];
+            Waiter waiter = new Waiter(System.nanoTime());
+            queue.addLast(waiter);
+            try
+            {
+                while (true)
+                {
+                    long now = System.nanoTime();
+                    long wait = untilAging(now);
+                    if (inFlight < maxInFlight && next(now) == queue
+                            && queue.peekFirst() == waiter)
+                    {
+                        long missing = refill(now);
+                        if (missing <= 0)
+                        {
+                            break;
+                        }
+                        wait = Math.min(wait, missing);
+                    }
+                    // / bounded, as aging may change the order without
+                    // / anyone signalling
+                    changed.awaitNanos(wait);
+                }
+            } catch (InterruptedException e)
+            {
+                queue.remove(waiter);
+                changed.signalAll();
+                throw e;
+            }
+
+            queue.removeFirst();
+            if (perNano > 0)
+            {
+                tokens -= 1;
+            }
+            inFlight++;
+            int p = priority.ordinal();
+            admitted[p]++;
+            maxWait[p] = Math.max(maxWait[p], System.nanoTime()
+                    - waiter.enqueued);
+            // / the next request may be admitted as well
+            changed.signalAll();
+        } finally
+        {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Signals that a request admitted by {@link #acquire(Priority)} is done.
+     */
+    public void release()
+    {
+        lock.lock();
+        try
+        {
+            inFlight--;
+            changed.signalAll();
+        } finally
+        {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Chooses the queue to be served next: the one whose first request has the
+     * highest priority after aging, the higher original priority on ties.
+     */
+    protected ArrayDeque<Waiter> next(final long now)
+    {
+        ArrayDeque<Waiter> best = null;
+        long bestPriority = Long.MAX_VALUE;
+        for (int i = 0; i < queues.length; i++)
+        {
+            Waiter first = queues[i].peekFirst();
+            if (first != null)
+            {
+                long aged = i - (now - first.enqueued) / agingNanos;
+                if (aged < bestPriority)
+                {
+                    best = queues[i];
+                    bestPriority = aged;
+                }
+            }
+        }
+        return best;
+    }
+
+    /**
+     * @return nanoseconds until the next waiting request is promoted by aging
+     */
+    protected long untilAging(final long now)
+    {
+        long wait = agingNanos;
+        for (ArrayDeque<Waiter> queue : queues)
+        {
+            Waiter first = queue.peekFirst();
+            if (first != null)
+            {
+                wait = Math.min(wait, agingNanos - (now - first.enqueued)
+                        % agingNanos);
+            }
+        }
+        return wait;
+    }
+
+    /**
+     * Refills the token bucket.
+     *
+     * @return nanoseconds until the next token is available, 0 or less if
+     *         available now
+     */
+    protected long refill(final long now)
+    {
+        if (perNano <= 0)
+        {
+            return 0;
+        }
+        tokens = Math.min(burst, tokens + (now - refilled) * perNano);
+        refilled = now;
+        return tokens >= 1 ? 0 : (long) Math.ceil((1 - tokens) / perNano);
+    }
+
+    /**
+     * A request waiting to be admitted
+     */
+    protected static final class Waiter
+    {
+        protected Waiter(final long enqueued)
+        {
+            this.enqueued = enqueued;
+        }
+
+        protected final long enqueued;
+    }
+
+    @SuppressWarnings({ "unchecked", "rawtypes" })
+    protected RequestScheduler()
+    {
+        queues = new ArrayDeque[Priority.values().length];
+        for (int i = 0; i < queues.length; i++)
+        {
+            queues[i] = new ArrayDeque<Waiter>();
+        }
+        admitted = new long[queues.length];
+        maxWait = new long[queues.length];
+    }
+
+    private final ReentrantLock lock = new ReentrantLock();
+    private final Condition changed = lock.newCondition();
+
+    // / waiting requests, per priority
+    private final ArrayDeque<Waiter>[] queues;
+    private final long[] admitted, maxWait;
+
+    private int inFlight = 0;
+    private int maxInFlight = Integer.MAX_VALUE;
+    private long agingNanos = TimeUnit.SECONDS.toNanos(1);
+
+    // / token bucket, disabled if perNano is 0
+    private double perNano = 0, tokens = 1, burst = 1;
+    private long refilled = System.nanoTime();
+}
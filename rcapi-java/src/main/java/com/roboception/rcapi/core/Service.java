@@ -33,10 +33,23 @@
 
 package com.roboception.rcapi.core;
 
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.IOException;
 import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicInteger;
 
+import org.restlet.data.MediaType;
+import org.restlet.representation.ByteArrayRepresentation;
+import org.restlet.representation.Representation;
 import org.restlet.resource.ClientResource;
 
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
 import com.fasterxml.jackson.databind.JsonNode;
 import com.fasterxml.jackson.databind.ObjectMapper;
 
@@ -57,6 +70,40 @@ public class Service extends GenericPrintable
     {
         public String name, description;
         public JsonNode args, response;
+
+        /**
+         * Replaces the description, args and response of this Info with
+         * instances shared by all Infos with equal content, e.g. of the same
+         * service on many devices running the same firmware. The shared
+         * JsonNode trees must not be modified, so shared Infos are kept
+         * internally and only handed out as copies.
+         *
+         * @return this Info
+         */
+        protected Info share()
+        {
+            description = strings.intern(description);
+            args = trees.intern(args);
+            response = trees.intern(response);
+            return this;
+        }
+
+        /**
+         * @return a deep copy of this Info, not sharing any JsonNode tree
+         */
+        protected Info copy()
+        {
+            Info copy = new Info();
+            copy.name = name;
+            copy.description = description;
+            copy.args = args != null ? args.deepCopy() : null;
+            copy.response = response != null ? response.deepCopy() : null;
+            return copy;
+        }
+
+        // / canonical descriptions of all services
+        private static final Interner<String> strings = new Interner<String>();
+        private static final Interner<JsonNode> trees = new Interner<JsonNode>();
     }
 
     /**
@@ -95,11 +142,12 @@ public class Service extends GenericPrintable
     /**
      * Returns description and other information about this offered service
      *
-     * @return ServiceInfo
+     * @return ServiceInfo, a copy which may be modified without affecting
+     *         this or other services
      */
     public Info getInfo()
     {
-        return info;
+        return info != null ? info.copy() : null;
     }
 
     /**
@@ -121,38 +169,29 @@ public class Service extends GenericPrintable
      */
     public Object call(final Object serviceArgs)
     {
+        Object req = createRequest(serviceArgs);
 
-        // / create request object and fill with service args if not null or
-        // empty object, with empty list otherwise
-        Object req;
-        if (serviceArgs != null
-                && serviceArgs.getClass().getDeclaredFields().length > 0)
-        {
-            req = new Object()
-            {
-                @SuppressWarnings("unused")
-                public Object args = serviceArgs;
-            };
-        } else
+        // / client resources are not thread-safe, so take one from the
+        // / endpoint's pool for this call only
+        RCClientResource resource = endpoint.acquireResource();
+        JsonNode json;
+        try
         {
-            req = new Object()
+            // / if return type is void, we just issue the call and return null
+            if (userDefinedResponseType.equals(Void.class)
+                    || userDefinedResponseType.equals(Void.TYPE))
             {
-                @SuppressWarnings("unused")
-                public Object args = new ArrayList<Object>();
-            };
-        }
+                resource.put(req);
+                return null;
+            }
 
-        // / if return type is void, we just issue the call and return null
-        if (userDefinedResponseType.equals(Void.class)
-                || userDefinedResponseType.equals(Void.TYPE))
+            // / else we get result as JsonNode, extract the actual 'response',
+            // / and return the 'response' JsonNode as a Java object
+            json = resource.put(req, JsonNode.class);
+        } finally
         {
-            resource.put(req);
-            return null;
+            endpoint.releaseResource(resource);
         }
-
-        // / else we get result as JsonNode, extract the actual 'response', and
-        // / return the 'response' JsonNode as a Java object
-        JsonNode json = resource.put(req, JsonNode.class);
         if (!json.has("response"))
         {
             throw new RuntimeException(
@@ -177,47 +216,555 @@ public class Service extends GenericPrintable
         }
     }
 
+    /**
+     * Call a node's service with arguments and read its response into an
+     * existing object instead of creating a new one.
+     *
+     * The target is updated in place, including the objects it holds: nested
+     * objects are read into the existing instances, and lists of objects
+     * (e.g. of poses) are updated element by element, so that polling a
+     * service does not create new objects for each response. Fields not
+     * contained in the response keep their values. Requests are encoded into
+     * pooled buffers and sent through the endpoint's pooled client resources,
+     * see {@link #call(ArgsWriter, ResponseReader)}.
+     *
+     * @param serviceArgs
+     *            the service call's arguments
+     * @param target
+     *            object to be updated with the service call's response
+     * @return the target
+     */
+    public <T> T callInto(final Object serviceArgs, final T target)
+    {
+        ArgsWriter args = null;
+        if (serviceArgs != null
+                && serviceArgs.getClass().getDeclaredFields().length > 0)
+        {
+            args = new ArgsWriter()
+            {
+                public void writeArgs(JsonGenerator generator)
+                        throws IOException
+                {
+                    mapper.writeValue(generator, serviceArgs);
+                }
+            };
+        }
+        return call(args, new ResponseReader<T>()
+        {
+            public T readResponse(JsonParser parser) throws IOException
+            {
+                inPlace.read(parser, target);
+                return target;
+            }
+        });
+    }
+
+    /**
+     * Writes a service call's arguments without reflection, e.g. as generated
+     * by rcapi-codegen.
+     */
+    public static interface ArgsWriter
+    {
+        /**
+         * Writes the arguments as JSON value
+         */
+        void writeArgs(JsonGenerator generator) throws IOException;
+    }
+
+    /**
+     * Reads a service call's response without reflection, e.g. as generated
+     * by rcapi-codegen.
+     */
+    public static interface ResponseReader<T>
+    {
+        /**
+         * Reads the response from the parser, which is positioned at the
+         * response's first token.
+         */
+        T readResponse(JsonParser parser) throws IOException;
+    }
+
+    /**
+     * Call a node's service with arguments written and the response read by
+     * the given callbacks instead of reflection-based data binding.
+     *
+     * Requests are encoded into buffers taken from a small pool shared by all
+     * threads, so that short-lived (e.g. virtual) threads benefit from reuse
+     * as well. Buffers that grew beyond {@link #MAX_POOLED_BUFFER_SIZE} are
+     * not returned to the pool. Likewise, requests are sent through client
+     * resources taken from the endpoint's pool, see
+     * {@link Endpoints.Endpoint#acquireResource()}.
+     *
+     * @param args
+     *            writer of the service call's arguments, or null for none
+     * @param reader
+     *            reader of the service call's response
+     * @return the response as returned by the reader
+     */
+    public <T> T call(final ArgsWriter args, final ResponseReader<T> reader)
+    {
+        // / encode request into a pooled buffer, and send it through a pooled
+        // / resource, which is handed back once the response is consumed
+        RCClientResource resource = endpoint.acquireResource();
+        Buffer buffer = acquireBuffer();
+        Representation entity = null;
+        JsonParser parser = null;
+        try
+        {
+            try
+            {
+                entity = send(resource, buffer, args);
+            } finally
+            {
+                releaseBuffer(buffer);
+            }
+            if (entity == null)
+            {
+                throw new RuntimeException("Service returned no response!");
+            }
+            parser = mapper.getFactory().createParser(entity.getStream());
+            if (parser.nextToken() != JsonToken.START_OBJECT
+                    || !seekField(parser, "response"))
+            {
+                throw new RuntimeException(
+                        "Service returned JSON object in wrong format!"
+                                + "\nExpected a field 'response'.");
+            }
+            parser.nextToken();
+            return reader.readResponse(parser);
+        } catch (IOException e)
+        {
+            throw new RuntimeException(
+                    "Caught exception while trying to parse the service call's response!",
+                    e);
+        } finally
+        {
+            close(parser, entity);
+            endpoint.releaseResource(resource);
+        }
+    }
+
+    /**
+     * Encodes the arguments into the buffer and sends them as request
+     * through the given resource.
+     *
+     * @return the response's entity, which is not buffered
+     */
+    protected Representation send(final RCClientResource resource,
+            final Buffer buffer, final ArgsWriter args)
+    {
+        try
+        {
+            JsonGenerator generator = mapper.getFactory().createGenerator(
+                    buffer);
+            generator.writeStartObject();
+            generator.writeFieldName("args");
+            if (args != null)
+            {
+                args.writeArgs(generator);
+            } else
+            {
+                generator.writeStartArray();
+                generator.writeEndArray();
+            }
+            generator.writeEndObject();
+            generator.close();
+        } catch (IOException e)
+        {
+            throw new RuntimeException(
+                    "Caught exception while trying to write the service call's arguments!",
+                    e);
+        }
+
+        // / the request entity is written before put returns
+        resource.setResponseEntityBuffering(false);
+        return resource.put(new ByteArrayRepresentation(buffer.array(), 0,
+                buffer.size(), MediaType.APPLICATION_JSON));
+    }
+
+    /**
+     * Submit a call of a node's service without any arguments to be run in
+     * the background.
+     *
+     * @return handle of the running call
+     */
+    public ServiceJob submit()
+    {
+        return submit(null);
+    }
+
+    /**
+     * Submit a call of a node's service with arguments to be run in the
+     * background.
+     *
+     * The number of calls running at the same time on each node is limited,
+     * see {@link ServiceJob#setMaxConcurrentCalls(String, String, int)}.
+     *
+     * @param serviceArgs
+     *            the service call's arguments
+     * @return handle of the running call
+     */
+    public ServiceJob submit(final Object serviceArgs)
+    {
+        return ServiceJob.submit(this, serviceArgs);
+    }
+
+    /**
+     * Handler for elements of a streamed service response, see
+     * {@link Service#call(Object, String, Class, ElementHandler)}
+     */
+    public static interface ElementHandler<T>
+    {
+        void handle(T element);
+    }
+
+    /**
+     * Iterator over the elements of an array in a service call's response,
+     * decoding one element at a time while the response is being received.
+     *
+     * The iterator should be closed if it is not iterated to its end.
+     */
+    public static class ResponseIterator<T> implements Iterator<T>, Closeable
+    {
+        public boolean hasNext()
+        {
+            if (next == null && !finished)
+            {
+                try
+                {
+                    next = parser.nextToken();
+                    if (next == JsonToken.END_ARRAY || next == null)
+                    {
+                        close();
+                    }
+                } catch (IOException e)
+                {
+                    close();
+                    throw new RuntimeException(
+                            "Caught exception while trying to parse the service call's response!",
+                            e);
+                }
+            }
+            return !finished;
+        }
+
+        public T next()
+        {
+            if (!hasNext())
+            {
+                throw new NoSuchElementException();
+            }
+            next = null;
+            try
+            {
+                return parser.readValueAs(elementType);
+            } catch (IOException e)
+            {
+                close();
+                throw new RuntimeException(
+                        "Caught exception while trying to parse the service call's response!",
+                        e);
+            }
+        }
+
+        public void remove()
+        {
+            throw new UnsupportedOperationException();
+        }
+
+        public void close()
+        {
+            finished = true;
+            try
+            {
+                parser.close();
+            } catch (IOException e)
+            {
+                // nothing left to do
+            }
+            entity.release();
+        }
+
+        protected ResponseIterator(final Representation entity,
+                final JsonParser parser, final Class<T> elementType)
+        {
+            this.entity = entity;
+            this.parser = parser;
+            this.elementType = elementType;
+        }
+
+        protected final Representation entity;
+        protected final JsonParser parser;
+        protected final Class<T> elementType;
+        protected JsonToken next = null;
+        protected boolean finished = false;
+    }
+
+    /**
+     * Call a node's service with arguments and iterate over the elements of
+     * an array in its response while the response is being received.
+     *
+     * Example: for a response {"response": {"items": [...], "return_code":
+     * {...}}} the arrayPath is "items". Nested arrays are addressed by
+     * dot-separated paths, e.g. "result.items", and an empty path refers to
+     * the response itself.
+     *
+     * Note: Only the array's elements are decoded, all other fields of the
+     * response are skipped.
+     *
+     * @param serviceArgs
+     *            the service call's arguments
+     * @param arrayPath
+     *            path of the array within the response
+     * @param elementType
+     *            Java class as which each element is returned
+     * @return iterator over the array's elements, to be closed if not
+     *         iterated to its end
+     */
+    public <T> ResponseIterator<T> callStreaming(final Object serviceArgs,
+            final String arrayPath, final Class<T> elementType)
+    {
+        // / do not buffer the whole response
+        ClientResource resource = endpoint.newResource();
+        resource.setResponseEntityBuffering(false);
+        Representation entity = resource.put(createRequest(serviceArgs));
+
+        JsonParser parser = null;
+        try
+        {
+            if (entity == null)
+            {
+                throw new RuntimeException("Service returned no response!");
+            }
+            parser = mapper.getFactory().createParser(entity.getStream());
+            parser.setCodec(mapper);
+            if (parser.nextToken() != JsonToken.START_OBJECT
+                    || !seekField(parser, "response"))
+            {
+                throw new RuntimeException(
+                        "Service returned JSON object in wrong format!"
+                                + "\nExpected a field 'response'.");
+            }
+            if (arrayPath.length() > 0)
+            {
+                for (String field : arrayPath.split("\\."))
+                {
+                    if (parser.nextToken() != JsonToken.START_OBJECT
+                            || !seekField(parser, field))
+                    {
+                        throw new RuntimeException(
+                                "Service response has no field '" + arrayPath
+                                        + "'!");
+                    }
+                }
+            }
+            if (parser.nextToken() != JsonToken.START_ARRAY)
+            {
+                throw new RuntimeException("Service response field '"
+                        + arrayPath + "' is not an array!");
+            }
+            return new ResponseIterator<T>(entity, parser, elementType);
+        } catch (IOException e)
+        {
+            close(parser, entity);
+            throw new RuntimeException(
+                    "Caught exception while trying to parse the service call's response!",
+                    e);
+        } catch (RuntimeException e)
+        {
+            close(parser, entity);
+            throw e;
+        }
+    }
+
+    /**
+     * Call a node's service with arguments and hand each element of an array
+     * in its response to a handler while the response is being received.
+     *
+     * @see #callStreaming(Object, String, Class)
+     * @param serviceArgs
+     *            the service call's arguments
+     * @param arrayPath
+     *            path of the array within the response
+     * @param elementType
+     *            Java class as which each element is handled
+     * @param handler
+     *            called for each element
+     * @return number of elements handled
+     */
+    public <T> int call(final Object serviceArgs, final String arrayPath,
+            final Class<T> elementType, final ElementHandler<T> handler)
+    {
+        ResponseIterator<T> it = callStreaming(serviceArgs, arrayPath,
+                elementType);
+        try
+        {
+            int count = 0;
+            while (it.hasNext())
+            {
+                handler.handle(it.next());
+                count++;
+            }
+            return count;
+        } finally
+        {
+            it.close();
+        }
+    }
+
+    /**
+     * Creates the request object and fills it with the service args if not
+     * null or empty object, with empty list otherwise
+     */
+    protected static Object createRequest(final Object serviceArgs)
+    {
+        if (serviceArgs != null
+                && serviceArgs.getClass().getDeclaredFields().length > 0)
+        {
+            return new Object()
+            {
+                @SuppressWarnings("unused")
+                public Object args = serviceArgs;
+            };
+        }
+        return new Object()
+        {
+            @SuppressWarnings("unused")
+            public Object args = new ArrayList<Object>();
+        };
+    }
+
+    /**
+     * Moves the parser, positioned at the start of an object, to the value of
+     * the given field, skipping all fields before.
+     *
+     * @return false if the object has no such field
+     */
+    protected static boolean seekField(final JsonParser parser,
+            final String field) throws IOException
+    {
+        while (parser.nextToken() == JsonToken.FIELD_NAME)
+        {
+            if (field.equals(parser.getCurrentName()))
+            {
+                return true;
+            }
+            parser.nextToken();
+            parser.skipChildren();
+        }
+        return false;
+    }
+
+    /**
+     * Byte buffer whose backing array can be accessed without copying
+     */
+    protected static class Buffer extends ByteArrayOutputStream
+    {
+        public Buffer()
+        {
+            super(1024);
+        }
+
+        public byte[] array()
+        {
+            return buf;
+        }
+    }
+
+    // / largest buffer returned to the pool, larger ones are left to the GC
+    public static final int MAX_POOLED_BUFFER_SIZE = 64 * 1024;
+
+    // / number of buffers kept in the pool
+    public static final int MAX_POOLED_BUFFERS = 16;
+
+    // / request buffers shared by all threads
+    protected static final ConcurrentLinkedQueue<Buffer> BUFFERS = new ConcurrentLinkedQueue<Buffer>();
+    protected static final AtomicInteger POOLED_BUFFERS = new AtomicInteger();
+
+    protected static Buffer acquireBuffer()
+    {
+        Buffer buffer = BUFFERS.poll();
+        if (buffer == null)
+        {
+            return new Buffer();
+        }
+        POOLED_BUFFERS.decrementAndGet();
+        buffer.reset();
+        return buffer;
+    }
+
+    protected static void releaseBuffer(final Buffer buffer)
+    {
+        if (buffer.array().length > MAX_POOLED_BUFFER_SIZE)
+        {
+            return;
+        }
+        if (POOLED_BUFFERS.incrementAndGet() > MAX_POOLED_BUFFERS)
+        {
+            POOLED_BUFFERS.decrementAndGet();
+            return;
+        }
+        BUFFERS.offer(buffer);
+    }
+
+    protected static void close(final JsonParser parser,
+            final Representation entity)
+    {
+        if (parser != null)
+        {
+            try
+            {
+                parser.close();
+            } catch (IOException e)
+            {
+                // nothing left to do
+            }
+        }
+        if (entity != null)
+        {
+            entity.release();
+        }
+    }
+
     // / Service description
     protected Info info;
 
-    // / This represents a resource to do requests on
-    protected ClientResource resource;
+    // / the device and node offering this service
+    @PrintIgnore
+    protected String host, node;
+
+    // / This represents the endpoint to do requests on
+    @PrintIgnore
+    protected Endpoints.Endpoint endpoint;
 
     // / mapper for converting Json into Java class
+    @PrintIgnore
     protected ObjectMapper mapper = new ObjectMapper();
     protected Class<?> userDefinedResponseType;
 
+    // / reader of callInto's targets, caching their properties
+    @PrintIgnore
+    protected final InPlaceReader inPlace = new InPlaceReader(mapper);
+
     protected Service()
     {
         info = null;
-        resource = null;
+        endpoint = null;
         userDefinedResponseType = JsonNode.class;
-
-        // ignore some of this classes fields for generic printing
-        try
-        {
-            ignoreFieldWhenPrinting(getClass().getDeclaredField("resource"));
-            ignoreFieldWhenPrinting(getClass().getDeclaredField("mapper"));
-        } catch (Exception e)
-        {
-            throw new RuntimeException(
-                    "This should never happen! Caught exception during initialization of ServiceClient: "
-                            + e.getLocalizedMessage());
-        }
     }
 
     protected void setRemote(String host, String node, String service,
             boolean initialSyncFromRemote)
     {
 
-        resource = new RCClientResource(ApiUrls.service(host, node, service));
-        resource.setRequestEntityBuffering(true);
-        resource.setResponseEntityBuffering(true);
+        this.host = host;
+        this.node = node;
+        endpoint = Endpoints.forHost(host).service(node, service);
 
         if (initialSyncFromRemote)
         {
             // initially connect to service and get all service infos
-            info = resource.get(Info.class);
+            info = endpoint.newResource().get(Info.class).share();
         }
     }
 }
\ No newline at end of file
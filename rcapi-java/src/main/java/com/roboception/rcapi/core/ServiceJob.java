@@ -0,0 +1,319 @@
+/*
+ * Copyright (c) 2018 Roboception GmbH
+ * All rights reserved
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * 1. Redistributions of source code must retain the above copyright notice,
+ * this list of conditions and the following disclaimer.
+ *
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ * this list of conditions and the following disclaimer in the documentation
+ * and/or other materials provided with the distribution.
+ *
+ * 3. Neither the name of the copyright holder nor the names of its contributors
+ * may be used to endorse or promote products derived from this software without
+ * specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package com.roboception.rcapi.core;
+
+import java.util.LinkedList;
+import java.util.Queue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Handle of a service call running in the background, see
+ * {@link Service#submit(Object)}.
+ *
+ * A ServiceJob is a Future of the service call's result, i.e. it can be
+ * awaited with a deadline via get(timeout, unit). In addition, it offers its
+ * state and elapsed times. Cancelling a job only works locally: a
+ * queued job leaves the queue at once and is never sent, while the remote
+ * service of a running job still runs to completion but its result is
+ * discarded.
+ *
+ * The number of calls running at the same time is limited per node (default:
+ * 1), see {@link #setMaxConcurrentCalls(String, String, int)}; further jobs
+ * are queued in submission order.
+ *
+ */
+public class ServiceJob extends FutureTask<Object>
+{
+
+    public enum State
+    {
+        QUEUED, RUNNING, SUCCEEDED, FAILED, CANCELLED
+    }
+
+    /**
+     * Limits the number of service calls running at the same time on a node.
+     *
+     * @param host
+     *            the device's host name (DNS) or IP address as known in the
+     *            network
+     * @param node
+     *            the name of the node that offers the services
+     * @param maxConcurrentCalls
+     */
+    public static void setMaxConcurrentCalls(final String host,
+            final String node, final int maxConcurrentCalls)
+    {
+        if (maxConcurrentCalls < 1)
+        {
+            throw new IllegalArgumentException(
+                    "maxConcurrentCalls must be at least 1!");
+        }
+        NodeLimiter limiter = limiter(host, node);
+        synchronized (limiter)
+        {
+            limiter.max = maxConcurrentCalls;
+        }
+        limiter.dispatch();
+    }
+
+    public State getState()
+    {
+        if (isCancelled())
+        {
+            return State.CANCELLED;
+        }
+        return state;
+    }
+
+    public Service getService()
+    {
+        return service;
+    }
+
+    /**
+     * @param unit
+     * @return time since submission in the given unit
+     */
+    public long getElapsed(final TimeUnit unit)
+    {
+        long end = finishedNanos != 0 ? finishedNanos : System.nanoTime();
+        return unit.convert(end - submittedNanos, TimeUnit.NANOSECONDS);
+    }
+
+    /**
+     * @param unit
+     * @return time since the call has been sent in the given unit, or 0 if it
+     *         is still queued
+     */
+    public long getRunning(final TimeUnit unit)
+    {
+        if (startedNanos == 0)
+        {
+            return 0;
+        }
+        long end = finishedNanos != 0 ? finishedNanos : System.nanoTime();
+        return unit.convert(end - startedNanos, TimeUnit.NANOSECONDS);
+    }
+
+    @Override
+    public void run()
+    {
+        if (state == State.QUEUED)
+        {
+            startedNanos = System.nanoTime();
+            state = State.RUNNING;
+        }
+        super.run();
+    }
+
+    /**
+     * Cancels the job. A queued job is removed from its node's queue at once,
+     * so that it neither delays nor takes the place of jobs queued after it.
+     */
+    @Override
+    public boolean cancel(final boolean mayInterruptIfRunning)
+    {
+        boolean cancelled = super.cancel(mayInterruptIfRunning);
+        if (cancelled && limiter != null)
+        {
+            limiter.remove(this);
+        }
+        return cancelled;
+    }
+
+    /**
+     * Records the outcome before completing the job, as waiting callers may
+     * return from get() before done() is called.
+     */
+    @Override
+    protected void set(final Object result)
+    {
+        finishedNanos = System.nanoTime();
+        state = State.SUCCEEDED;
+        super.set(result);
+    }
+
+    @Override
+    protected void setException(final Throwable t)
+    {
+        finishedNanos = System.nanoTime();
+        state = State.FAILED;
+        super.setException(t);
+    }
+
+    @Override
+    protected void done()
+    {
+        if (finishedNanos == 0)
+        {
+            // / cancelled
+            finishedNanos = System.nanoTime();
+        }
+    }
+
+    @Override
+    public String toString()
+    {
+        return "ServiceJob{service="
+                + (service.getInfo() != null ? service.getInfo().name
+                        : service.endpoint) + ", state=" + getState()
+                + ", elapsed=" + getElapsed(TimeUnit.MILLISECONDS) + "ms}";
+    }
+
+    /**
+     * Creates and queues a job for calling the service.
+     */
+    protected static ServiceJob submit(final Service service,
+            final Object args)
+    {
+        ServiceJob job = new ServiceJob(service, new Callable<Object>()
+        {
+            public Object call()
+            {
+                return service.call(args);
+            }
+        });
+        NodeLimiter limiter = limiter(service.host, service.node);
+        job.limiter = limiter;
+        synchronized (limiter)
+        {
+            limiter.queue.add(job);
+        }
+        limiter.dispatch();
+        return job;
+    }
+
+    /**
+     * Queue and number of running jobs of a single node
+     */
+    protected static class NodeLimiter
+    {
+        /**
+         * Hands queued jobs to the executor as long as the limit allows.
+         */
+        protected void dispatch()
+        {
+            while (true)
+            {
+                final ServiceJob job;
+                synchronized (this)
+                {
+                    if (running >= max || queue.isEmpty())
+                    {
+                        return;
+                    }
+                    job = queue.poll();
+                    running++;
+                }
+                executor().execute(new Runnable()
+                {
+                    public void run()
+                    {
+                        try
+                        {
+                            job.run();
+                        } finally
+                        {
+                            synchronized (NodeLimiter.this)
+                            {
+                                running--;
+                            }
+                            dispatch();
+                        }
+                    }
+                });
+            }
+        }
+
+        /**
+         * Removes a job from the queue, if it is still queued.
+         */
+        protected synchronized void remove(final ServiceJob job)
+        {
+            queue.remove(job);
+        }
+
+        protected final Queue<ServiceJob> queue = new LinkedList<ServiceJob>();
+        protected int running = 0, max = 1;
+    }
+
+    protected static NodeLimiter limiter(final String host, final String node)
+    {
+        String key = host + "/" + node;
+        NodeLimiter limiter = limiters.get(key);
+        if (limiter == null)
+        {
+            limiter = new NodeLimiter();
+            NodeLimiter existing = limiters.putIfAbsent(key, limiter);
+            if (existing != null)
+            {
+                limiter = existing;
+            }
+        }
+        return limiter;
+    }
+
+    protected static synchronized ExecutorService executor()
+    {
+        if (executor == null)
+        {
+            executor = ExecutionBackend.newExecutor("rcapi-service-jobs",
+                    MAX_RUNNING_JOBS);
+        }
+        return executor;
+    }
+
+    // / upper bound of jobs running at the same time over all nodes
+    protected static final int MAX_RUNNING_JOBS = 64;
+
+    private static final ConcurrentMap<String, NodeLimiter> limiters = new ConcurrentHashMap<String, NodeLimiter>();
+    private static ExecutorService executor;
+
+    protected final Service service;
+
+    // / the limiter queueing this job, set on submission
+    protected volatile NodeLimiter limiter;
+    protected final long submittedNanos = System.nanoTime();
+    protected volatile long startedNanos, finishedNanos;
+    protected volatile State state = State.QUEUED;
+
+    protected ServiceJob(final Service service, final Callable<Object> call)
+    {
+        super(call);
+        this.service = service;
+    }
+}
@@ -0,0 +1,119 @@
+/*
+ * Copyright (c) 2018 Roboception GmbH
+ * All rights reserved
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * 1. Redistributions of source code must retain the above copyright notice,
+ * this list of conditions and the following disclaimer.
+ *
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ * this list of conditions and the following disclaimer in the documentation
+ * and/or other materials provided with the distribution.
+ *
+ * 3. Neither the name of the copyright holder nor the names of its contributors
+ * may be used to endorse or promote products derived from this software without
+ * specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package com.roboception.rcapi.core;
+
+import java.io.IOException;
+
+import com.fasterxml.jackson.core.JsonGenerator;
+
+/**
+ * A {@link TypedParameter} of type string.
+ *
+ */
+public class StringParameter extends TypedParameter
+{
+
+    /**
+     * Create a StringParameter and connect it with a remote Parameter. During
+     * creation an initial synchronization from the remote Parameter is issued.
+     *
+     * @param host
+     *            a server's host name (DNS) or IP address as known in the
+     *            network
+     * @param node
+     *            the name of the node that exhibits the Parameter
+     * @param name
+     *            the name of the Parameter itself
+     * @return
+     * @throws IllegalArgumentException
+     *             if the remote Parameter is not of type string
+     */
+    public static StringParameter connectTo(final String host,
+            final String node, final String name)
+    {
+        return connectTo(host, node, name, StringParameter.class);
+    }
+
+    public String getString()
+    {
+        return value;
+    }
+
+    public String getDefault()
+    {
+        return default_value;
+    }
+
+    public StringParameter setString(final String value)
+    {
+        if (value == null)
+        {
+            throw new IllegalArgumentException("Value of parameter '" + name
+                    + "' must not be null!");
+        }
+        this.value = value;
+        return this;
+    }
+
+    @Override
+    public StringParameter syncToRemote()
+    {
+        super.syncToRemote();
+        return this;
+    }
+
+    @Override
+    public StringParameter syncFromRemote()
+    {
+        super.syncFromRemote();
+        return this;
+    }
+
+    @Override
+    protected void writeValue(final JsonGenerator gen) throws IOException
+    {
+        gen.writeString(value);
+    }
+
+    @Override
+    protected void setValues(final Fields fields)
+    {
+        value = fields.strings[VALUE];
+        default_value = fields.strings[DEFAULT];
+    }
+
+    protected String value, default_value;
+
+    protected StringParameter()
+    {
+    }
+}
@@ -0,0 +1,365 @@
+/*
+ * Copyright (c) 2018 Roboception GmbH
+ * All rights reserved
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * 1. Redistributions of source code must retain the above copyright notice,
+ * this list of conditions and the following disclaimer.
+ *
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ * this list of conditions and the following disclaimer in the documentation
+ * and/or other materials provided with the distribution.
+ *
+ * 3. Neither the name of the copyright holder nor the names of its contributors
+ * may be used to endorse or promote products derived from this software without
+ * specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package com.roboception.rcapi.core;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Records all requests and responses passing through {@link RCClientResource}s
+ * to an append-only, memory-mapped log file, e.g. for replaying them later
+ * with a {@link TrafficReplay}.
+ *
+ * Each record holds the request's method, URL and entity, the response's
+ * status, media type and (decoded) entity, as well as when the request was
+ * sent and how long it took.
+ *
+ * Note: While recording, request and response entities are buffered
+ * completely, so that streamed responses are not streamed anymore.
+ *
+ */
+public final class TrafficRecorder
+{
+
+    /**
+     * A single recorded request and its response
+     */
+    public static final class Record extends GenericPrintable
+    {
+        /**
+         * @return nanoseconds since the recording started when the request was
+         *         sent
+         */
+        public long getStart()
+        {
+            return start;
+        }
+
+        /**
+         * @return nanoseconds it took until the response was received
+         */
+        public long getDuration()
+        {
+            return duration;
+        }
+
+        public String getMethod()
+        {
+            return method;
+        }
+
+        public String getUrl()
+        {
+            return url;
+        }
+
+        public int getStatus()
+        {
+            return status;
+        }
+
+        /**
+         * @return media type of the response, or null
+         */
+        public String getMediaType()
+        {
+            return mediaType;
+        }
+
+        public byte[] getRequest()
+        {
+            return request;
+        }
+
+        public byte[] getResponse()
+        {
+            return response;
+        }
+
+        protected Record(final long start, final long duration,
+                final String method, final String url, final int status,
+                final String mediaType, final byte[] request,
+                final byte[] response)
+        {
+            this.start = start;
+            this.duration = duration;
+            this.method = method;
+            this.url = url;
+            this.status = status;
+            this.mediaType = mediaType;
+            this.request = request;
+            this.response = response;
+        }
+
+        protected final long start, duration;
+        protected final String method, url;
+        protected final int status;
+        protected final String mediaType;
+        @PrintIgnore
+        protected final byte[] request, response;
+    }
+
+    /**
+     * Starts recording all traffic to the given file, replacing its contents.
+     * A recording already running is stopped.
+     *
+     * @param file
+     * @return the recorder, to be closed for stopping the recording
+     * @throws IOException
+     */
+    public static TrafficRecorder start(final File file) throws IOException
+    {
+        TrafficRecorder recorder = new TrafficRecorder(file);
+        TrafficRecorder previous;
+        synchronized (TrafficRecorder.class)
+        {
+            previous = active;
+            active = recorder;
+        }
+        if (previous != null)
+        {
+            previous.close();
+        }
+        return recorder;
+    }
+
+    /**
+     * Reads all records of a log file.
+     *
+     * @param file
+     * @return the records in the order they have been recorded
+     * @throws IOException
+     *             if the file cannot be read or is no traffic log
+     */
+    public static List<Record> read(final File file) throws IOException
+    {
+        RandomAccessFile raf = new RandomAccessFile(file, "r");
+        try
+        {
+            MappedByteBuffer buffer = raf.getChannel().map(
+                    FileChannel.MapMode.READ_ONLY, 0, raf.length());
+            if (buffer.remaining() < 8 || buffer.getInt() != MAGIC)
+            {
+                throw new IOException("Not a traffic log: " + file);
+            }
+            int version = buffer.getInt();
+            if (version != VERSION)
+            {
+                throw new IOException("Unsupported traffic log version "
+                        + version + ": " + file);
+            }
+
+            List<Record> records = new ArrayList<Record>();
+            while (buffer.remaining() >= 4)
+            {
+                int length = buffer.getInt();
+                if (length <= 0 || length > buffer.remaining())
+                {
+                    // / end of a log that has not been closed properly
+                    break;
+                }
+                records.add(new Record(buffer.getLong(), buffer.getLong(),
+                        readString(buffer), readString(buffer),
+                        buffer.getInt(), readString(buffer),
+                        readBytes(buffer), readBytes(buffer)));
+            }
+            return records;
+        } finally
+        {
+            raf.close();
+        }
+    }
+
+    /**
+     * @return the file recorded to
+     */
+    public File getFile()
+    {
+        return file;
+    }
+
+    /**
+     * @return number of records written so far
+     */
+    public synchronized int getRecordCount()
+    {
+        return count;
+    }
+
+    /**
+     * Stops recording and trims the file to the recorded size.
+     */
+    public void close()
+    {
+        synchronized (TrafficRecorder.class)
+        {
+            if (active == this)
+            {
+                active = null;
+            }
+        }
+        synchronized (this)
+        {
+            if (buffer == null)
+            {
+                return;
+            }
+            long size = mappedAt + buffer.position();
+            buffer.force();
+            buffer = null;
+            try
+            {
+                channel.truncate(size);
+            } catch (IOException e)
+            {
+                // / still readable, though padded with zeros
+            }
+            try
+            {
+                channel.close();
+            } catch (IOException e)
+            {
+                // nothing left to do
+            }
+        }
+    }
+
+    /**
+     * Appends a record to the log.
+     */
+    protected synchronized void write(final long startNanos,
+            final long duration, final String method, final String url,
+            final int status, final String mediaType, final byte[] request,
+            final byte[] response) throws IOException
+    {
+        if (buffer == null)
+        {
+            return;
+        }
+        byte[] methodBytes = bytes(method);
+        byte[] urlBytes = bytes(url);
+        byte[] typeBytes = bytes(mediaType);
+        int length = 8 + 8 + 4 + methodBytes.length + 4 + urlBytes.length + 4
+                + 4 + typeBytes.length + 4 + request.length + 4
+                + response.length;
+        reserve(4 + length);
+        buffer.putInt(length);
+        buffer.putLong(startNanos - started);
+        buffer.putLong(duration);
+        buffer.putInt(methodBytes.length).put(methodBytes);
+        buffer.putInt(urlBytes.length).put(urlBytes);
+        buffer.putInt(status);
+        buffer.putInt(typeBytes.length).put(typeBytes);
+        buffer.putInt(request.length).put(request);
+        buffer.putInt(response.length).put(response);
+        count++;
+    }
+
+    /**
+     * Makes sure the mapped region has room for the given number of bytes,
+     * mapping the next region of the file otherwise.
+     */
+    protected void reserve(final int bytes) throws IOException
+    {
+        if (buffer.remaining() < bytes)
+        {
+            mappedAt += buffer.position();
+            buffer.force();
+            buffer = channel.map(FileChannel.MapMode.READ_WRITE, mappedAt,
+                    Math.max(REGION_SIZE, bytes));
+        }
+    }
+
+    protected static byte[] bytes(final String string)
+    {
+        return string == null ? new byte[0] : string.getBytes(UTF8);
+    }
+
+    protected static byte[] readBytes(final ByteBuffer buffer)
+    {
+        byte[] bytes = new byte[buffer.getInt()];
+        buffer.get(bytes);
+        return bytes;
+    }
+
+    protected static String readString(final ByteBuffer buffer)
+    {
+        byte[] bytes = readBytes(buffer);
+        return bytes.length == 0 ? null : new String(bytes, UTF8);
+    }
+
+    /**
+     * @return the recorder currently recording, or null
+     */
+    protected static TrafficRecorder active()
+    {
+        return active;
+    }
+
+    private TrafficRecorder(final File file) throws IOException
+    {
+        this.file = file;
+        RandomAccessFile raf = new RandomAccessFile(file, "rw");
+        raf.setLength(0);
+        channel = raf.getChannel();
+        buffer = channel.map(FileChannel.MapMode.READ_WRITE, 0, REGION_SIZE);
+        buffer.putInt(MAGIC).putInt(VERSION);
+        started = System.nanoTime();
+    }
+
+    // / 'RCTR'
+    protected static final int MAGIC = 0x52435452;
+    protected static final int VERSION = 1;
+
+    // / size of the regions mapped at once
+    protected static final int REGION_SIZE = 16 * 1024 * 1024;
+
+    protected static final Charset UTF8 = Charset.forName("UTF-8");
+
+    private static volatile TrafficRecorder active;
+
+    private final File file;
+    private final FileChannel channel;
+    private final long started;
+
+    // / currently mapped region and its offset in the file
+    private MappedByteBuffer buffer;
+    private long mappedAt = 0;
+    private int count = 0;
+}
@@ -0,0 +1,205 @@
+/*
+ * Copyright (c) 2018 Roboception GmbH
+ * All rights reserved
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * 1. Redistributions of source code must retain the above copyright notice,
+ * this list of conditions and the following disclaimer.
+ *
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ * this list of conditions and the following disclaimer in the documentation
+ * and/or other materials provided with the distribution.
+ *
+ * 3. Neither the name of the copyright holder nor the names of its contributors
+ * may be used to endorse or promote products derived from this software without
+ * specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package com.roboception.rcapi.core;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.restlet.Request;
+import org.restlet.Response;
+import org.restlet.Restlet;
+import org.restlet.data.MediaType;
+import org.restlet.data.Status;
+import org.restlet.representation.ByteArrayRepresentation;
+
+/**
+ * Transport serving the responses recorded by a {@link TrafficRecorder}
+ * instead of sending requests to a device, e.g. for profiling the library on
+ * captured traffic without a sensor:
+ *
+ * <pre>
+ * Endpoints.setTransport(new TrafficReplay(log, 0));
+ * Visard visard = Visard.connectTo(host);
+ * </pre>
+ *
+ * Requests are matched by method, URL and a hash of their entity, so that
+ * e.g. service calls with different arguments get their own responses.
+ * Requests whose entity has not been recorded fall back to the responses
+ * recorded for their method and URL. Repeated requests get the recorded
+ * responses in their original order, starting over when all of them have
+ * been served. Requests to URLs that have not been recorded fail with status
+ * 404.
+ *
+ */
+public class TrafficReplay extends Restlet
+{
+
+    /**
+     * Creates a replay of the given log.
+     *
+     * @param log
+     *            file written by a {@link TrafficRecorder}
+     * @param speed
+     *            factor for the recorded durations of the requests: 1 to
+     *            replay with the original timing, 2 for twice as fast, 0 for
+     *            serving responses without any delay
+     * @throws IOException
+     *             if the log cannot be read
+     */
+    public TrafficReplay(final File log, final double speed)
+            throws IOException
+    {
+        this(TrafficRecorder.read(log), speed);
+    }
+
+    /**
+     * Creates a replay of the given records.
+     *
+     * @param records
+     * @param speed
+     *            see {@link #TrafficReplay(File, double)}
+     */
+    public TrafficReplay(final List<TrafficRecorder.Record> records,
+            final double speed)
+    {
+        if (speed < 0)
+        {
+            throw new IllegalArgumentException("Speed must not be negative!");
+        }
+        this.speed = speed;
+        for (TrafficRecorder.Record record : records)
+        {
+            String key = key(record.getMethod(), record.getUrl());
+            add(responses, key(key, record.getRequest()), record);
+            add(fallbacks, key, record);
+        }
+    }
+
+    @Override
+    public void handle(final Request request, final Response response)
+    {
+        String key = key(request.getMethod().getName(), request
+                .getResourceRef().toString());
+        byte[] entity;
+        try
+        {
+            entity = RCClientResource.buffer(request.getEntity());
+        } catch (IOException e)
+        {
+            response.setStatus(Status.CONNECTOR_ERROR_COMMUNICATION);
+            return;
+        }
+        Recorded recorded = responses.get(key(key, entity));
+        if (recorded == null)
+        {
+            recorded = fallbacks.get(key);
+        }
+        if (recorded == null)
+        {
+            response.setStatus(Status.CLIENT_ERROR_NOT_FOUND);
+            return;
+        }
+
+        TrafficRecorder.Record record = recorded.next();
+        if (speed > 0)
+        {
+            try
+            {
+                TimeUnit.NANOSECONDS.sleep((long) (record.getDuration() / speed));
+            } catch (InterruptedException e)
+            {
+                Thread.currentThread().interrupt();
+                response.setStatus(Status.CONNECTOR_ERROR_CONNECTION);
+                return;
+            }
+        }
+
+        response.setStatus(Status.valueOf(record.getStatus()));
+        if (record.getResponse().length > 0)
+        {
+            response.setEntity(new ByteArrayRepresentation(record
+                    .getResponse(), record.getMediaType() == null ? null
+                    : MediaType.valueOf(record.getMediaType())));
+        }
+    }
+
+    /**
+     * Recorded responses of a single request
+     */
+    protected static final class Recorded
+    {
+        protected TrafficRecorder.Record next()
+        {
+            int i = served.getAndIncrement();
+            return records.get((i & Integer.MAX_VALUE) % records.size());
+        }
+
+        protected final List<TrafficRecorder.Record> records = new ArrayList<TrafficRecorder.Record>();
+        protected final AtomicInteger served = new AtomicInteger();
+    }
+
+    protected static void add(final Map<String, Recorded> responses,
+            final String key, final TrafficRecorder.Record record)
+    {
+        Recorded recorded = responses.get(key);
+        if (recorded == null)
+        {
+            recorded = new Recorded();
+            responses.put(key, recorded);
+        }
+        recorded.records.add(record);
+    }
+
+    protected static String key(final String method, final String url)
+    {
+        return method + ' ' + url;
+    }
+
+    protected static String key(final String methodAndUrl, final byte[] entity)
+    {
+        return methodAndUrl + ' ' + entity.length + ':'
+                + Integer.toHexString(Arrays.hashCode(entity));
+    }
+
+    // / read-only after construction, by method, URL and entity hash
+    protected final Map<String, Recorded> responses = new HashMap<String, Recorded>();
+    // / read-only after construction, by method and URL only
+    protected final Map<String, Recorded> fallbacks = new HashMap<String, Recorded>();
+    protected final double speed;
+}
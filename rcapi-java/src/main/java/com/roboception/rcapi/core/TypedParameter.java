@@ -0,0 +1,364 @@
+/*
+ * Copyright (c) 2018 Roboception GmbH
+ * All rights reserved
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * 1. Redistributions of source code must retain the above copyright notice,
+ * this list of conditions and the following disclaimer.
+ *
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ * this list of conditions and the following disclaimer in the documentation
+ * and/or other materials provided with the distribution.
+ *
+ * 3. Neither the name of the copyright holder nor the names of its contributors
+ * may be used to endorse or promote products derived from this software without
+ * specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package com.roboception.rcapi.core;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.StringWriter;
+
+import org.restlet.data.MediaType;
+import org.restlet.representation.Representation;
+import org.restlet.representation.StringRepresentation;
+import org.restlet.resource.ClientResource;
+
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
+
+/**
+ * Base class of primitive-specialized counterparts of {@link Parameter}.
+ *
+ * Depending on the Parameter's type, the value, min, max and default values
+ * are stored as primitives (see {@link DoubleParameter}, {@link IntParameter},
+ * {@link BoolParameter} and {@link StringParameter}). Values are checked
+ * against min and max locally when being set, and are read from and written to
+ * the remote resource with a streaming JSON parser/generator, i.e. without
+ * boxing.
+ *
+ */
+public abstract class TypedParameter extends GenericPrintable
+{
+
+    /**
+     * Create a typed Parameter matching the remote Parameter's type and
+     * connect it to the remote Parameter. During creation an initial
+     * synchronization from the remote Parameter is issued.
+     *
+     * @param host
+     *            a server's host name (DNS) or IP address as known in the
+     *            network
+     * @param node
+     *            the name of the node that exhibits the Parameter
+     * @param name
+     *            the name of the Parameter itself
+     * @return a DoubleParameter, IntParameter, BoolParameter or
+     *         StringParameter
+     */
+    public static TypedParameter connectTo(final String host,
+            final String node, final String name)
+    {
+        ClientResource resource = createResource(host, node, name);
+        Fields fields = new Fields();
+        read(resource.get(), fields);
+
+        TypedParameter param = forType(fields.type);
+        param.resource = resource;
+        param.set(fields);
+        return param;
+    }
+
+    public String getName()
+    {
+        return name;
+    }
+
+    public String getDescription()
+    {
+        return description;
+    }
+
+    public String getType()
+    {
+        return type;
+    }
+
+    /**
+     * Update the remote Parameter's value with the local value.
+     *
+     * Note: After syncing to remote, this local entity is updated with the
+     * values from remote.
+     */
+    public TypedParameter syncToRemote()
+    {
+        StringWriter json = new StringWriter();
+        try
+        {
+            JsonGenerator gen = JSON.createGenerator(json);
+            gen.writeStartObject();
+            gen.writeStringField("name", name);
+            gen.writeFieldName("value");
+            writeValue(gen);
+            gen.writeEndObject();
+            gen.close();
+        } catch (IOException e)
+        {
+            throw new RuntimeException("Could not serialize parameter '"
+                    + name + "'!", e);
+        }
+
+        Fields fields = new Fields();
+        read(resource.put(new StringRepresentation(json.toString(),
+                MediaType.APPLICATION_JSON)), fields);
+        set(fields);
+        return this;
+    }
+
+    /**
+     * Update local entity from remote resource
+     */
+    public TypedParameter syncFromRemote()
+    {
+        Fields fields = new Fields();
+        read(resource.get(), fields);
+        set(fields);
+        return this;
+    }
+
+    /**
+     * Parsed values of a remote Parameter. Numbers are kept in both double and
+     * long representation, so that each typed Parameter can pick its primitive
+     * without boxing.
+     */
+    protected static class Fields
+    {
+        String name, description, type;
+
+        // / indices: value, min, max, default
+        final boolean[] present = new boolean[4];
+        final double[] doubles = new double[4];
+        final long[] longs = new long[4];
+        final boolean[] bools = new boolean[4];
+        final String[] strings = new String[4];
+    }
+
+    protected static final int VALUE = 0, MIN = 1, MAX = 2, DEFAULT = 3;
+
+    /**
+     * Writes the local value with the given generator.
+     */
+    protected abstract void writeValue(JsonGenerator gen) throws IOException;
+
+    /**
+     * Sets this Parameter's primitives from the parsed fields.
+     */
+    protected abstract void setValues(Fields fields);
+
+    protected void set(final Fields fields)
+    {
+        if (!kindOf(fields.type).equals(getClass()))
+        {
+            throw new IllegalStateException("Parameter '" + fields.name
+                    + "' changed its type to '" + fields.type + "'!");
+        }
+        // / shared with the same Parameter of other devices
+        name = strings.intern(fields.name);
+        description = strings.intern(fields.description);
+        type = strings.intern(fields.type);
+        setValues(fields);
+    }
+
+    /**
+     * Creates an empty typed Parameter for the given rcapi type.
+     */
+    protected static TypedParameter forType(final String type)
+    {
+        Class<? extends TypedParameter> kind = kindOf(type);
+        if (kind.equals(DoubleParameter.class))
+        {
+            return new DoubleParameter();
+        }
+        if (kind.equals(IntParameter.class))
+        {
+            return new IntParameter();
+        }
+        if (kind.equals(BoolParameter.class))
+        {
+            return new BoolParameter();
+        }
+        return new StringParameter();
+    }
+
+    /**
+     * Maps an rcapi type to the class of typed Parameter representing it.
+     */
+    protected static Class<? extends TypedParameter> kindOf(final String type)
+    {
+        if (type == null)
+        {
+            throw new IllegalArgumentException("Parameter has no type!");
+        }
+        if (type.startsWith("float") || type.equals("double"))
+        {
+            return DoubleParameter.class;
+        }
+        if (type.startsWith("int") || type.startsWith("uint"))
+        {
+            return IntParameter.class;
+        }
+        if (type.equals("bool"))
+        {
+            return BoolParameter.class;
+        }
+        if (type.equals("string"))
+        {
+            return StringParameter.class;
+        }
+        throw new IllegalArgumentException("Unsupported parameter type '"
+                + type + "'!");
+    }
+
+    protected static ClientResource createResource(final String host,
+            final String node, final String name)
+    {
+        return Endpoints.forHost(host).parameter(node, name).newResource();
+    }
+
+    /**
+     * Parses a remote Parameter's JSON representation into fields.
+     */
+    protected static void read(final Representation rep, final Fields fields)
+    {
+        try
+        {
+            InputStream in = rep.getStream();
+            JsonParser parser = JSON.createParser(in);
+            try
+            {
+                if (parser.nextToken() != JsonToken.START_OBJECT)
+                {
+                    throw new IOException("Expected a JSON object!");
+                }
+                while (parser.nextToken() == JsonToken.FIELD_NAME)
+                {
+                    String field = parser.getCurrentName();
+                    JsonToken token = parser.nextToken();
+                    if (field.equals("name"))
+                    {
+                        fields.name = parser.getText();
+                    } else if (field.equals("description"))
+                    {
+                        fields.description = parser.getText();
+                    } else if (field.equals("type"))
+                    {
+                        fields.type = parser.getText();
+                    } else if (field.equals("value"))
+                    {
+                        readValue(parser, token, fields, VALUE);
+                    } else if (field.equals("min"))
+                    {
+                        readValue(parser, token, fields, MIN);
+                    } else if (field.equals("max"))
+                    {
+                        readValue(parser, token, fields, MAX);
+                    } else if (field.equals("default"))
+                    {
+                        readValue(parser, token, fields, DEFAULT);
+                    } else
+                    {
+                        parser.skipChildren();
+                    }
+                }
+            } finally
+            {
+                parser.close();
+            }
+        } catch (IOException e)
+        {
+            throw new RuntimeException(
+                    "Caught exception while trying to parse parameter!", e);
+        }
+    }
+
+    protected static void readValue(final JsonParser parser,
+            final JsonToken token, final Fields fields, final int index)
+            throws IOException
+    {
+        switch (token)
+        {
+        case VALUE_NUMBER_INT:
+            fields.longs[index] = parser.getLongValue();
+            fields.doubles[index] = fields.longs[index];
+            break;
+        case VALUE_NUMBER_FLOAT:
+            fields.doubles[index] = parser.getDoubleValue();
+            fields.longs[index] = (long) fields.doubles[index];
+            break;
+        case VALUE_TRUE:
+        case VALUE_FALSE:
+            fields.bools[index] = token == JsonToken.VALUE_TRUE;
+            break;
+        case VALUE_STRING:
+            fields.strings[index] = parser.getText();
+            break;
+        case VALUE_NULL:
+            return;
+        default:
+            parser.skipChildren();
+            return;
+        }
+        fields.present[index] = true;
+    }
+
+    protected static final JsonFactory JSON = new JsonFactory();
+
+    // / canonical names, descriptions and types of all typed Parameters
+    private static final Interner<String> strings = new Interner<String>();
+
+    // / Properties of an rcapi Parameter
+    protected String name, description, type;
+
+    // / remote resource of this Parameter
+    @PrintIgnore
+    protected ClientResource resource;
+
+    protected TypedParameter()
+    {
+    }
+
+    /**
+     * Connects to a remote Parameter and checks that it is of the expected
+     * kind.
+     */
+    protected static <T extends TypedParameter> T connectTo(final String host,
+            final String node, final String name, final Class<T> kind)
+    {
+        TypedParameter param = connectTo(host, node, name);
+        if (!kind.isInstance(param))
+        {
+            throw new IllegalArgumentException("Parameter '" + name
+                    + "' is of type '" + param.getType() + "' and not a "
+                    + kind.getSimpleName() + "!");
+        }
+        return kind.cast(param);
+    }
+}
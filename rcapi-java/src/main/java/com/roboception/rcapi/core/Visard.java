@@ -33,16 +33,26 @@
 
 package com.roboception.rcapi.core;
 
+import java.io.IOException;
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.HashMap;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
 
-import org.restlet.resource.ClientResource;
-import org.restlet.resource.Get;
+import org.reactivestreams.Publisher;
 
 import com.fasterxml.jackson.annotation.JsonIgnore;
 import com.fasterxml.jackson.annotation.JsonProperty;
+import com.fasterxml.jackson.databind.JsonNode;
 
 /**
  * Representation of an rc_visard's remote REST-API providing
@@ -104,9 +114,42 @@ public class Visard
         public double time, uptime;
         public boolean ready;
 
+        /**
+         * Creates a publisher emitting snapshots of a device's system state
+         * at the given rate. Share the publisher between all subscribers
+         * interested in the same device, as each publisher polls the remote
+         * system state on its own.
+         *
+         * @param host
+         * @param period
+         *            time between two snapshots
+         * @param unit
+         *            unit of period
+         * @return the publisher
+         */
+        public static Publisher<SysInfo> publisher(final String host,
+                final long period, final TimeUnit unit)
+        {
+            final Endpoints.Endpoint endpoint = Endpoints.forHost(host)
+                    .system();
+            return new PollingPublisher<SysInfo>("rcapi-sysinfo-" + host,
+                    new PollingPublisher.Source<SysInfo>()
+                    {
+                        public SysInfo poll()
+                        {
+                            return endpoint.read().decode(SysInfo.class);
+                        }
+                    }, period, unit);
+        }
+
         public SysInfo syncFromRemote()
         {
-            SysInfo got = remote.get();
+            if (endpoint == null)
+            {
+                throw new IllegalStateException(
+                        "System info snapshots cannot be synced from remote!");
+            }
+            SysInfo got = endpoint.read().decode(SysInfo.class);
             this.firmware = got.firmware;
             this.hostname = got.hostname;
             this.link_speed = got.link_speed;
@@ -120,26 +163,14 @@ public class Visard
             return this;
         }
 
-        /**
-         * client interface for retrieving the SysInfo from the remote resource
-         */
-        protected static interface ClientInterface
-        {
-            @Get
-            public SysInfo get();
-        }
-
         // / remote resource of this SysInfo
         @JsonIgnore
-        protected ClientInterface remote;
+        @PrintIgnore
+        protected Endpoints.Endpoint endpoint;
 
         protected void setRemote(final String host)
         {
-            ClientResource resource = new RCClientResource(
-                    ApiUrls.entrypoint(host) + "/system");
-            resource.setRequestEntityBuffering(true);
-            resource.setResponseEntityBuffering(true);
-            remote = resource.wrap(ClientInterface.class);
+            endpoint = Endpoints.forHost(host).system();
         }
 
         // / prevent public instantiation
@@ -148,11 +179,165 @@ public class Visard
         }
     }
 
+    /**
+     * Status of all nodes and the system state of an rc_visard, queried at
+     * the same moment.
+     *
+     * The snapshot is immutable: it keeps the answers as received and each
+     * call to {@link #getSystemInfo()} or {@link #getStatuses()} returns
+     * fresh copies decoded from them. Changing a returned copy never affects
+     * the snapshot or other callers. The copies are not connected to the
+     * remote (syncing them throws an IllegalStateException), and the maps
+     * returned are unmodifiable.
+     *
+     */
+    public static final class Snapshot extends GenericPrintable
+    {
+        /**
+         * @return UNIX timestamp in ms when the snapshot has been requested
+         */
+        public long getTimestamp()
+        {
+            return timestamp;
+        }
+
+        /**
+         * @return a fresh copy of the system state, or null if it could not
+         *         be queried
+         */
+        public SysInfo getSystemInfo()
+        {
+            if (systemInfo == null)
+            {
+                return null;
+            }
+            return decodeSystemInfo(systemInfo);
+        }
+
+        /**
+         * @return the cause of failure to query the system state, e.g. a
+         *         TimeoutException, or null if it could be queried
+         */
+        public Exception getSystemError()
+        {
+            return systemError;
+        }
+
+        /**
+         * @return node name to a fresh copy of the status for all nodes that
+         *         could be queried
+         */
+        public Map<String, Node.Status> getStatuses()
+        {
+            Map<String, Node.Status> copies = new LinkedHashMap<String, Node.Status>();
+            for (Map.Entry<String, JsonNode> status : statuses.entrySet())
+            {
+                copies.put(status.getKey(), decodeStatus(status.getValue()));
+            }
+            return Collections.unmodifiableMap(copies);
+        }
+
+        /**
+         * @return node name to the cause of failure for all nodes that could
+         *         not be queried, e.g. a TimeoutException
+         */
+        public Map<String, Exception> getErrors()
+        {
+            return errors;
+        }
+
+        /**
+         * @return true if the system state and all nodes' statuses could be
+         *         queried
+         */
+        public boolean isComplete()
+        {
+            return systemError == null && errors.isEmpty();
+        }
+
+        protected static SysInfo decodeSystemInfo(final JsonNode json)
+        {
+            try
+            {
+                return PayloadCache.MAPPER.treeToValue(json, SysInfo.class);
+            } catch (IOException e)
+            {
+                throw new RuntimeException(
+                        "Caught exception while trying to parse system info!",
+                        e);
+            }
+        }
+
+        protected static Node.Status decodeStatus(final JsonNode json)
+        {
+            Node.Status status = new Node.Status(json);
+            status.values = Collections.unmodifiableMap(status.values);
+            return status;
+        }
+
+        /**
+         * @param timestamp
+         * @param systemInfo
+         *            JSON answer of the system state, or null
+         * @param systemError
+         * @param statuses
+         *            node name to JSON answer of its status
+         * @param errors
+         */
+        protected Snapshot(final long timestamp, final JsonNode systemInfo,
+                final Exception systemError,
+                final Map<String, JsonNode> statuses,
+                final Map<String, Exception> errors)
+        {
+            this.timestamp = timestamp;
+            this.systemInfo = systemInfo == null ? null : systemInfo
+                    .deepCopy();
+            this.systemError = systemError;
+            Map<String, JsonNode> copies = new LinkedHashMap<String, JsonNode>();
+            for (Map.Entry<String, JsonNode> status : statuses.entrySet())
+            {
+                copies.put(status.getKey(), status.getValue().deepCopy());
+            }
+            this.statuses = copies;
+            this.errors = Collections
+                    .unmodifiableMap(new LinkedHashMap<String, Exception>(
+                            errors));
+        }
+
+        private final long timestamp;
+        private final JsonNode systemInfo;
+        private final Exception systemError;
+        private final Map<String, JsonNode> statuses;
+        private final Map<String, Exception> errors;
+    }
+
     public static Visard connectTo(final String remoteHost)
     {
         return new Visard(remoteHost);
     }
 
+    /**
+     * Connects to an rc_visard like {@link #connectTo(String)}, opening
+     * connections in advance, so that the first requests find the host
+     * resolved and connections established, see {@link HostResolver}.
+     *
+     * @param remoteHost
+     * @param warmConnections
+     *            number of connections to open in advance
+     * @return the connected rc_visard
+     */
+    public static Visard connectTo(final String remoteHost,
+            final int warmConnections)
+    {
+        HostResolver.prewarm(remoteHost, warmConnections);
+        return new Visard(remoteHost);
+    }
+
+    public String getHost()
+    {
+        return host;
+    }
+
     public Node getNode(final String name)
     {
         if (!nodes.containsKey(name))
@@ -189,6 +374,98 @@ public class Visard
         return nodeInfos;
     }
 
+    /**
+     * Queries the status of all nodes and the system state in parallel.
+     *
+     * Nodes (or the system state) that did not answer within the timeout are
+     * missing in the snapshot and reported as errors instead.
+     *
+     * @param timeout
+     * @param unit
+     * @return the snapshot
+     */
+    public Snapshot snapshot(final long timeout, final TimeUnit unit)
+    {
+        long timestamp = System.currentTimeMillis();
+        final Endpoints endpoints = Endpoints.forHost(host);
+
+        // / the system state is queried first, followed by all nodes
+        List<Callable<Object>> tasks = new ArrayList<Callable<Object>>();
+        tasks.add(new Callable<Object>()
+        {
+            public Object call()
+            {
+                JsonNode json = endpoints.system().newResource()
+                        .get(JsonNode.class);
+                // decode once, so that malformed answers count as errors
+                Snapshot.decodeSystemInfo(json);
+                return json;
+            }
+        });
+        for (final Node.Info nodeInfo : nodeInfos)
+        {
+            tasks.add(new Callable<Object>()
+            {
+                public Object call()
+                {
+                    JsonNode json = endpoints.status(nodeInfo.name)
+                            .newResource().get(JsonNode.class);
+                    Snapshot.decodeStatus(json);
+                    return json;
+                }
+            });
+        }
+
+        JsonNode sysInfo = null;
+        Exception sysError = null;
+        Map<String, JsonNode> statuses = new LinkedHashMap<String, JsonNode>();
+        Map<String, Exception> errors = new LinkedHashMap<String, Exception>();
+        ExecutorService executor = ExecutionBackend.newExecutor(
+                "rcapi-snapshot", tasks.size());
+        try
+        {
+            List<Future<Object>> futures = executor.invokeAll(tasks, timeout,
+                    unit);
+            for (int i = 0; i < futures.size(); i++)
+            {
+                Object result = null;
+                Exception error = null;
+                try
+                {
+                    result = futures.get(i).get();
+                } catch (CancellationException e)
+                {
+                    error = new TimeoutException("No answer within timeout!");
+                } catch (ExecutionException e)
+                {
+                    error = e.getCause() instanceof Exception ? (Exception) e
+                            .getCause() : e;
+                }
+                if (i == 0)
+                {
+                    sysInfo = (JsonNode) result;
+                    sysError = error;
+                } else if (error == null)
+                {
+                    statuses.put(nodeInfos.get(i - 1).name,
+                            (JsonNode) result);
+                } else
+                {
+                    errors.put(nodeInfos.get(i - 1).name, error);
+                }
+            }
+        } catch (InterruptedException e)
+        {
+            Thread.currentThread().interrupt();
+            throw new RuntimeException("Interrupted during snapshot of " + host,
+                    e);
+        } finally
+        {
+            executor.shutdownNow();
+        }
+        return new Snapshot(timestamp, sysInfo, sysError, statuses, errors);
+    }
+
     @SuppressWarnings("serial")
     public static class NodeInfoList extends ArrayList<Node.Info>
     {
@@ -199,11 +476,8 @@ public class Visard
         host = remoteHost;
 
         // gather infos about all nodes
-        ClientResource nodesResource = new RCClientResource(
-                ApiUrls.nodes(remoteHost));
-        nodesResource.setRequestEntityBuffering(true);
-        nodesResource.setResponseEntityBuffering(true);
-        nodeInfos = nodesResource.get(NodeInfoList.class);
+        nodeInfos = Endpoints.forHost(remoteHost).nodes().newResource()
+                .get(NodeInfoList.class);
 
         // initialize node-map with node skeletons
         nodes = new HashMap<String, Node>();
@@ -0,0 +1,108 @@
+/*
+ * Copyright (c) 2018 Roboception GmbH
+ * All rights reserved
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * 1. Redistributions of source code must retain the above copyright notice,
+ * this list of conditions and the following disclaimer.
+ *
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ * this list of conditions and the following disclaimer in the documentation
+ * and/or other materials provided with the distribution.
+ *
+ * 3. Neither the name of the copyright holder nor the names of its contributors
+ * may be used to endorse or promote products derived from this software without
+ * specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package com.roboception.rcapi.core;
+
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+
+/**
+ * Creates the threads all blocking REST-API calls and polling loops of this
+ * library run on.
+ *
+ * This is the Java 21 implementation of the multi-release jar, running all
+ * tasks on virtual threads, so that thousands of concurrent blocking calls do
+ * not need thousands of OS threads. Setting the system property
+ * rcapi.virtualThreads=false falls back to platform threads.
+ *
+ */
+public final class ExecutionBackend
+{
+
+    /**
+     * Creates an executor running at most maxThreads tasks at the same time.
+     *
+     * @param name
+     *            prefix for the threads' names
+     * @param maxThreads
+     *            maximum number of concurrently running tasks
+     * @return the executor
+     */
+    public static ExecutorService newExecutor(final String name,
+            final int maxThreads)
+    {
+        return Executors.newFixedThreadPool(maxThreads, threadFactory(name));
+    }
+
+    /**
+     * Creates a (not yet started) thread, e.g. for a polling loop.
+     *
+     * @param name
+     *            the thread's name
+     * @param task
+     *            the thread's task
+     * @return the thread
+     */
+    public static Thread newThread(final String name, final Runnable task)
+    {
+        if (VIRTUAL)
+        {
+            return Thread.ofVirtual().name(name).unstarted(task);
+        }
+        return Thread.ofPlatform().name(name).daemon(true).unstarted(task);
+    }
+
+    /**
+     * @return true if tasks are executed on virtual threads
+     */
+    public static boolean isVirtual()
+    {
+        return VIRTUAL;
+    }
+
+    protected static ThreadFactory threadFactory(final String name)
+    {
+        if (VIRTUAL)
+        {
+            return Thread.ofVirtual().name(name + "-", 1).factory();
+        }
+        return Thread.ofPlatform().name(name + "-", 1).daemon(true).factory();
+    }
+
+    private static final boolean VIRTUAL = !"false".equalsIgnoreCase(System
+            .getProperty("rcapi.virtualThreads"));
+
+    private ExecutionBackend()
+    {
+        // to prevent instantiation
+    }
+}
@@ -0,0 +1,129 @@
+/*
+ * Copyright (c) 2018 Roboception GmbH
+ * All rights reserved
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * 1. Redistributions of source code must retain the above copyright notice,
+ * this list of conditions and the following disclaimer.
+ *
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ * this list of conditions and the following disclaimer in the documentation
+ * and/or other materials provided with the distribution.
+ *
+ * 3. Neither the name of the copyright holder nor the names of its contributors
+ * may be used to endorse or promote products derived from this software without
+ * specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package com.roboception.rcapi.core;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+
+public class ClockSyncTest
+{
+
+    @Test
+    public void fitsOffsetAndDrift()
+    {
+        ClockSync sync = new ClockSync("10.0.2.40", 0);
+        for (int i = 0; i < 20; i++)
+        {
+            double local = T0 + i;
+            sync.addSample(new ClockSync.Sample(local, offsetAt(local), 0.002),
+                    null);
+        }
+
+        ClockSync.Model model = sync.getModel();
+        assertEquals(20, model.samples);
+        assertEquals(DRIFT, model.drift, 1e-9);
+        assertEquals(offsetAt(T0 + 100), model.offsetAt(T0 + 100), 1e-9);
+        assertEquals(0, model.deviation, 1e-9);
+        assertEquals(0.002, model.minRoundTrip, 1e-12);
+    }
+
+    @Test
+    public void discardsSamplesWithSlowRoundTrips()
+    {
+        ClockSync sync = new ClockSync("10.0.2.40", 0);
+        for (int i = 0; i < 10; i++)
+        {
+            double local = T0 + i;
+            sync.addSample(new ClockSync.Sample(local, offsetAt(local), 0.002),
+                    null);
+        }
+        // / answered late, so its offset is off by half the round trip
+        sync.addSample(new ClockSync.Sample(T0 + 10, offsetAt(T0 + 10) + 0.5,
+                1.0), null);
+
+        ClockSync.Model model = sync.getModel();
+        assertEquals(10, model.samples);
+        assertEquals(offsetAt(T0 + 10), model.offsetAt(T0 + 10), 1e-9);
+    }
+
+    @Test
+    public void keepsSlidingWindow()
+    {
+        ClockSync sync = new ClockSync("10.0.2.40", 0);
+        for (int i = 0; i < 2 * ClockSync.WINDOW_SIZE; i++)
+        {
+            double local = T0 + i;
+            // / the clock jumps halfway, the window forgets the old samples
+            double offset = i < ClockSync.WINDOW_SIZE ? 7.0 : 2.5;
+            sync.addSample(new ClockSync.Sample(local, offset, 0.002), null);
+        }
+        assertEquals(ClockSync.WINDOW_SIZE, sync.window.size());
+        assertEquals(2.5, sync.getModel().offsetAt(T0), 1e-9);
+    }
+
+    @Test
+    public void convertsBothWays()
+    {
+        ClockSync sync = new ClockSync("10.0.2.40", 0);
+        assertFalse(sync.isValid());
+        for (int i = 0; i < 5; i++)
+        {
+            double local = T0 + i;
+            sync.addSample(new ClockSync.Sample(local, offsetAt(local), 0.002),
+                    null);
+        }
+        assertTrue(sync.isValid());
+
+        double local = T0 + 42.125;
+        double sensor = sync.localToSensor(local);
+        // / UNIX timestamps in s are resolved to about 0.2 us
+        assertEquals(local + offsetAt(local), sensor, 1e-6);
+        assertEquals(local, sync.sensorToLocal(sensor), 1e-6);
+    }
+
+    @Test(expected = IllegalStateException.class)
+    public void hasNoModelWithoutSamples()
+    {
+        new ClockSync("10.0.2.40", 0).getModel();
+    }
+
+    protected static double offsetAt(final double local)
+    {
+        return 2.5 + DRIFT * (local - T0);
+    }
+
+    protected static final double T0 = 1500000000.0;
+    protected static final double DRIFT = 2e-5;
+}
@@ -0,0 +1,204 @@
+/*
+ * Copyright (c) 2018 Roboception GmbH
+ * All rights reserved
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * 1. Redistributions of source code must retain the above copyright notice,
+ * this list of conditions and the following disclaimer.
+ *
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ * this list of conditions and the following disclaimer in the documentation
+ * and/or other materials provided with the distribution.
+ *
+ * 3. Neither the name of the copyright holder nor the names of its contributors
+ * may be used to endorse or promote products derived from this software without
+ * specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package com.roboception.rcapi.core;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.zip.DeflaterOutputStream;
+import java.util.zip.GZIPOutputStream;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.sun.net.httpserver.HttpExchange;
+
+public class CompressionTest
+{
+
+    @Before
+    public void startServer() throws Exception
+    {
+        StringBuilder big = new StringBuilder("[");
+        for (int i = 0; i < 100; i++)
+        {
+            big.append(i == 0 ? "" : ",").append("{\"name\":\"param").append(i)
+                    .append("\",\"value\":").append(i).append('}');
+        }
+        bigJson = big.append(']').toString();
+
+        server = StandInServer.start();
+        server.serve("/api/v1/nodes/rc_big/parameters", compressing(bigJson));
+        server.serve("/api/v1/nodes/rc_small/parameters",
+                compressing(SMALL_JSON));
+
+        Compression.setEnabled(true);
+        Compression.setThreshold(1024);
+        Compression.getStats().reset();
+    }
+
+    @After
+    public void stopServer()
+    {
+        Compression.setEnabled(false);
+        Compression.setThreshold(1024);
+        server.stop();
+    }
+
+    @Test(timeout = 10000)
+    public void decodesGzipAboveThreshold() throws Exception
+    {
+        Endpoints.Endpoint endpoint = Endpoints.forHost(server.getHost())
+                .parameters("rc_big");
+
+        assertEquals(bigJson, get(endpoint));
+        assertEquals(bigJson, get(endpoint));
+
+        // / compression stays offered as the responses are large
+        for (StandInServer.Received received : server.getReceived())
+        {
+            assertTrue(received.acceptEncoding.contains("gzip"));
+        }
+        assertEquals(2, sizes.size());
+        assertEquals(Long.valueOf(bigJson.length()), sizes.get(0));
+        assertEquals(Long.valueOf(bigJson.length()), sizes.get(1));
+        assertEquals(bigJson.length(), endpoint.lastResponseSize);
+
+        Compression.Stats stats = Compression.getStats();
+        assertEquals(2, stats.getResponses());
+        assertEquals(2 * bigJson.length(), stats.getDecodedBytes());
+        assertTrue(stats.getSavedBytes() > 0);
+    }
+
+    @Test(timeout = 10000)
+    public void stopsOfferingBelowThreshold() throws Exception
+    {
+        Endpoints.Endpoint endpoint = Endpoints.forHost(server.getHost())
+                .parameters("rc_small");
+
+        // / offered while the size is unknown, and answered with deflate
+        assertEquals(SMALL_JSON, get(endpoint));
+        // / not offered anymore
+        assertEquals(SMALL_JSON, get(endpoint));
+
+        List<StandInServer.Received> received = server.getReceived();
+        assertTrue(received.get(0).acceptEncoding.contains("deflate"));
+        assertFalse(received.get(1).acceptEncoding != null
+                && received.get(1).acceptEncoding.contains("deflate"));
+        assertEquals(2, sizes.size());
+        assertEquals(Long.valueOf(SMALL_JSON.length()), sizes.get(0));
+        assertEquals(Long.valueOf(SMALL_JSON.length()), sizes.get(1));
+        assertEquals(1, Compression.getStats().getResponses());
+    }
+
+    @Test(timeout = 10000)
+    public void disabledByDefault() throws Exception
+    {
+        Compression.setEnabled(false);
+        Endpoints.Endpoint endpoint = Endpoints.forHost(server.getHost())
+                .parameters("rc_big");
+
+        assertEquals(bigJson, get(endpoint));
+        assertNull(server.getReceived().get(0).acceptEncoding);
+        assertEquals(0, Compression.getStats().getResponses());
+    }
+
+    /**
+     * GETs the endpoint, recording the decoded sizes reported to the
+     * endpoint.
+     */
+    protected String get(final Endpoints.Endpoint endpoint) throws IOException
+    {
+        RCClientResource resource = endpoint.newResource();
+        resource.sizeListener = new Compression.SizeListener()
+        {
+            public void responseSize(long bytes)
+            {
+                sizes.add(bytes);
+                endpoint.sizeListener.responseSize(bytes);
+            }
+        };
+        return new String(PayloadCache.readAll(resource.get()),
+                StandInServer.UTF8);
+    }
+
+    /**
+     * Answers with the JSON, compressed as offered by the request.
+     */
+    protected static StandInServer.Answer compressing(final String json)
+    {
+        return new StandInServer.Answer()
+        {
+            public void answer(HttpExchange exchange, byte[] requestBody)
+                    throws IOException
+            {
+                String accepted = exchange.getRequestHeaders().getFirst(
+                        "Accept-Encoding");
+                byte[] body = json.getBytes(StandInServer.UTF8);
+                String encoding = null;
+                if (accepted != null && accepted.contains("gzip")
+                        && body.length >= 1024)
+                {
+                    encoding = "gzip";
+                } else if (accepted != null && accepted.contains("deflate"))
+                {
+                    encoding = "deflate";
+                }
+                if (encoding != null)
+                {
+                    ByteArrayOutputStream compressed = new ByteArrayOutputStream();
+                    OutputStream out = encoding.equals("gzip") ? new GZIPOutputStream(
+                            compressed) : new DeflaterOutputStream(compressed);
+                    out.write(body);
+                    out.close();
+                    body = compressed.toByteArray();
+                }
+                StandInServer.respond(exchange, 200, "application/json",
+                        encoding, body);
+            }
+        };
+    }
+
+    protected static final String SMALL_JSON = "[{\"name\":\"exp_auto\",\"value\":true}]";
+
+    private StandInServer server;
+    private String bigJson;
+    private final List<Long> sizes = new ArrayList<Long>();
+}
@@ -0,0 +1,179 @@
+/*
+ * Copyright (c) 2018 Roboception GmbH
+ * All rights reserved
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * 1. Redistributions of source code must retain the above copyright notice,
+ * this list of conditions and the following disclaimer.
+ *
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ * this list of conditions and the following disclaimer in the documentation
+ * and/or other materials provided with the distribution.
+ *
+ * 3. Neither the name of the copyright holder nor the names of its contributors
+ * may be used to endorse or promote products derived from this software without
+ * specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package com.roboception.rcapi.core;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+
+import java.io.IOException;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.restlet.data.MediaType;
+import org.restlet.representation.StringRepresentation;
+
+import com.sun.net.httpserver.HttpExchange;
+
+public class EndpointReadTest
+{
+
+    @Before
+    public void startServer() throws Exception
+    {
+        server = StandInServer.start();
+        server.serve(PATH, new StandInServer.Answer()
+        {
+            public void answer(HttpExchange exchange, byte[] requestBody)
+                    throws IOException
+            {
+                String json = "{}";
+                if (exchange.getRequestMethod().equals("GET"))
+                {
+                    int get = gets.incrementAndGet();
+                    if (get == 1)
+                    {
+                        // / the first GET is answered only when released
+                        started.countDown();
+                        try
+                        {
+                            release.await();
+                        } catch (InterruptedException e)
+                        {
+                            return;
+                        }
+                    }
+                    json = "{\"get\":" + get + "}";
+                }
+                StandInServer.respond(exchange, 200, "application/json",
+                        null, json.getBytes(StandInServer.UTF8));
+            }
+        });
+    }
+
+    @After
+    public void stopServer()
+    {
+        release.countDown();
+        executor.shutdownNow();
+        server.stop();
+    }
+
+    @Test(timeout = 10000)
+    public void readsAfterWritesDoNotJoinEarlierGets() throws Exception
+    {
+        final Endpoints.Endpoint endpoint = Endpoints.forHost(
+                server.getHost()).parameters("rc_stereo");
+        Future<String> before = executor.submit(read(endpoint));
+        started.await();
+
+        endpoint.newResource().put(
+                new StringRepresentation("[]", MediaType.APPLICATION_JSON));
+
+        // / answered while the earlier GET is still stalled
+        Future<String> after = executor.submit(read(endpoint));
+        assertEquals("{\"get\":2}", after.get(5, TimeUnit.SECONDS));
+
+        release.countDown();
+        assertEquals("{\"get\":1}", before.get());
+    }
+
+    @Test(timeout = 10000)
+    public void concurrentReadsShareOneGet() throws Exception
+    {
+        final Endpoints.Endpoint endpoint = Endpoints.forHost(
+                server.getHost()).parameters("rc_stereo");
+        Future<String> first = executor.submit(read(endpoint));
+        started.await();
+        Future<String> second = executor.submit(read(endpoint));
+        Future<String> third = executor.submit(read(endpoint));
+        // / give the joining readers time to find the GET in flight
+        Thread.sleep(200);
+
+        release.countDown();
+        assertEquals("{\"get\":1}", first.get());
+        assertEquals("{\"get\":1}", second.get());
+        assertEquals("{\"get\":1}", third.get());
+        assertEquals(1, gets.get());
+
+        // / the next read sends a new GET
+        assertEquals("{\"get\":2}", read(endpoint).call());
+    }
+
+    @Test
+    public void detachingKeepsTheReadInFlightRunning()
+    {
+        Endpoints.Endpoint endpoint = Endpoints.forHost("10.0.2.40")
+                .parameters("rc_stereo");
+        FutureTask<Endpoints.Payload> task = new FutureTask<Endpoints.Payload>(
+                new Callable<Endpoints.Payload>()
+                {
+                    public Endpoints.Payload call()
+                    {
+                        return null;
+                    }
+                });
+        endpoint.inFlight.set(task);
+        endpoint.detachRead();
+        assertNull(endpoint.inFlight.get());
+        assertFalse(task.isCancelled());
+    }
+
+    protected static Callable<String> read(final Endpoints.Endpoint endpoint)
+    {
+        return new Callable<String>()
+        {
+            public String call()
+            {
+                return new String(endpoint.read().getBytes(),
+                        StandInServer.UTF8);
+            }
+        };
+    }
+
+    protected static final String PATH = "/api/v1/nodes/rc_stereo/parameters";
+
+    protected StandInServer server;
+    protected final AtomicInteger gets = new AtomicInteger();
+    protected final CountDownLatch started = new CountDownLatch(1);
+    protected final CountDownLatch release = new CountDownLatch(1);
+    protected final ExecutorService executor = Executors.newCachedThreadPool();
+}
@@ -0,0 +1,158 @@
+/*
+ * Copyright (c) 2018 Roboception GmbH
+ * All rights reserved
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * 1. Redistributions of source code must retain the above copyright notice,
+ * this list of conditions and the following disclaimer.
+ *
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ * this list of conditions and the following disclaimer in the documentation
+ * and/or other materials provided with the distribution.
+ *
+ * 3. Neither the name of the copyright holder nor the names of its contributors
+ * may be used to endorse or promote products derived from this software without
+ * specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package com.roboception.rcapi.core;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertSame;
+
+import java.util.HashSet;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CyclicBarrier;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import org.junit.Test;
+
+public class EndpointsTest
+{
+
+    @Test
+    public void buildsEndpointsOncePerHost()
+    {
+        Endpoints endpoints = Endpoints.forHost(HOST);
+        assertSame(endpoints, Endpoints.forHost(HOST));
+        assertNotSame(endpoints, Endpoints.forHost("other-host"));
+
+        assertSame(endpoints.system(), endpoints.system());
+        assertSame(endpoints.status("rc_stereo"),
+                endpoints.status("rc_stereo"));
+        assertSame(endpoints.service("rc_stereo", "reset"),
+                endpoints.service("rc_stereo", "reset"));
+        assertSame(endpoints.parameter("rc_stereo", "minconf"),
+                endpoints.parameter("rc_stereo", "minconf"));
+        assertNotSame(endpoints.parameter("rc_stereo", "minconf"),
+                endpoints.parameter("rc_stereo", "seg"));
+        assertNotSame(endpoints.parameters("rc_stereo"),
+                endpoints.parameters("rc_camera"));
+    }
+
+    @Test
+    public void usesTheUrlsOfApiUrls()
+    {
+        Endpoints endpoints = Endpoints.forHost(HOST);
+        assertEquals(HOST, endpoints.getHost());
+        assertEquals(ApiUrls.entrypoint(HOST), endpoints.entrypoint()
+                .getUrl());
+        assertEquals(ApiUrls.nodes(HOST), endpoints.nodes().getUrl());
+        assertEquals(ApiUrls.system(HOST), endpoints.system().getUrl());
+        assertEquals(ApiUrls.node(HOST, "rc_stereo"),
+                endpoints.node("rc_stereo").getUrl());
+        assertEquals(ApiUrls.services(HOST, "rc_stereo"),
+                endpoints.services("rc_stereo").getUrl());
+        assertEquals(ApiUrls.service(HOST, "rc_stereo", "reset"), endpoints
+                .service("rc_stereo", "reset").getUrl());
+        assertEquals(ApiUrls.parameters(HOST, "rc_stereo"), endpoints
+                .parameters("rc_stereo").getUrl());
+        assertEquals(ApiUrls.parameter(HOST, "rc_stereo", "minconf"),
+                endpoints.parameter("rc_stereo", "minconf").getUrl());
+        assertEquals(ApiUrls.statusURL(HOST, "rc_stereo"),
+                endpoints.status("rc_stereo").getUrl());
+    }
+
+    @Test
+    public void createsIndependentResourcesFromOneTemplate()
+    {
+        Endpoints.Endpoint endpoint = Endpoints.forHost("127.0.0.1")
+                .parameter("rc_stereo", "minconf");
+        RCClientResource first = endpoint.newResource();
+        RCClientResource second = endpoint.newResource();
+        assertNotSame(first, second);
+        first.getReference().setHostDomain("changed");
+        assertEquals(endpoint.getUrl(), second.getReference().toString());
+        assertEquals(endpoint.getUrl(), endpoint.newResource().getReference()
+                .toString());
+    }
+
+    @Test
+    public void writesWithThePriorityOfTheEndpointKind()
+    {
+        Endpoints endpoints = Endpoints.forHost(HOST);
+        assertEquals(RequestScheduler.Priority.CONTROL, endpoints.parameter(
+                "rc_stereo", "minconf").writePriority);
+        assertEquals(RequestScheduler.Priority.CONTROL,
+                endpoints.parameters("rc_stereo").writePriority);
+        assertEquals(RequestScheduler.Priority.SERVICE, endpoints.service(
+                "rc_stereo", "reset").writePriority);
+        assertEquals(RequestScheduler.Priority.MONITORING,
+                endpoints.status("rc_stereo").writePriority);
+        assertSame(endpoints.getScheduler(), endpoints.system().scheduler);
+    }
+
+    @Test
+    public void concurrentLookupsShareOneEndpoint() throws Exception
+    {
+        final int threads = 8;
+        final CyclicBarrier barrier = new CyclicBarrier(threads);
+        final String host = "concurrent-host";
+        ExecutorService executor = Executors.newFixedThreadPool(threads);
+        try
+        {
+            Set<Object> endpoints = new HashSet<Object>();
+            Set<Future<Endpoints.Endpoint>> futures = new HashSet<Future<Endpoints.Endpoint>>();
+            for (int i = 0; i < threads; i++)
+            {
+                futures.add(executor.submit(new Callable<Endpoints.Endpoint>()
+                {
+                    public Endpoints.Endpoint call() throws Exception
+                    {
+                        barrier.await();
+                        return Endpoints.forHost(host).service("rc_stereo",
+                                "reset");
+                    }
+                }));
+            }
+            for (Future<Endpoints.Endpoint> future : futures)
+            {
+                endpoints.add(future.get());
+            }
+            assertEquals(1, endpoints.size());
+        } finally
+        {
+            executor.shutdownNow();
+        }
+    }
+
+    protected static final String HOST = "rc-visard-02911345";
+}
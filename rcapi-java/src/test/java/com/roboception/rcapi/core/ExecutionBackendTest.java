@@ -0,0 +1,163 @@
+/*
+ * Copyright (c) 2018 Roboception GmbH
+ * All rights reserved
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * 1. Redistributions of source code must retain the above copyright notice,
+ * this list of conditions and the following disclaimer.
+ *
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ * this list of conditions and the following disclaimer in the documentation
+ * and/or other materials provided with the distribution.
+ *
+ * 3. Neither the name of the copyright holder nor the names of its contributors
+ * may be used to endorse or promote products derived from this software without
+ * specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package com.roboception.rcapi.core;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.lang.reflect.Method;
+import java.net.URL;
+import java.net.URLClassLoader;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.Test;
+
+public class ExecutionBackendTest
+{
+
+    @Test
+    public void createsThreadsOfTheSelectedKind() throws Exception
+    {
+        Thread thread = ExecutionBackend.newThread("rcapi-test", NOTHING);
+        assertEquals("rcapi-test", thread.getName());
+        assertEquals(Thread.State.NEW, thread.getState());
+        assertTrue(thread.isDaemon());
+        assertEquals(ExecutionBackend.isVirtual(), isVirtual(thread));
+    }
+
+    @Test(timeout = 10000)
+    public void executorsRunAtMostMaxThreadsTasks() throws Exception
+    {
+        final AtomicInteger running = new AtomicInteger();
+        final AtomicInteger maxRunning = new AtomicInteger();
+        ExecutorService executor = ExecutionBackend.newExecutor("rcapi-test",
+                2);
+        try
+        {
+            List<Future<Thread>> futures = new ArrayList<Future<Thread>>();
+            for (int i = 0; i < 6; i++)
+            {
+                futures.add(executor.submit(new Callable<Thread>()
+                {
+                    public Thread call() throws Exception
+                    {
+                        int now = running.incrementAndGet();
+                        synchronized (maxRunning)
+                        {
+                            maxRunning.set(Math.max(maxRunning.get(), now));
+                        }
+                        Thread.sleep(20);
+                        running.decrementAndGet();
+                        return Thread.currentThread();
+                    }
+                }));
+            }
+            for (Future<Thread> future : futures)
+            {
+                Thread thread = future.get();
+                assertTrue(thread.getName(),
+                        thread.getName().startsWith("rcapi-test-"));
+                assertEquals(ExecutionBackend.isVirtual(), isVirtual(thread));
+            }
+            assertTrue(maxRunning.get() <= 2);
+        } finally
+        {
+            executor.shutdown();
+            assertTrue(executor.awaitTermination(5, TimeUnit.SECONDS));
+        }
+    }
+
+    @Test
+    public void propertyFalseSelectsPlatformThreads() throws Exception
+    {
+        String previous = System.getProperty(PROPERTY);
+        System.setProperty(PROPERTY, "false");
+        try
+        {
+            // a fresh copy of the class reads the property again
+            URL location = ExecutionBackend.class.getProtectionDomain()
+                    .getCodeSource().getLocation();
+            URLClassLoader loader = new URLClassLoader(new URL[] { location },
+                    null);
+            Class<?> backend = loader.loadClass(ExecutionBackend.class
+                    .getName());
+            assertFalse((Boolean) backend.getMethod("isVirtual").invoke(null));
+            Thread thread = (Thread) backend.getMethod("newThread",
+                    String.class, Runnable.class).invoke(null, "rcapi-test",
+                    NOTHING);
+            assertFalse(isVirtual(thread));
+            assertTrue(thread.isDaemon());
+        } finally
+        {
+            if (previous == null)
+            {
+                System.clearProperty(PROPERTY);
+            } else
+            {
+                System.setProperty(PROPERTY, previous);
+            }
+        }
+    }
+
+    /**
+     * @return true if the thread is virtual, false on Java versions without
+     *         virtual threads
+     */
+    protected static boolean isVirtual(final Thread thread) throws Exception
+    {
+        Method isVirtual;
+        try
+        {
+            isVirtual = Thread.class.getMethod("isVirtual");
+        } catch (NoSuchMethodException e)
+        {
+            return false;
+        }
+        return (Boolean) isVirtual.invoke(thread);
+    }
+
+    protected static final String PROPERTY = "rcapi.virtualThreads";
+
+    protected static final Runnable NOTHING = new Runnable()
+    {
+        public void run()
+        {
+        }
+    };
+}
@@ -0,0 +1,102 @@
+/*
+ * Copyright (c) 2018 Roboception GmbH
+ * All rights reserved
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * 1. Redistributions of source code must retain the above copyright notice,
+ * this list of conditions and the following disclaimer.
+ *
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ * this list of conditions and the following disclaimer in the documentation
+ * and/or other materials provided with the distribution.
+ *
+ * 3. Neither the name of the copyright holder nor the names of its contributors
+ * may be used to endorse or promote products derived from this software without
+ * specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package com.roboception.rcapi.core;
+
+import static org.junit.Assert.assertEquals;
+
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.junit.Test;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+public class GenericPrintableTest
+{
+
+    static class Printable extends GenericPrintable
+    {
+        String name = "a";
+        List<Integer> list = Arrays.asList(1, 2);
+        Map<String, Object> map = new LinkedHashMap<String, Object>();
+        JsonNode json;
+
+        @PrintIgnore
+        String ignored = "not printed";
+
+        static final String CONSTANT = "not printed";
+    }
+
+    @Test
+    public void printsFieldsRecursively()
+    {
+        Printable printable = new Printable();
+        printable.map.put("nested", new Printable());
+        assertEquals(
+                "{name=a, list=[1, 2], map={nested={name=a, list=[1, 2], map={}, json=null}}, json=null}",
+                printable.toString());
+    }
+
+    static class LegacyPrintable extends GenericPrintable
+    {
+        String name = "b";
+        String ignored = "not printed";
+
+        @SuppressWarnings("deprecation")
+        LegacyPrintable() throws Exception
+        {
+            ignoreFieldWhenPrinting(LegacyPrintable.class
+                    .getDeclaredField("ignored"));
+        }
+    }
+
+    @Test
+    public void deprecatedHookIgnoresFieldsLikeTheAnnotation()
+            throws Exception
+    {
+        assertEquals("{name=b}", new LegacyPrintable().toString());
+    }
+
+    @Test
+    public void printsJsonNodesAsJson() throws Exception
+    {
+        Printable printable = new Printable();
+        printable.json = new ObjectMapper()
+                .readTree("{\"x\":\"float64\",\"y\":[1,2]}");
+        assertEquals(
+                "{name=a, list=[1, 2], map={}, json={\"x\":\"float64\",\"y\":[1,2]}}",
+                printable.toString());
+    }
+}
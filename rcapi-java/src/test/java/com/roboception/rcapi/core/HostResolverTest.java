@@ -0,0 +1,84 @@
+/*
+ * Copyright (c) 2018 Roboception GmbH
+ * All rights reserved
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * 1. Redistributions of source code must retain the above copyright notice,
+ * this list of conditions and the following disclaimer.
+ *
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ * this list of conditions and the following disclaimer in the documentation
+ * and/or other materials provided with the distribution.
+ *
+ * 3. Neither the name of the copyright holder nor the names of its contributors
+ * may be used to endorse or promote products derived from this software without
+ * specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package com.roboception.rcapi.core;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.net.Inet6Address;
+import java.net.InetAddress;
+
+import org.junit.Test;
+
+public class HostResolverTest
+{
+
+    @Test
+    public void keepsAddresses()
+    {
+        assertEquals("127.0.0.1", HostResolver.resolve("127.0.0.1"));
+        assertEquals("[0:0:0:0:0:0:0:1]", HostResolver.resolve("::1"));
+    }
+
+    @Test
+    public void resolvesNames()
+    {
+        String address = HostResolver.resolve("localhost");
+        assertTrue(address, address.equals("127.0.0.1")
+                || address.equals("[0:0:0:0:0:0:0:1]"));
+    }
+
+    @Test
+    public void fallsBackToNameForScopedAddresses() throws Exception
+    {
+        byte[] linkLocal = new byte[16];
+        linkLocal[0] = (byte) 0xfe;
+        linkLocal[1] = (byte) 0x80;
+        linkLocal[15] = 1;
+        Inet6Address scoped = Inet6Address.getByAddress(null, linkLocal, 2);
+        Inet6Address unscoped = (Inet6Address) InetAddress
+                .getByAddress(linkLocal);
+
+        assertEquals("rc-visard-02912345.local", HostResolver.toUrlHost(
+                scoped, "rc-visard-02912345.local"));
+        assertEquals("[fe80:0:0:0:0:0:0:1]", HostResolver.toUrlHost(unscoped,
+                "rc-visard-02912345.local"));
+    }
+
+    @Test
+    public void keepsUnresolvableHosts()
+    {
+        String host = "does-not-exist.invalid";
+        assertEquals(host, HostResolver.resolve(host));
+        HostResolver.invalidate(host);
+    }
+}
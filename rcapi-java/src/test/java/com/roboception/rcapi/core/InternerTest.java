@@ -0,0 +1,114 @@
+/*
+ * Copyright (c) 2018 Roboception GmbH
+ * All rights reserved
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * 1. Redistributions of source code must retain the above copyright notice,
+ * this list of conditions and the following disclaimer.
+ *
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ * this list of conditions and the following disclaimer in the documentation
+ * and/or other materials provided with the distribution.
+ *
+ * 3. Neither the name of the copyright holder nor the names of its contributors
+ * may be used to endorse or promote products derived from this software without
+ * specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package com.roboception.rcapi.core;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import org.junit.Test;
+
+public class InternerTest
+{
+
+    @Test
+    public void returnsCanonicalInstances()
+    {
+        Interner<String> interner = new Interner<String>();
+        String first = new String("rc_stereomatching");
+        String second = new String("rc_stereomatching");
+
+        assertSame(first, interner.intern(first));
+        assertSame(first, interner.intern(second));
+        assertSame(first, interner.intern(first));
+        assertNull(interner.intern(null));
+    }
+
+    @Test
+    public void keepsDifferentValuesApart()
+    {
+        Interner<String> interner = new Interner<String>();
+        for (int i = 0; i < 1000; i++)
+        {
+            String value = "param" + i;
+            assertEquals(value, interner.intern(value));
+        }
+        assertNotSame(interner.intern("a"), interner.intern("b"));
+    }
+
+    @Test(timeout = 10000)
+    public void agreesOnCanonicalInstancesConcurrently() throws Exception
+    {
+        final Interner<String> interner = new Interner<String>();
+        ExecutorService executor = Executors.newFixedThreadPool(8);
+        try
+        {
+            List<Future<List<String>>> results = new ArrayList<Future<List<String>>>();
+            for (int t = 0; t < 8; t++)
+            {
+                results.add(executor.submit(new Callable<List<String>>()
+                {
+                    public List<String> call()
+                    {
+                        List<String> canonical = new ArrayList<String>();
+                        for (int i = 0; i < 500; i++)
+                        {
+                            canonical.add(interner.intern(new String("value"
+                                    + i)));
+                        }
+                        return canonical;
+                    }
+                }));
+            }
+            List<String> expected = results.get(0).get();
+            for (Future<List<String>> result : results)
+            {
+                List<String> canonical = result.get();
+                for (int i = 0; i < expected.size(); i++)
+                {
+                    assertSame(expected.get(i), canonical.get(i));
+                }
+            }
+        } finally
+        {
+            executor.shutdown();
+        }
+    }
+}
@@ -0,0 +1,116 @@
+/*
+ * Copyright (c) 2018 Roboception GmbH
+ * All rights reserved
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * 1. Redistributions of source code must retain the above copyright notice,
+ * this list of conditions and the following disclaimer.
+ *
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ * this list of conditions and the following disclaimer in the documentation
+ * and/or other materials provided with the distribution.
+ *
+ * 3. Neither the name of the copyright holder nor the names of its contributors
+ * may be used to endorse or promote products derived from this software without
+ * specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package com.roboception.rcapi.core;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+public class InventoryProberTest
+{
+
+    @Before
+    public void startServers() throws Exception
+    {
+        first = StandInServer.start().serveJson("/api/v1/system",
+                "{\"serial\":\"02912345\",\"hostname\":\"rc-visard-a\",\"ready\":true}");
+        second = StandInServer.start().serveJson("/api/v1/system",
+                "{\"serial\":\"02967890\",\"hostname\":\"rc-visard-b\",\"ready\":true}");
+        stalled = StandInServer.start().stall("/api/v1/system", 5000);
+        offline = StandInServer.unusedHost();
+    }
+
+    @After
+    public void stopServers()
+    {
+        first.stop();
+        second.stop();
+        stalled.stop();
+    }
+
+    @Test(timeout = 20000)
+    public void reportsReachableAndUnreachableHosts()
+    {
+        long start = System.nanoTime();
+        InventoryProber.Result result = InventoryProber.create()
+                .withConnectTimeout(300, TimeUnit.MILLISECONDS)
+                .withReadTimeout(500, TimeUnit.MILLISECONDS)
+                .withDeadline(3, TimeUnit.SECONDS)
+                .probe(Arrays.asList(first.getHost(), offline,
+                        second.getHost(), stalled.getHost()));
+        long elapsed = System.nanoTime() - start;
+
+        assertEquals(Arrays.asList(first.getHost(), second.getHost()),
+                new ArrayList<String>(result.getReachable().keySet()));
+        assertEquals("02912345",
+                result.getReachable().get(first.getHost()).serial);
+        assertEquals("rc-visard-b",
+                result.getReachable().get(second.getHost()).hostname);
+        assertEquals(Arrays.asList(offline, stalled.getHost()),
+                result.getUnreachable());
+
+        assertEquals(result.getReachable().keySet(), result.getLatencies()
+                .keySet());
+        for (long latency : result.getLatencies().values())
+        {
+            assertTrue(latency > 0 && latency < elapsed);
+        }
+        // / the stalled host is given up after the read timeout, not after
+        // / its answer or the deadline
+        assertTrue("probe took " + elapsed / 1000000 + " ms",
+                elapsed < TimeUnit.MILLISECONDS.toNanos(2500));
+    }
+
+    @Test(timeout = 20000)
+    public void givesUpStalledHostsAtTheDeadline()
+    {
+        InventoryProber.Result result = InventoryProber.create()
+                .withReadTimeout(10, TimeUnit.SECONDS)
+                .withDeadline(500, TimeUnit.MILLISECONDS)
+                .probe(Arrays.asList(first.getHost(), stalled.getHost()));
+
+        assertEquals(Arrays.asList(first.getHost()),
+                new ArrayList<String>(result.getReachable().keySet()));
+        assertTrue(result.getErrors().get(stalled.getHost()) instanceof TimeoutException);
+    }
+
+    private StandInServer first, second, stalled;
+    private String offline;
+}
@@ -0,0 +1,163 @@
+/*
+ * Copyright (c) 2018 Roboception GmbH
+ * All rights reserved
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * 1. Redistributions of source code must retain the above copyright notice,
+ * this list of conditions and the following disclaimer.
+ *
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ * this list of conditions and the following disclaimer in the documentation
+ * and/or other materials provided with the distribution.
+ *
+ * 3. Neither the name of the copyright holder nor the names of its contributors
+ * may be used to endorse or promote products derived from this software without
+ * specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package com.roboception.rcapi.core;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+import org.junit.After;
+import org.junit.Test;
+
+import com.sun.net.httpserver.HttpExchange;
+
+public class ParameterFanOutTest
+{
+
+    @After
+    public void stopServers()
+    {
+        for (StandInServer server : servers)
+        {
+            server.stop();
+        }
+    }
+
+    @Test(timeout = 20000)
+    public void reportsEachHostsOutcome() throws Exception
+    {
+        String accepting = start().serve(PATH, answerWith(200, 0.005))
+                .getHost();
+        String adjusting = start().serve(PATH, answerWith(200, 0.004))
+                .getHost();
+        String failing = start().serve(PATH, answerWith(500, 0)).getHost();
+
+        ParameterFanOut.Result result = ParameterFanOut
+                .set("rc_stereocamera", "exp_value", 0.005)
+                .withDeadline(10, TimeUnit.SECONDS)
+                .on(Arrays.asList(accepting, adjusting, failing, accepting));
+
+        assertEquals(0.005, result.getAccepted().get(accepting));
+        assertEquals(0.004, result.getAccepted().get(adjusting));
+        assertEquals(2, result.getAccepted().size());
+        assertTrue(result.getLatencies().containsKey(accepting));
+        assertEquals(1, result.getErrors().size());
+        assertTrue(result.getErrors().containsKey(failing));
+        assertFalse(result.isSuccess());
+    }
+
+    @Test(timeout = 20000)
+    public void succeedsIfAllHostsAcceptTheValue() throws Exception
+    {
+        List<String> hosts = new ArrayList<String>();
+        for (int i = 0; i < 3; i++)
+        {
+            hosts.add(start().serve(PATH, answerWith(200, 0.005)).getHost());
+        }
+        ParameterFanOut.Result result = ParameterFanOut
+                .set("rc_stereocamera", "exp_value", 0.005).withMaxParallel(2)
+                .on(hosts);
+        assertEquals(3, result.getAccepted().size());
+        assertTrue(result.isSuccess());
+    }
+
+    @Test(timeout = 20000)
+    public void stopsWaitingAtTheDeadline() throws Exception
+    {
+        String accepting = start().serve(PATH, answerWith(200, 0.005))
+                .getHost();
+        String stalling = start().stall(PATH, 5000).getHost();
+
+        long start = System.nanoTime();
+        ParameterFanOut.Result result = ParameterFanOut
+                .set("rc_stereocamera", "exp_value", 0.005)
+                .withDeadline(500, TimeUnit.MILLISECONDS)
+                .on(Arrays.asList(accepting, stalling));
+        long elapsed = TimeUnit.NANOSECONDS.toMillis(System.nanoTime()
+                - start);
+
+        assertTrue("took " + elapsed + " ms", elapsed < 3000);
+        assertEquals(0.005, result.getAccepted().get(accepting));
+        assertTrue(result.getErrors().get(stalling) instanceof TimeoutException);
+        assertFalse(result.getLatencies().containsKey(stalling));
+        assertFalse(result.isSuccess());
+    }
+
+    @Test
+    public void returnsEmptyResultForNoHosts()
+    {
+        ParameterFanOut.Result result = ParameterFanOut.set("rc_stereocamera",
+                "exp_value", 0.005).on(new ArrayList<String>());
+        assertTrue(result.getAccepted().isEmpty());
+        assertTrue(result.isSuccess());
+    }
+
+    protected StandInServer start() throws IOException
+    {
+        StandInServer server = StandInServer.start();
+        servers.add(server);
+        return server;
+    }
+
+    /**
+     * Answers with the given status, reporting back the given value.
+     */
+    protected static StandInServer.Answer answerWith(final int status,
+            final double value)
+    {
+        return new StandInServer.Answer()
+        {
+            public void answer(HttpExchange exchange, byte[] requestBody)
+                    throws IOException
+            {
+                String json = status != 200 ? "{\"message\":\"failed\"}"
+                        : "{\"name\":\"exp_value\",\"description\":\"\","
+                                + "\"type\":\"float64\",\"value\":" + value
+                                + ",\"min\":0.0,\"max\":0.018,"
+                                + "\"default\":0.005}";
+                StandInServer.respond(exchange, status, "application/json",
+                        null, json.getBytes(StandInServer.UTF8));
+            }
+        };
+    }
+
+    protected static final String PATH = "/api/v1/nodes/rc_stereocamera/parameters/exp_value";
+
+    protected final List<StandInServer> servers = new ArrayList<StandInServer>();
+}
@@ -0,0 +1,190 @@
+/*
+ * Copyright (c) 2018 Roboception GmbH
+ * All rights reserved
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * 1. Redistributions of source code must retain the above copyright notice,
+ * this list of conditions and the following disclaimer.
+ *
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ * this list of conditions and the following disclaimer in the documentation
+ * and/or other materials provided with the distribution.
+ *
+ * 3. Neither the name of the copyright holder nor the names of its contributors
+ * may be used to endorse or promote products derived from this software without
+ * specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package com.roboception.rcapi.core;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.List;
+
+import org.junit.Test;
+
+public class ParameterSnapshotTest
+{
+
+    @Test
+    public void readsWhatHasBeenWritten() throws IOException
+    {
+        ParameterSnapshot read = ParameterSnapshot
+                .readFrom(new ByteArrayInputStream(write(snapshot())));
+
+        assertEquals("10.0.2.40", read.getHost());
+        assertEquals(1500000000000L, read.getTimestamp());
+        assertEquals(Arrays.asList("rc_stereo", "rc_dynamics"),
+                Arrays.asList(read.getNodes().toArray()));
+
+        List<Parameter> stereo = read.getParameters("rc_stereo");
+        assertEquals(3, stereo.size());
+        Parameter quality = stereo.get(0);
+        assertEquals("quality", quality.getName());
+        assertEquals("string", quality.getType());
+        assertEquals("disparity quality", quality.getDescription());
+        assertEquals("High", quality.getValue());
+        assertNull(quality.getState().getMin());
+        assertEquals("High", quality.getState().getDefault());
+
+        Parameter seg = stereo.get(1);
+        assertEquals(Integer.valueOf(-200), seg.getValue());
+        assertEquals(Long.valueOf(1L << 40), seg.getState().getMax());
+        assertEquals(Boolean.TRUE, stereo.get(2).getValue());
+
+        Parameter rate = read.getParameters("rc_dynamics").get(0);
+        assertEquals(Double.valueOf(0.25), rate.getValue());
+        assertEquals("", rate.getDescription());
+    }
+
+    @Test
+    public void rejectsStringIndicesOutOfTheTable() throws IOException
+    {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        DataOutputStream data = header(bytes);
+        ParameterSnapshot.writeVarInt(data, 1);
+        ParameterSnapshot.writeVarInt(data, 4);
+        data.writeBytes("host");
+        // / host refers to the second string of a table with one
+        ParameterSnapshot.writeVarInt(data, 1);
+        ParameterSnapshot.writeVarInt(data, 0);
+        assertCorrupt(bytes.toByteArray());
+    }
+
+    @Test
+    public void rejectsHugeStringTablesWithoutAllocatingThem()
+            throws IOException
+    {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        DataOutputStream data = header(bytes);
+        ParameterSnapshot.writeVarInt(data, Integer.MAX_VALUE);
+        ParameterSnapshot.writeVarInt(data, 1);
+        data.writeBytes("x");
+        try
+        {
+            ParameterSnapshot.readFrom(new ByteArrayInputStream(bytes
+                    .toByteArray()));
+            fail("Read a truncated snapshot");
+        } catch (IOException e)
+        {
+            // / end of data
+        }
+    }
+
+    @Test
+    public void rejectsHugeStrings() throws IOException
+    {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        DataOutputStream data = header(bytes);
+        ParameterSnapshot.writeVarInt(data, 1);
+        ParameterSnapshot.writeVarInt(data, Integer.MAX_VALUE);
+        assertCorrupt(bytes.toByteArray());
+    }
+
+    @Test
+    public void rejectsTruncatedSnapshots() throws IOException
+    {
+        byte[] complete = write(snapshot());
+        for (int length = 0; length < complete.length; length++)
+        {
+            try
+            {
+                ParameterSnapshot.readFrom(new ByteArrayInputStream(Arrays
+                        .copyOf(complete, length)));
+                fail("Read a snapshot truncated to " + length + " bytes");
+            } catch (IOException e)
+            {
+                // / expected
+            }
+        }
+    }
+
+    protected static ParameterSnapshot snapshot()
+    {
+        ParameterSnapshot snapshot = new ParameterSnapshot("10.0.2.40",
+                1500000000000L);
+        snapshot.params.put("rc_stereo", Arrays.asList(new Parameter(
+                "quality", "disparity quality", "string", "High", null, null,
+                "High"), new Parameter("seg", "segmentation", "int32",
+                Integer.valueOf(-200), Integer.valueOf(-1000), Long
+                        .valueOf(1L << 40), Integer.valueOf(200)),
+                new Parameter("fill", "fill holes", "bool", Boolean.TRUE,
+                        null, null, Boolean.FALSE)));
+        snapshot.params.put("rc_dynamics", Arrays.asList(new Parameter(
+                "rate", null, "float64", Double.valueOf(0.25), Double
+                        .valueOf(0), Double.valueOf(1), Double.valueOf(0.5))));
+        return snapshot;
+    }
+
+    protected static byte[] write(final ParameterSnapshot snapshot)
+            throws IOException
+    {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        snapshot.writeTo(bytes);
+        return bytes.toByteArray();
+    }
+
+    protected static DataOutputStream header(final ByteArrayOutputStream bytes)
+            throws IOException
+    {
+        DataOutputStream data = new DataOutputStream(bytes);
+        data.writeInt(ParameterSnapshot.MAGIC);
+        data.writeByte(ParameterSnapshot.VERSION);
+        data.writeLong(0);
+        return data;
+    }
+
+    protected static void assertCorrupt(final byte[] bytes)
+    {
+        try
+        {
+            ParameterSnapshot.readFrom(new ByteArrayInputStream(bytes));
+            fail("Read a corrupt snapshot");
+        } catch (IOException e)
+        {
+            assertTrue(e.getMessage(), e.getMessage().startsWith("Corrupt"));
+        }
+    }
+}
@@ -0,0 +1,205 @@
+/*
+ * Copyright (c) 2018 Roboception GmbH
+ * All rights reserved
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * 1. Redistributions of source code must retain the above copyright notice,
+ * this list of conditions and the following disclaimer.
+ *
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ * this list of conditions and the following disclaimer in the documentation
+ * and/or other materials provided with the distribution.
+ *
+ * 3. Neither the name of the copyright holder nor the names of its contributors
+ * may be used to endorse or promote products derived from this software without
+ * specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package com.roboception.rcapi.core;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.io.IOException;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import org.junit.Test;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import com.sun.net.httpserver.HttpExchange;
+
+public class ParameterTest
+{
+
+    @Test
+    public void sharesMetadataOfSyncedParameters() throws Exception
+    {
+        Parameter first = decode(0.5);
+        Parameter second = decode(0.7);
+        // / merely decoded parameters keep their own metadata
+        assertNotSame(first.getMetadata(), second.getMetadata());
+        assertEquals(first.getMetadata(), second.getMetadata());
+
+        first.shareMetadata();
+        second.shareMetadata();
+        assertSame(first.getMetadata(), second.getMetadata());
+        assertEquals(0.5, first.getValue());
+        assertEquals(0.7, second.getValue());
+
+        // / syncs keep the shared instance
+        Parameter.Metadata shared = first.getMetadata();
+        first.setFromOther(decode(0.6));
+        assertSame(shared, first.getMetadata());
+        assertEquals(0.6, first.getValue());
+        assertSame(shared, Parameter.Metadata.of("exp_value",
+                "Exposure value", "float64", 0.0, 1.0, 0.2));
+    }
+
+    @Test
+    public void replacesChangedMetadata() throws Exception
+    {
+        Parameter param = decode(0.5);
+        param.shareMetadata();
+        param.setFromOther(MAPPER.readValue(JSON.replace("1.0", "2.0"),
+                Parameter.class));
+        assertEquals(2.0, param.getMax());
+        assertSame(param.getMetadata(), Parameter.Metadata.of("exp_value",
+                "Exposure value", "float64", 0.0, 2.0, 0.2));
+    }
+
+    @Test
+    public void serializesAllProperties() throws Exception
+    {
+        Parameter param = decode(0.5).setValue(0.25);
+        ObjectNode json = MAPPER.valueToTree(param);
+        assertEquals(MAPPER.readTree(JSON.replace("0.5", "0.25")), json);
+        assertEquals(
+                "{name=exp_value, description=Exposure value, type=float64, value=0.25, min=0.0, max=1.0, default_value=0.2}",
+                param.toString());
+    }
+
+    @Test
+    public void swapsStatesInsteadOfChangingThem() throws Exception
+    {
+        Parameter param = decode(0.5);
+        Parameter.State before = param.getState();
+        assertFalse(before.locallyModified);
+
+        param.setValue(0.25);
+        Parameter.State after = param.getState();
+        assertNotSame(before, after);
+        assertSame(before.getMetadata(), after.getMetadata());
+        assertEquals(0.5, before.getValue());
+        assertEquals(0.25, after.getValue());
+        assertTrue(after.locallyModified);
+
+        param.setFromOther(decode(0.75));
+        assertEquals(0.25, after.getValue());
+        assertEquals(0.75, param.getValue());
+        assertFalse(param.getState().locallyModified);
+    }
+
+    @Test(timeout = 10000)
+    public void readersAlwaysSeeConsistentStates() throws Exception
+    {
+        // / value and max are equal in every state the writer installs
+        final Parameter param = decodeAtMax(1.0);
+        final Parameter[] updates = { decodeAtMax(2.0), decodeAtMax(3.0) };
+        final AtomicBoolean done = new AtomicBoolean();
+        Thread writer = new Thread()
+        {
+            public void run()
+            {
+                for (int i = 0; i < 100000; i++)
+                {
+                    param.setFromOther(updates[i % 2]);
+                }
+                done.set(true);
+            }
+        };
+        writer.start();
+        long reads = 0;
+        while (!done.get())
+        {
+            Parameter.State state = param.getState();
+            assertEquals(state.getMax(), state.getValue());
+            reads++;
+        }
+        writer.join();
+        assertTrue(reads > 0);
+    }
+
+    @Test(timeout = 10000)
+    public void syncToRemoteKeepsValuesSetMeanwhile() throws Exception
+    {
+        StandInServer server = StandInServer.start();
+        try
+        {
+            final Parameter[] param = new Parameter[1];
+            server.serve("/api/v1/nodes/rc_stereo/parameters/exp_value",
+                    new StandInServer.Answer()
+                    {
+                        public void answer(HttpExchange exchange,
+                                byte[] requestBody) throws IOException
+                        {
+                            if ("PUT".equals(exchange.getRequestMethod()))
+                            {
+                                // / the caller sets a newer value meanwhile
+                                param[0].setValue(0.75);
+                            }
+                            StandInServer.respond(exchange, 200,
+                                    "application/json", null, JSON.replace(
+                                            "1.0", "2.0").getBytes(
+                                            StandInServer.UTF8));
+                        }
+                    });
+            param[0] = Parameter.connectTo(server.getHost(), "rc_stereo",
+                    "exp_value");
+            param[0].setValue(0.25).syncToRemote();
+
+            // / the newer value is kept for the next sync, the metadata
+            // / reported back is taken
+            assertEquals(0.75, param[0].getValue());
+            assertTrue(param[0].getState().locallyModified);
+            assertEquals(2.0, param[0].getMax());
+        } finally
+        {
+            server.stop();
+        }
+    }
+
+    protected static Parameter decodeAtMax(final double value)
+            throws Exception
+    {
+        return MAPPER.readValue(JSON.replace("0.5", Double.toString(value))
+                .replace("1.0", Double.toString(value)), Parameter.class);
+    }
+
+    protected static Parameter decode(final double value) throws Exception
+    {
+        return MAPPER.readValue(JSON.replace("0.5", Double.toString(value)),
+                Parameter.class);
+    }
+
+    protected static final ObjectMapper MAPPER = new ObjectMapper();
+    protected static final String JSON = "{\"name\":\"exp_value\",\"description\":\"Exposure value\",\"type\":\"float64\","
+            + "\"value\":0.5,\"min\":0.0,\"max\":1.0,\"default\":0.2}";
+}
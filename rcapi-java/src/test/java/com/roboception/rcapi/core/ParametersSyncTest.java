@@ -0,0 +1,127 @@
+/*
+ * Copyright (c) 2018 Roboception GmbH
+ * All rights reserved
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * 1. Redistributions of source code must retain the above copyright notice,
+ * this list of conditions and the following disclaimer.
+ *
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ * this list of conditions and the following disclaimer in the documentation
+ * and/or other materials provided with the distribution.
+ *
+ * 3. Neither the name of the copyright holder nor the names of its contributors
+ * may be used to endorse or promote products derived from this software without
+ * specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package com.roboception.rcapi.core;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CyclicBarrier;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.sun.net.httpserver.HttpExchange;
+
+public class ParametersSyncTest
+{
+
+    @Before
+    public void startServer() throws Exception
+    {
+        server = StandInServer.start();
+        server.serve("/api/v1/nodes/rc_stereo/parameters",
+                new StandInServer.Answer()
+                {
+                    public void answer(HttpExchange exchange,
+                            byte[] requestBody) throws IOException
+                    {
+                        String json = "[{\"name\":\"seg\",\"description\":\"\","
+                                + "\"type\":\"int32\",\"value\":"
+                                + value.get()
+                                + ",\"min\":0,\"max\":4000,\"default\":200}]";
+                        StandInServer.respond(exchange, 200,
+                                "application/json", null,
+                                json.getBytes(StandInServer.UTF8));
+                    }
+                });
+    }
+
+    @After
+    public void stopServer()
+    {
+        executor.shutdownNow();
+        server.stop();
+    }
+
+    @Test(timeout = 30000)
+    public void concurrentSyncsReturnOnlyAfterApplyingThePayload()
+            throws Exception
+    {
+        final Node.Parameters params = new Node.Parameters(server.getHost(),
+                "rc_stereo");
+        assertEquals(Integer.valueOf(0), params.get("seg").getValue());
+
+        final CyclicBarrier barrier = new CyclicBarrier(THREADS);
+        for (int round = 1; round <= ROUNDS; round++)
+        {
+            value.set(round);
+            final int expected = round;
+            List<Future<Boolean>> syncs = new ArrayList<Future<Boolean>>();
+            for (int i = 0; i < THREADS; i++)
+            {
+                syncs.add(executor.submit(new Callable<Boolean>()
+                {
+                    public Boolean call() throws Exception
+                    {
+                        barrier.await();
+                        boolean updated = params.syncFromRemoteIfChanged();
+                        // also when another caller applied the payload
+                        assertEquals(Integer.valueOf(expected),
+                                params.get("seg").getValue());
+                        return updated;
+                    }
+                }));
+            }
+            int updated = 0;
+            for (Future<Boolean> sync : syncs)
+            {
+                updated += sync.get() ? 1 : 0;
+            }
+            assertTrue(updated >= 1);
+        }
+    }
+
+    protected static final int THREADS = 4, ROUNDS = 50;
+
+    protected final AtomicInteger value = new AtomicInteger();
+    protected final ExecutorService executor = Executors.newCachedThreadPool();
+    protected StandInServer server;
+}
@@ -0,0 +1,194 @@
+/*
+ * Copyright (c) 2018 Roboception GmbH
+ * All rights reserved
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * 1. Redistributions of source code must retain the above copyright notice,
+ * this list of conditions and the following disclaimer.
+ *
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ * this list of conditions and the following disclaimer in the documentation
+ * and/or other materials provided with the distribution.
+ *
+ * 3. Neither the name of the copyright holder nor the names of its contributors
+ * may be used to endorse or promote products derived from this software without
+ * specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package com.roboception.rcapi.core;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.Test;
+import org.reactivestreams.Subscriber;
+import org.reactivestreams.Subscription;
+
+public class PollingPublisherTest
+{
+
+    @Test(timeout = 10000)
+    public void emitsNoMoreThanRequested() throws Exception
+    {
+        PollingPublisher<Integer> publisher = new PollingPublisher<Integer>(
+                "test-poller", new CountingSource(), 5, TimeUnit.MILLISECONDS);
+        Recorder recorder = new Recorder(3);
+        publisher.subscribe(recorder);
+        recorder.subscription.request(3);
+
+        recorder.received.await();
+        recorder.received = new CountDownLatch(1);
+        assertEquals(3, recorder.count.get());
+
+        // no demand left: nothing arrives over several periods
+        Thread.sleep(100);
+        assertEquals(3, recorder.count.get());
+
+        recorder.subscription.request(1);
+        assertTrue(recorder.received.await(5, TimeUnit.SECONDS));
+        assertEquals(4, recorder.count.get());
+        recorder.subscription.cancel();
+    }
+
+    @Test(timeout = 10000)
+    public void cancellingTheLastSubscriberStopsPollingAtOnce()
+            throws Exception
+    {
+        PollingPublisher<Integer> publisher = new PollingPublisher<Integer>(
+                "test-poller", new CountingSource(), 1, TimeUnit.HOURS);
+        Recorder recorder = new Recorder(1);
+        publisher.subscribe(recorder);
+        recorder.subscription.request(1);
+        recorder.received.await();
+
+        // the poller sleeps for an hour unless cancel() wakes it up
+        recorder.subscription.cancel();
+        awaitPollerStopped(publisher);
+        assertEquals(0, publisher.getSubscriberCount());
+        assertEquals(1, recorder.count.get());
+    }
+
+    @Test(timeout = 10000)
+    public void closeCompletesSubscribersAtOnce() throws Exception
+    {
+        PollingPublisher<Integer> publisher = new PollingPublisher<Integer>(
+                "test-poller", new CountingSource(), 1, TimeUnit.HOURS);
+        Recorder recorder = new Recorder(1);
+        publisher.subscribe(recorder);
+        recorder.subscription.request(1);
+        recorder.received.await();
+
+        publisher.close();
+        recorder.terminated.await();
+        assertTrue(recorder.completed);
+        assertNull(recorder.error);
+        awaitPollerStopped(publisher);
+    }
+
+    @Test(timeout = 10000)
+    public void failsAfterConsecutiveFailures() throws Exception
+    {
+        final AtomicInteger polls = new AtomicInteger();
+        PollingPublisher<Integer> publisher = new PollingPublisher<Integer>(
+                "test-poller", new PollingPublisher.Source<Integer>()
+                {
+                    public Integer poll() throws Exception
+                    {
+                        throw new IllegalStateException("poll "
+                                + polls.incrementAndGet());
+                    }
+                }, 5, TimeUnit.MILLISECONDS).withMaxConsecutiveFailures(2);
+        Recorder recorder = new Recorder(1);
+        publisher.subscribe(recorder);
+        recorder.subscription.request(1);
+
+        recorder.terminated.await();
+        assertEquals("poll 2", recorder.error.getMessage());
+        assertEquals(0, recorder.count.get());
+        awaitPollerStopped(publisher);
+    }
+
+    protected static void awaitPollerStopped(
+            final PollingPublisher<?> publisher) throws InterruptedException
+    {
+        while (true)
+        {
+            synchronized (publisher)
+            {
+                if (publisher.poller == null)
+                {
+                    return;
+                }
+            }
+            Thread.sleep(5);
+        }
+    }
+
+    protected static class CountingSource implements
+            PollingPublisher.Source<Integer>
+    {
+        public Integer poll()
+        {
+            return polls.incrementAndGet();
+        }
+
+        protected final AtomicInteger polls = new AtomicInteger();
+    }
+
+    protected static class Recorder implements Subscriber<Integer>
+    {
+        protected Recorder(final int expected)
+        {
+            received = new CountDownLatch(expected);
+        }
+
+        public void onSubscribe(final Subscription subscription)
+        {
+            this.subscription = subscription;
+        }
+
+        public void onNext(final Integer result)
+        {
+            count.incrementAndGet();
+            received.countDown();
+        }
+
+        public void onError(final Throwable error)
+        {
+            this.error = error;
+            terminated.countDown();
+        }
+
+        public void onComplete()
+        {
+            completed = true;
+            terminated.countDown();
+        }
+
+        protected volatile Subscription subscription;
+        protected volatile CountDownLatch received;
+        protected final CountDownLatch terminated = new CountDownLatch(1);
+        protected final AtomicInteger count = new AtomicInteger();
+        protected volatile boolean completed;
+        protected volatile Throwable error;
+    }
+}
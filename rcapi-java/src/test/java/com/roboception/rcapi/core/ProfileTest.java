@@ -0,0 +1,80 @@
+/*
+ * Copyright (c) 2018 Roboception GmbH
+ * All rights reserved
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * 1. Redistributions of source code must retain the above copyright notice,
+ * this list of conditions and the following disclaimer.
+ *
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ * this list of conditions and the following disclaimer in the documentation
+ * and/or other materials provided with the distribution.
+ *
+ * 3. Neither the name of the copyright holder nor the names of its contributors
+ * may be used to endorse or promote products derived from this software without
+ * specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package com.roboception.rcapi.core;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.fail;
+
+import java.io.StringReader;
+import java.util.Arrays;
+
+import org.junit.Test;
+import org.yaml.snakeyaml.error.YAMLException;
+
+public class ProfileTest
+{
+
+    @Test
+    public void loadsNodesAndValues()
+    {
+        Profile profile = Profile.load(new StringReader(
+                "rc_stereomatching:\n  quality: High\n  minconf: 0.5\n"
+                        + "rc_camera:\n  exp_auto: true\n"));
+        assertEquals(Arrays.asList("rc_stereomatching", "rc_camera"),
+                Arrays.asList(profile.getNodes().toArray()));
+        assertEquals("High", profile.getValues("rc_stereomatching").get(
+                "quality"));
+        assertEquals(0.5, profile.getValues("rc_stereomatching")
+                .get("minconf"));
+        assertEquals(true, profile.getValues("rc_camera").get("exp_auto"));
+    }
+
+    @Test
+    public void refusesToConstructTaggedClasses()
+    {
+        try
+        {
+            Profile.load(new StringReader(
+                    "rc_camera:\n  exp_value: !!java.io.File [\"/tmp\"]\n"));
+            fail("loaded an arbitrary class");
+        } catch (YAMLException e)
+        {
+            // / expected
+        }
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void rejectsNonMappingProfiles()
+    {
+        Profile.load(new StringReader("- rc_camera\n"));
+    }
+}
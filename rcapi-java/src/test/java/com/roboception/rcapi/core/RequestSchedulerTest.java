@@ -0,0 +1,255 @@
+/*
+ * Copyright (c) 2018 Roboception GmbH
+ * All rights reserved
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * 1. Redistributions of source code must retain the above copyright notice,
+ * this list of conditions and the following disclaimer.
+ *
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ * this list of conditions and the following disclaimer in the documentation
+ * and/or other materials provided with the distribution.
+ *
+ * 3. Neither the name of the copyright holder nor the names of its contributors
+ * may be used to endorse or promote products derived from this software without
+ * specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package com.roboception.rcapi.core;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import org.junit.Test;
+
+import com.roboception.rcapi.core.RequestScheduler.Priority;
+
+public class RequestSchedulerTest
+{
+
+    @Test(timeout = 5000)
+    public void servesHigherPrioritiesFirst() throws Exception
+    {
+        final RequestScheduler scheduler = new RequestScheduler()
+                .setMaxInFlight(1).setAging(1, TimeUnit.HOURS);
+        scheduler.acquire(Priority.CONTROL);
+
+        final List<Priority> order = Collections
+                .synchronizedList(new ArrayList<Priority>());
+        List<Thread> threads = new ArrayList<Thread>();
+        for (final Priority priority : new Priority[] { Priority.MONITORING,
+                Priority.SERVICE, Priority.CONTROL })
+        {
+            Thread thread = new Thread()
+            {
+                public void run()
+                {
+                    try
+                    {
+                        scheduler.acquire(priority);
+                        order.add(priority);
+                        scheduler.release();
+                    } catch (InterruptedException e)
+                    {
+                        Thread.currentThread().interrupt();
+                    }
+                }
+            };
+            thread.start();
+            threads.add(thread);
+            waitForQueueDepth(scheduler, threads.size());
+        }
+
+        scheduler.release();
+        for (Thread thread : threads)
+        {
+            thread.join();
+        }
+        assertEquals(Priority.CONTROL, order.get(0));
+        assertEquals(Priority.SERVICE, order.get(1));
+        assertEquals(Priority.MONITORING, order.get(2));
+    }
+
+    @Test(timeout = 10000)
+    public void enablingTheRateLimitKeepsAFullBurst() throws Exception
+    {
+        RequestScheduler scheduler = new RequestScheduler().setMaxRate(2, 5);
+        long start = System.nanoTime();
+        for (int i = 0; i < 5; i++)
+        {
+            scheduler.acquire(Priority.MONITORING);
+            scheduler.release();
+        }
+        assertTrue(System.nanoTime() - start < TimeUnit.MILLISECONDS
+                .toNanos(300));
+
+        // the bucket is empty now, changing the rate must not refill it
+        scheduler.setMaxRate(2, 10);
+        start = System.nanoTime();
+        scheduler.acquire(Priority.MONITORING);
+        scheduler.release();
+        assertTrue(System.nanoTime() - start >= TimeUnit.MILLISECONDS
+                .toNanos(300));
+    }
+
+    @Test(timeout = 10000)
+    public void agingLetsLowerPrioritiesThroughRateLimit() throws Exception
+    {
+        final RequestScheduler scheduler = new RequestScheduler().setMaxRate(
+                20, 1).setAging(50, TimeUnit.MILLISECONDS);
+
+        // / keep the control queue busy
+        final AtomicBoolean running = new AtomicBoolean(true);
+        List<Thread> load = new ArrayList<Thread>();
+        for (int i = 0; i < 4; i++)
+        {
+            Thread thread = new Thread()
+            {
+                public void run()
+                {
+                    try
+                    {
+                        while (running.get())
+                        {
+                            scheduler.acquire(Priority.CONTROL);
+                            scheduler.release();
+                        }
+                    } catch (InterruptedException e)
+                    {
+                        Thread.currentThread().interrupt();
+                    }
+                }
+            };
+            thread.start();
+            load.add(thread);
+        }
+
+        try
+        {
+            final CountDownLatch admitted = new CountDownLatch(1);
+            Thread monitoring = new Thread()
+            {
+                public void run()
+                {
+                    try
+                    {
+                        scheduler.acquire(Priority.MONITORING);
+                        scheduler.release();
+                        admitted.countDown();
+                    } catch (InterruptedException e)
+                    {
+                        Thread.currentThread().interrupt();
+                    }
+                }
+            };
+            monitoring.start();
+            assertTrue("monitoring request starved",
+                    admitted.await(5, TimeUnit.SECONDS));
+        } finally
+        {
+            running.set(false);
+            for (Thread thread : load)
+            {
+                thread.interrupt();
+                thread.join();
+            }
+        }
+        assertEquals(1,
+                scheduler.getMetrics().getAdmitted(Priority.MONITORING));
+    }
+
+    @Test(timeout = 5000)
+    public void promotedRequestIsAdmittedWithoutFurtherActivity()
+            throws Exception
+    {
+        // / a control request waits for a token, while an older monitoring
+        // / request waits behind it until aging lets it overtake; nothing else
+        // / happens on the host then
+        final RequestScheduler scheduler = new RequestScheduler().setMaxRate(
+                1, 1).setAging(1, TimeUnit.HOURS);
+        scheduler.acquire(Priority.CONTROL);
+        scheduler.release();
+
+        final CountDownLatch done = new CountDownLatch(2);
+        Thread monitoring = acquireAndRelease(scheduler,
+                Priority.MONITORING, done);
+        waitForQueueDepth(scheduler, 1);
+        Thread.sleep(50);
+        Thread control = acquireAndRelease(scheduler, Priority.CONTROL, done);
+        waitForQueueDepth(scheduler, 2);
+        // / let all waiters re-evaluate the order
+        scheduler.setMaxInFlight(0);
+        Thread.sleep(20);
+        scheduler.setAging(1, TimeUnit.MILLISECONDS);
+
+        assertTrue("requests hang", done.await(4, TimeUnit.SECONDS));
+        monitoring.join();
+        control.join();
+    }
+
+    @Test
+    public void unlimitedByDefault() throws Exception
+    {
+        RequestScheduler scheduler = new RequestScheduler();
+        for (int i = 0; i < 1000; i++)
+        {
+            scheduler.acquire(Priority.MONITORING);
+        }
+        assertEquals(1000, scheduler.getMetrics().getInFlight());
+        assertEquals(0, scheduler.getMetrics().getQueueDepth());
+    }
+
+    protected static Thread acquireAndRelease(
+            final RequestScheduler scheduler, final Priority priority,
+            final CountDownLatch done)
+    {
+        Thread thread = new Thread()
+        {
+            public void run()
+            {
+                try
+                {
+                    scheduler.acquire(priority);
+                    scheduler.release();
+                    done.countDown();
+                } catch (InterruptedException e)
+                {
+                    Thread.currentThread().interrupt();
+                }
+            }
+        };
+        thread.start();
+        return thread;
+    }
+
+    protected static void waitForQueueDepth(
+            final RequestScheduler scheduler, final int depth)
+            throws InterruptedException
+    {
+        while (scheduler.getMetrics().getQueueDepth() < depth)
+        {
+            Thread.sleep(1);
+        }
+    }
+}
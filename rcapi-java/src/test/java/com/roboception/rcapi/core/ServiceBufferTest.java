@@ -0,0 +1,103 @@
+/*
+ * Copyright (c) 2018 Roboception GmbH
+ * All rights reserved
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * 1. Redistributions of source code must retain the above copyright notice,
+ * this list of conditions and the following disclaimer.
+ *
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ * this list of conditions and the following disclaimer in the documentation
+ * and/or other materials provided with the distribution.
+ *
+ * 3. Neither the name of the copyright holder nor the names of its contributors
+ * may be used to endorse or promote products derived from this software without
+ * specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package com.roboception.rcapi.core;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertSame;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.Before;
+import org.junit.Test;
+
+public class ServiceBufferTest
+{
+
+    @Before
+    public void drainPool()
+    {
+        while (Service.BUFFERS.poll() != null)
+        {
+            Service.POOLED_BUFFERS.decrementAndGet();
+        }
+    }
+
+    @Test
+    public void reusesReleasedBuffersAcrossThreads() throws Exception
+    {
+        final Service.Buffer buffer = Service.acquireBuffer();
+        buffer.write(42);
+        Thread other = new Thread()
+        {
+            @Override
+            public void run()
+            {
+                Service.releaseBuffer(buffer);
+            }
+        };
+        other.start();
+        other.join();
+
+        Service.Buffer reused = Service.acquireBuffer();
+        assertSame(buffer, reused);
+        assertEquals(0, reused.size());
+    }
+
+    @Test
+    public void dropsOversizedBuffers()
+    {
+        Service.Buffer buffer = Service.acquireBuffer();
+        buffer.write(new byte[Service.MAX_POOLED_BUFFER_SIZE + 1], 0,
+                Service.MAX_POOLED_BUFFER_SIZE + 1);
+        Service.releaseBuffer(buffer);
+        assertEquals(0, Service.POOLED_BUFFERS.get());
+        assertNotSame(buffer, Service.acquireBuffer());
+    }
+
+    @Test
+    public void keepsAtMostMaxPooledBuffers()
+    {
+        List<Service.Buffer> buffers = new ArrayList<Service.Buffer>();
+        for (int i = 0; i < 2 * Service.MAX_POOLED_BUFFERS; i++)
+        {
+            buffers.add(Service.acquireBuffer());
+        }
+        for (Service.Buffer buffer : buffers)
+        {
+            Service.releaseBuffer(buffer);
+        }
+        assertEquals(Service.MAX_POOLED_BUFFERS, Service.POOLED_BUFFERS.get());
+        assertEquals(Service.MAX_POOLED_BUFFERS, Service.BUFFERS.size());
+    }
+}
@@ -0,0 +1,196 @@
+/*
+ * Copyright (c) 2018 Roboception GmbH
+ * All rights reserved
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * 1. Redistributions of source code must retain the above copyright notice,
+ * this list of conditions and the following disclaimer.
+ *
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ * this list of conditions and the following disclaimer in the documentation
+ * and/or other materials provided with the distribution.
+ *
+ * 3. Neither the name of the copyright holder nor the names of its contributors
+ * may be used to endorse or promote products derived from this software without
+ * specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package com.roboception.rcapi.core;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.fail;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicReference;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.fasterxml.jackson.databind.exc.UnrecognizedPropertyException;
+import com.sun.net.httpserver.HttpExchange;
+
+public class ServiceCallIntoTest
+{
+
+    public static class Pose
+    {
+        public double x, y;
+        public String frame;
+    }
+
+    public static class Detection
+    {
+        public Pose pose = new Pose();
+        public List<Pose> items = new ArrayList<Pose>();
+        public int count;
+        public String note = "kept";
+    }
+
+    @Before
+    public void startServer() throws Exception
+    {
+        server = StandInServer.start();
+        server.serve("/api/v1/nodes/rc_test/services/detect",
+                new StandInServer.Answer()
+                {
+                    public void answer(HttpExchange exchange,
+                            byte[] requestBody) throws IOException
+                    {
+                        String json = "GET".equals(exchange
+                                .getRequestMethod()) ? "{\"name\":\"detect\"}"
+                                : "{\"response\":" + response.get() + "}";
+                        StandInServer.respond(exchange, 200,
+                                "application/json", null,
+                                json.getBytes(StandInServer.UTF8));
+                    }
+                });
+        service = Service.connectTo(server.getHost(), "rc_test", "detect");
+    }
+
+    @After
+    public void stopServer()
+    {
+        server.stop();
+    }
+
+    @Test
+    public void readsNestedObjectsIntoExistingInstances()
+    {
+        Detection target = new Detection();
+        Pose pose = target.pose;
+        Pose first = new Pose();
+        target.items.add(first);
+        List<Pose> items = target.items;
+
+        response.set("{\"pose\":{\"x\":1,\"y\":2,\"frame\":\"camera\"},"
+                + "\"items\":[{\"x\":3},{\"x\":4,\"frame\":\"external\"}],"
+                + "\"count\":2}");
+        assertSame(target, service.callInto(null, target));
+
+        assertSame(pose, target.pose);
+        assertEquals(1, pose.x, 0);
+        assertEquals("camera", pose.frame);
+        assertSame(items, target.items);
+        assertEquals(2, items.size());
+        assertSame(first, items.get(0));
+        assertEquals(3, first.x, 0);
+        assertEquals(4, items.get(1).x, 0);
+        assertEquals(2, target.count);
+        assertEquals("kept", target.note);
+
+        // fewer elements: surplus ones are removed, others still reused
+        Pose second = items.get(1);
+        response.set("{\"pose\":{\"x\":5},\"items\":[{\"y\":6}],\"count\":1}");
+        service.callInto(null, target);
+        assertSame(pose, target.pose);
+        assertEquals(5, pose.x, 0);
+        assertEquals("camera", pose.frame);
+        assertEquals(1, items.size());
+        assertSame(first, items.get(0));
+        assertEquals(3, first.x, 0);
+        assertEquals(6, first.y, 0);
+        assertNotSame(second, items.get(0));
+    }
+
+    @Test
+    public void createsMissingNestedObjects()
+    {
+        Detection target = new Detection();
+        target.pose = null;
+        target.items = null;
+        response.set("{\"pose\":{\"x\":1},\"items\":[{\"x\":2}]}");
+        service.callInto(null, target);
+        assertEquals(1, target.pose.x, 0);
+        assertEquals(2, target.items.get(0).x, 0);
+
+        response.set("{\"pose\":null}");
+        service.callInto(null, target);
+        assertEquals(null, target.pose);
+    }
+
+    @Test
+    public void rejectsUnknownFields()
+    {
+        response.set("{\"pose\":{\"z\":1}}");
+        try
+        {
+            service.callInto(null, new Detection());
+            fail("Unknown field accepted");
+        } catch (RuntimeException e)
+        {
+            assertEquals(UnrecognizedPropertyException.class, e.getCause()
+                    .getClass());
+        }
+    }
+
+    @Test
+    public void reusesClientResourcesOfTheEndpoint()
+    {
+        Endpoints.Endpoint endpoint = Endpoints.forHost(server.getHost())
+                .service("rc_test", "detect");
+        while (endpoint.pool.poll() != null)
+        {
+            endpoint.pooled.decrementAndGet();
+        }
+        response.set("{\"count\":1}");
+        service.callInto(null, new Detection());
+        RCClientResource resource = endpoint.pool.peek();
+        assertEquals(1, endpoint.pooled.get());
+
+        for (int i = 2; i <= 3; i++)
+        {
+            response.set("{\"count\":" + i + "}");
+            assertEquals(i, service.callInto(null, new Detection()).count);
+            assertSame(resource, endpoint.pool.peek());
+            assertEquals(1, endpoint.pooled.get());
+        }
+
+        // plain calls take their resource from the same pool
+        service.call();
+        assertSame(resource, endpoint.pool.peek());
+        assertEquals(1, endpoint.pooled.get());
+    }
+
+    protected final AtomicReference<String> response = new AtomicReference<String>();
+    protected StandInServer server;
+    protected Service service;
+}
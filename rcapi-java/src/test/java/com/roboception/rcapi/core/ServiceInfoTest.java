@@ -0,0 +1,71 @@
+/*
+ * Copyright (c) 2018 Roboception GmbH
+ * All rights reserved
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * 1. Redistributions of source code must retain the above copyright notice,
+ * this list of conditions and the following disclaimer.
+ *
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ * this list of conditions and the following disclaimer in the documentation
+ * and/or other materials provided with the distribution.
+ *
+ * 3. Neither the name of the copyright holder nor the names of its contributors
+ * may be used to endorse or promote products derived from this software without
+ * specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package com.roboception.rcapi.core;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+
+import org.junit.Test;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+
+public class ServiceInfoTest
+{
+
+    @Test
+    public void sharesDescriptionsButHandsOutCopies() throws Exception
+    {
+        Service first = new Service();
+        first.info = decode().share();
+        Service second = new Service();
+        second.info = decode().share();
+        assertSame(first.info.args, second.info.args);
+        assertSame(first.info.response, second.info.response);
+
+        Service.Info copy = first.getInfo();
+        assertEquals(first.info.args, copy.args);
+        ((ObjectNode) copy.args).put("pose", "modified");
+
+        assertEquals("float64", first.info.args.get("pose").asText());
+        assertEquals("float64", second.getInfo().args.get("pose").asText());
+    }
+
+    protected static Service.Info decode() throws Exception
+    {
+        return new ObjectMapper().readValue(
+                "{\"name\":\"set_pose\",\"description\":\"Sets the pose\","
+                        + "\"args\":{\"pose\":\"float64\"},"
+                        + "\"response\":{\"success\":\"bool\"}}",
+                Service.Info.class);
+    }
+}
@@ -0,0 +1,162 @@
+/*
+ * Copyright (c) 2018 Roboception GmbH
+ * All rights reserved
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * 1. Redistributions of source code must retain the above copyright notice,
+ * this list of conditions and the following disclaimer.
+ *
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ * this list of conditions and the following disclaimer in the documentation
+ * and/or other materials provided with the distribution.
+ *
+ * 3. Neither the name of the copyright holder nor the names of its contributors
+ * may be used to endorse or promote products derived from this software without
+ * specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package com.roboception.rcapi.core;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.IOException;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.sun.net.httpserver.HttpExchange;
+
+public class ServiceJobTest
+{
+
+    @Before
+    public void startServer() throws Exception
+    {
+        server = StandInServer.start();
+        server.serve("/api/v1/nodes/rc_test/services/detect",
+                new StandInServer.Answer()
+                {
+                    public void answer(HttpExchange exchange,
+                            byte[] requestBody) throws IOException
+                    {
+                        String json = "{\"name\":\"detect\"}";
+                        if (!"GET".equals(exchange.getRequestMethod()))
+                        {
+                            calls.incrementAndGet();
+                            try
+                            {
+                                release.await();
+                            } catch (InterruptedException e)
+                            {
+                                return;
+                            }
+                            json = "{\"response\":{\"ok\":true}}";
+                        }
+                        StandInServer.respond(exchange, 200,
+                                "application/json", null,
+                                json.getBytes(StandInServer.UTF8));
+                    }
+                });
+        service = Service.connectTo(server.getHost(), "rc_test", "detect");
+        ServiceJob.setMaxConcurrentCalls(server.getHost(), "rc_test", 1);
+    }
+
+    @After
+    public void stopServer()
+    {
+        release.countDown();
+        server.stop();
+    }
+
+    @Test(timeout = 20000)
+    public void cancelledQueuedJobLeavesTheQueueAtOnce() throws Exception
+    {
+        ServiceJob running = service.submit();
+        ServiceJob cancelled = service.submit();
+        ServiceJob next = service.submit();
+        awaitCalls(1);
+        assertEquals(ServiceJob.State.RUNNING, running.getState());
+        assertEquals(ServiceJob.State.QUEUED, cancelled.getState());
+
+        assertTrue(cancelled.cancel(false));
+        assertEquals(ServiceJob.State.CANCELLED, cancelled.getState());
+        synchronized (cancelled.limiter)
+        {
+            assertEquals(1, cancelled.limiter.queue.size());
+            assertTrue(cancelled.limiter.queue.contains(next));
+        }
+        try
+        {
+            cancelled.get();
+            fail("Cancelled job returned a result");
+        } catch (CancellationException e)
+        {
+            // expected
+        }
+
+        release.countDown();
+        next.get(10, TimeUnit.SECONDS);
+        assertEquals(ServiceJob.State.SUCCEEDED, running.getState());
+        assertEquals(ServiceJob.State.SUCCEEDED, next.getState());
+        assertEquals(2, calls.get());
+        assertEquals(0, cancelled.getRunning(TimeUnit.NANOSECONDS));
+    }
+
+    @Test(timeout = 20000)
+    public void queuedJobsWaitForTheNodesLimit() throws Exception
+    {
+        ServiceJob running = service.submit();
+        ServiceJob queued = service.submit();
+        awaitCalls(1);
+        try
+        {
+            queued.get(200, TimeUnit.MILLISECONDS);
+            fail("Queued job finished while the limit was reached");
+        } catch (TimeoutException e)
+        {
+            assertEquals(ServiceJob.State.QUEUED, queued.getState());
+        }
+        assertFalse(running.isDone());
+
+        release.countDown();
+        queued.get(10, TimeUnit.SECONDS);
+        assertTrue(running.isDone());
+        assertEquals(2, calls.get());
+    }
+
+    protected void awaitCalls(final int count) throws InterruptedException
+    {
+        while (calls.get() < count)
+        {
+            Thread.sleep(5);
+        }
+    }
+
+    protected final CountDownLatch release = new CountDownLatch(1);
+    protected final AtomicInteger calls = new AtomicInteger();
+    protected StandInServer server;
+    protected Service service;
+}
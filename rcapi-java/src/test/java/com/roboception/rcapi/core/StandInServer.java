@@ -0,0 +1,228 @@
+/*
+ * Copyright (c) 2018 Roboception GmbH
+ * All rights reserved
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * 1. Redistributions of source code must retain the above copyright notice,
+ * this list of conditions and the following disclaimer.
+ *
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ * this list of conditions and the following disclaimer in the documentation
+ * and/or other materials provided with the distribution.
+ *
+ * 3. Neither the name of the copyright holder nor the names of its contributors
+ * may be used to endorse or promote products derived from this software without
+ * specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package com.roboception.rcapi.core;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.net.ServerSocket;
+import java.nio.charset.Charset;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+import com.sun.net.httpserver.HttpServer;
+
+/**
+ * Local HTTP server standing in for a device in tests.
+ *
+ */
+class StandInServer
+{
+
+    /**
+     * A request received by the server
+     */
+    static class Received
+    {
+        final String method, path, acceptEncoding;
+        final byte[] body;
+
+        Received(final String method, final String path,
+                final String acceptEncoding, final byte[] body)
+        {
+            this.method = method;
+            this.path = path;
+            this.acceptEncoding = acceptEncoding;
+            this.body = body;
+        }
+    }
+
+    /**
+     * Answers a request, see {@link StandInServer#serve(String, Answer)}.
+     */
+    static interface Answer
+    {
+        void answer(HttpExchange exchange, byte[] requestBody)
+                throws IOException;
+    }
+
+    static final Charset UTF8 = Charset.forName("UTF-8");
+
+    /**
+     * Starts a server on an ephemeral port of the loopback interface.
+     */
+    static StandInServer start() throws IOException
+    {
+        return new StandInServer();
+    }
+
+    /**
+     * @return "localhost:port" of a port nobody listens on
+     */
+    static String unusedHost() throws IOException
+    {
+        ServerSocket socket = new ServerSocket(0);
+        int port = socket.getLocalPort();
+        socket.close();
+        return "localhost:" + port;
+    }
+
+    /**
+     * Answers all requests to the path (and below) with the given answer.
+     */
+    StandInServer serve(final String path, final Answer answer)
+    {
+        server.createContext(path, new HttpHandler()
+        {
+            public void handle(HttpExchange exchange) throws IOException
+            {
+                try
+                {
+                    byte[] body = readAll(exchange.getRequestBody());
+                    received.add(new Received(exchange.getRequestMethod(),
+                            exchange.getRequestURI().getPath(), exchange
+                                    .getRequestHeaders().getFirst(
+                                            "Accept-Encoding"), body));
+                    answer.answer(exchange, body);
+                } finally
+                {
+                    exchange.close();
+                }
+            }
+        });
+        return this;
+    }
+
+    /**
+     * Answers all requests to the path with the given JSON.
+     */
+    StandInServer serveJson(final String path, final String json)
+    {
+        return serve(path, new Answer()
+        {
+            public void answer(HttpExchange exchange, byte[] requestBody)
+                    throws IOException
+            {
+                respond(exchange, 200, "application/json", null,
+                        json.getBytes(UTF8));
+            }
+        });
+    }
+
+    /**
+     * Accepts requests to the path, but answers only after the given time.
+     */
+    StandInServer stall(final String path, final long millis)
+    {
+        return serve(path, new Answer()
+        {
+            public void answer(HttpExchange exchange, byte[] requestBody)
+                    throws IOException
+            {
+                try
+                {
+                    Thread.sleep(millis);
+                } catch (InterruptedException e)
+                {
+                    return;
+                }
+                respond(exchange, 200, "application/json", null,
+                        "{}".getBytes(UTF8));
+            }
+        });
+    }
+
+    static void respond(final HttpExchange exchange, final int status,
+            final String contentType, final String contentEncoding,
+            final byte[] body) throws IOException
+    {
+        exchange.getResponseHeaders().set("Content-Type", contentType);
+        if (contentEncoding != null)
+        {
+            exchange.getResponseHeaders().set("Content-Encoding",
+                    contentEncoding);
+        }
+        exchange.sendResponseHeaders(status, body.length == 0 ? -1
+                : body.length);
+        OutputStream out = exchange.getResponseBody();
+        out.write(body);
+        out.close();
+    }
+
+    static byte[] readAll(final InputStream in) throws IOException
+    {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        byte[] buffer = new byte[4096];
+        int n;
+        while ((n = in.read(buffer)) > 0)
+        {
+            bytes.write(buffer, 0, n);
+        }
+        return bytes.toByteArray();
+    }
+
+    /**
+     * @return "localhost:port" of this server
+     */
+    String getHost()
+    {
+        return "localhost:" + server.getAddress().getPort();
+    }
+
+    List<Received> getReceived()
+    {
+        return received;
+    }
+
+    void stop()
+    {
+        server.stop(0);
+        executor.shutdownNow();
+    }
+
+    private final HttpServer server;
+    private final ExecutorService executor = Executors.newCachedThreadPool();
+    private final List<Received> received = new CopyOnWriteArrayList<Received>();
+
+    private StandInServer() throws IOException
+    {
+        server = HttpServer.create(new InetSocketAddress("localhost", 0), 0);
+        server.setExecutor(executor);
+        server.start();
+    }
+}
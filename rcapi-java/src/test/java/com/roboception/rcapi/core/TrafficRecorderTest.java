@@ -0,0 +1,153 @@
+/*
+ * Copyright (c) 2018 Roboception GmbH
+ * All rights reserved
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * 1. Redistributions of source code must retain the above copyright notice,
+ * this list of conditions and the following disclaimer.
+ *
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ * this list of conditions and the following disclaimer in the documentation
+ * and/or other materials provided with the distribution.
+ *
+ * 3. Neither the name of the copyright holder nor the names of its contributors
+ * may be used to endorse or promote products derived from this software without
+ * specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package com.roboception.rcapi.core;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.util.List;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+public class TrafficRecorderTest
+{
+
+    @Before
+    public void createLog() throws IOException
+    {
+        log = File.createTempFile("rcapi-traffic", ".log");
+    }
+
+    @After
+    public void deleteLog()
+    {
+        log.delete();
+    }
+
+    @Test
+    public void readsWhatHasBeenWritten() throws IOException
+    {
+        TrafficRecorder recorder = TrafficRecorder.start(log);
+        assertSame(recorder, TrafficRecorder.active());
+        recorder.write(System.nanoTime(), 1500, "GET",
+                "http://10.0.2.40/api/v1/system", 200, "application/json",
+                new byte[0], bytes("{\"ready\":true}"));
+        recorder.write(System.nanoTime(), 2500, "PUT",
+                "http://10.0.2.40/api/v1/nodes/rc_stereo/services/reset", 404,
+                null, bytes("{\"args\":{}}"), new byte[0]);
+        assertEquals(2, recorder.getRecordCount());
+        recorder.close();
+        assertNull(TrafficRecorder.active());
+        // / trimmed to the records
+        assertTrue(log.length() < 512);
+
+        List<TrafficRecorder.Record> records = TrafficRecorder.read(log);
+        assertEquals(2, records.size());
+
+        TrafficRecorder.Record get = records.get(0);
+        assertEquals("GET", get.getMethod());
+        assertEquals("http://10.0.2.40/api/v1/system", get.getUrl());
+        assertEquals(1500, get.getDuration());
+        assertEquals(200, get.getStatus());
+        assertEquals("application/json", get.getMediaType());
+        assertArrayEquals(new byte[0], get.getRequest());
+        assertArrayEquals(bytes("{\"ready\":true}"), get.getResponse());
+
+        TrafficRecorder.Record put = records.get(1);
+        assertEquals("PUT", put.getMethod());
+        assertEquals(404, put.getStatus());
+        assertNull(put.getMediaType());
+        assertArrayEquals(bytes("{\"args\":{}}"), put.getRequest());
+        assertArrayEquals(new byte[0], put.getResponse());
+        assertTrue(put.getStart() >= get.getStart());
+    }
+
+    @Test
+    public void readsLogsThatHaveNotBeenClosed() throws IOException
+    {
+        TrafficRecorder recorder = TrafficRecorder.start(log);
+        recorder.write(System.nanoTime(), 1, "GET", "http://host/", 200,
+                null, new byte[0], bytes("[]"));
+        try
+        {
+            // / zero padding of the mapped region ends the log
+            assertEquals(1, TrafficRecorder.read(log).size());
+        } finally
+        {
+            recorder.close();
+        }
+    }
+
+    @Test(expected = IOException.class)
+    public void rejectsOtherFiles() throws IOException
+    {
+        RandomAccessFile raf = new RandomAccessFile(log, "rw");
+        raf.writeBytes("no traffic log");
+        raf.close();
+        TrafficRecorder.read(log);
+    }
+
+    @Test
+    public void startingStopsPreviousRecording() throws IOException
+    {
+        File other = File.createTempFile("rcapi-traffic", ".log");
+        try
+        {
+            TrafficRecorder first = TrafficRecorder.start(log);
+            TrafficRecorder second = TrafficRecorder.start(other);
+            assertSame(second, TrafficRecorder.active());
+            first.write(System.nanoTime(), 1, "GET", "http://host/", 200,
+                    null, new byte[0], new byte[0]);
+            assertEquals(0, first.getRecordCount());
+            second.close();
+            assertEquals(8, log.length());
+        } finally
+        {
+            other.delete();
+        }
+    }
+
+    protected static byte[] bytes(final String string)
+    {
+        return string.getBytes(TrafficRecorder.UTF8);
+    }
+
+    protected File log;
+}
@@ -0,0 +1,168 @@
+/*
+ * Copyright (c) 2018 Roboception GmbH
+ * All rights reserved
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * 1. Redistributions of source code must retain the above copyright notice,
+ * this list of conditions and the following disclaimer.
+ *
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ * this list of conditions and the following disclaimer in the documentation
+ * and/or other materials provided with the distribution.
+ *
+ * 3. Neither the name of the copyright holder nor the names of its contributors
+ * may be used to endorse or promote products derived from this software without
+ * specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package com.roboception.rcapi.core;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.List;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.restlet.data.MediaType;
+import org.restlet.representation.StringRepresentation;
+
+import com.sun.net.httpserver.HttpExchange;
+
+public class TrafficReplayTest
+{
+
+    @Before
+    public void startServer() throws Exception
+    {
+        log = File.createTempFile("rcapi-traffic", ".log");
+        server = StandInServer.start();
+        server.serveJson("/api/v1/system", "{\"ready\":true}");
+        server.serve(SERVICE_PATH, new StandInServer.Answer()
+        {
+            public void answer(HttpExchange exchange, byte[] requestBody)
+                    throws IOException
+            {
+                // / answer with the arguments, so that responses differ
+                StandInServer.respond(exchange, 200, "application/json",
+                        null, ("{\"response\":"
+                                + new String(requestBody, StandInServer.UTF8) + "}")
+                                .getBytes(StandInServer.UTF8));
+            }
+        });
+    }
+
+    @After
+    public void stopServer()
+    {
+        Endpoints.setTransport(null);
+        TrafficRecorder recorder = TrafficRecorder.active();
+        if (recorder != null)
+        {
+            recorder.close();
+        }
+        server.stop();
+        log.delete();
+    }
+
+    @Test(timeout = 10000)
+    public void replaysRecordedResponsesByRequestEntity() throws Exception
+    {
+        Endpoints endpoints = Endpoints.forHost(server.getHost());
+        TrafficRecorder recorder = TrafficRecorder.start(log);
+        String system = get(endpoints.system());
+        String first = put(endpoints.service("rc_dynamics", "echo"), ARGS_1);
+        String second = put(endpoints.service("rc_dynamics", "echo"), ARGS_2);
+        recorder.close();
+        assertEquals(3, recorder.getRecordCount());
+        assertEquals("{\"response\":" + ARGS_1 + "}", first);
+        assertEquals("{\"response\":" + ARGS_2 + "}", second);
+
+        // / the device is gone, all answers come from the log
+        server.stop();
+        Endpoints.setTransport(new TrafficReplay(log, 0));
+
+        assertEquals(second,
+                put(endpoints.service("rc_dynamics", "echo"), ARGS_2));
+        assertEquals(first,
+                put(endpoints.service("rc_dynamics", "echo"), ARGS_1));
+        assertEquals(system, get(endpoints.system()));
+
+        // / unknown arguments fall back to the responses of the URL
+        assertEquals(first, put(endpoints.service("rc_dynamics", "echo"),
+                "{\"args\":{\"unknown\":true}}"));
+    }
+
+    @Test
+    public void groupsRecordsByRequestEntity()
+    {
+        byte[] args = "{\"args\":{}}".getBytes(StandInServer.UTF8);
+        TrafficRecorder.Record withArgs = record("PUT", args);
+        TrafficRecorder.Record withoutArgs = record("PUT", new byte[0]);
+        TrafficRecorder.Record get = record("GET", new byte[0]);
+        TrafficReplay replay = new TrafficReplay(Arrays.asList(withArgs,
+                withoutArgs, get), 0);
+
+        String put = TrafficReplay.key("PUT", URL);
+        assertSame(withArgs, replay.responses.get(TrafficReplay.key(put,
+                args)).next());
+        assertSame(withoutArgs, replay.responses.get(TrafficReplay.key(put,
+                new byte[0])).next());
+        assertNull(replay.responses.get(TrafficReplay.key(put,
+                "{}".getBytes(StandInServer.UTF8))));
+
+        List<TrafficRecorder.Record> fallback = replay.fallbacks.get(put).records;
+        assertEquals(Arrays.asList(withArgs, withoutArgs), fallback);
+        assertSame(get, replay.fallbacks.get(TrafficReplay.key("GET", URL))
+                .next());
+    }
+
+    protected static TrafficRecorder.Record record(final String method,
+            final byte[] request)
+    {
+        return new TrafficRecorder.Record(0, 0, method, URL, 200,
+                "application/json", request, new byte[0]);
+    }
+
+    protected static String get(final Endpoints.Endpoint endpoint)
+            throws IOException
+    {
+        return new String(PayloadCache.readAll(endpoint.newResource().get()),
+                StandInServer.UTF8);
+    }
+
+    protected static String put(final Endpoints.Endpoint endpoint,
+            final String json) throws IOException
+    {
+        return new String(PayloadCache.readAll(endpoint.newResource().put(
+                new StringRepresentation(json, MediaType.APPLICATION_JSON))),
+                StandInServer.UTF8);
+    }
+
+    protected static final String SERVICE_PATH = "/api/v1/nodes/rc_dynamics/services/echo";
+    protected static final String URL = "http://10.0.2.40" + SERVICE_PATH;
+    protected static final String ARGS_1 = "{\"args\":{\"pose\":1}}";
+    protected static final String ARGS_2 = "{\"args\":{\"pose\":2}}";
+
+    protected StandInServer server;
+    protected File log;
+}
@@ -0,0 +1,205 @@
+/*
+ * Copyright (c) 2018 Roboception GmbH
+ * All rights reserved
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * 1. Redistributions of source code must retain the above copyright notice,
+ * this list of conditions and the following disclaimer.
+ *
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ * this list of conditions and the following disclaimer in the documentation
+ * and/or other materials provided with the distribution.
+ *
+ * 3. Neither the name of the copyright holder nor the names of its contributors
+ * may be used to endorse or promote products derived from this software without
+ * specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package com.roboception.rcapi.core;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+public class TypedParameterTest
+{
+
+    @Before
+    public void startServer() throws Exception
+    {
+        server = StandInServer.start();
+        serveParam("minconf", "float64", "0.5", "0.0", "1.0", "0.5");
+        serveParam("seg", "int32", "200", "0", "4000", "200");
+        serveParam("ptp_id", "uint32", "4294967295", "0", "4294967295", "0");
+        serveParam("enabled", "bool", "true", "false", "true", "false");
+        serveParam("mode", "string", "\"Low\"", "\"\"", "\"\"", "\"Low\"");
+    }
+
+    @After
+    public void stopServer()
+    {
+        server.stop();
+    }
+
+    @Test
+    public void mapsRemoteTypesToTypedParameters()
+    {
+        assertEquals(DoubleParameter.class, connect("minconf").getClass());
+        assertEquals(IntParameter.class, connect("seg").getClass());
+        assertEquals(IntParameter.class, connect("ptp_id").getClass());
+        assertEquals(BoolParameter.class, connect("enabled").getClass());
+        assertEquals(StringParameter.class, connect("mode").getClass());
+
+        assertEquals(DoubleParameter.class, TypedParameter.kindOf("float32"));
+        assertEquals(IntParameter.class, TypedParameter.kindOf("uint8"));
+        assertEquals(IntParameter.class, TypedParameter.kindOf("int64"));
+        try
+        {
+            TypedParameter.kindOf("pose");
+            fail("Unsupported type accepted");
+        } catch (IllegalArgumentException e)
+        {
+            // expected
+        }
+    }
+
+    @Test
+    public void readsValuesAsPrimitives()
+    {
+        DoubleParameter minconf = DoubleParameter.connectTo(server.getHost(),
+                NODE, "minconf");
+        assertEquals(0.5, minconf.getDouble(), 0);
+        assertEquals(1.0, minconf.getMax(), 0);
+        assertTrue(BoolParameter.connectTo(server.getHost(), NODE, "enabled")
+                .getBool());
+        assertEquals("Low", StringParameter.connectTo(server.getHost(), NODE,
+                "mode").getString());
+    }
+
+    @Test
+    public void rejectsValuesOutsideMinAndMax()
+    {
+        IntParameter seg = IntParameter.connectTo(server.getHost(), NODE,
+                "seg");
+        seg.setInt(4000);
+        assertEquals(4000, seg.getInt());
+        try
+        {
+            seg.setInt(4001);
+            fail("Value above max accepted");
+        } catch (IllegalArgumentException e)
+        {
+            assertEquals(4000, seg.getInt());
+        }
+        try
+        {
+            seg.setLong(-1);
+            fail("Value below min accepted");
+        } catch (IllegalArgumentException e)
+        {
+            assertEquals(4000, seg.getInt());
+        }
+
+        DoubleParameter minconf = DoubleParameter.connectTo(server.getHost(),
+                NODE, "minconf");
+        try
+        {
+            minconf.setDouble(1.5);
+            fail("Value above max accepted");
+        } catch (IllegalArgumentException e)
+        {
+            assertEquals(0.5, minconf.getDouble(), 0);
+        }
+    }
+
+    @Test
+    public void holdsTheFullUint32Range()
+    {
+        IntParameter ptpId = IntParameter.connectTo(server.getHost(), NODE,
+                "ptp_id");
+        assertEquals(4294967295L, ptpId.getLong());
+        assertEquals(4294967295L, ptpId.getMax());
+        try
+        {
+            ptpId.getInt();
+            fail("Value beyond int range returned as int");
+        } catch (IllegalStateException e)
+        {
+            // expected
+        }
+        ptpId.setLong(4294967294L);
+        try
+        {
+            ptpId.setLong(4294967296L);
+            fail("Value above uint32 max accepted");
+        } catch (IllegalArgumentException e)
+        {
+            assertEquals(4294967294L, ptpId.getLong());
+        }
+    }
+
+    @Test
+    public void writesValueAndTakesTheOneReportedBack()
+    {
+        IntParameter seg = IntParameter.connectTo(server.getHost(), NODE,
+                "seg");
+        seg.setInt(300).syncToRemote();
+
+        StandInServer.Received put = server.getReceived().get(
+                server.getReceived().size() - 1);
+        assertEquals("PUT", put.method);
+        assertEquals("{\"name\":\"seg\",\"value\":300}", new String(put.body,
+                StandInServer.UTF8));
+        // the stand-in reports back its unchanged value
+        assertEquals(200, seg.getInt());
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void rejectsConnectingAsWrongKind()
+    {
+        IntParameter.connectTo(server.getHost(), NODE, "minconf");
+    }
+
+    protected TypedParameter connect(final String name)
+    {
+        TypedParameter param = TypedParameter.connectTo(server.getHost(),
+                NODE, name);
+        assertEquals(name, param.getName());
+        assertFalse(param.getType().isEmpty());
+        return param;
+    }
+
+    protected void serveParam(final String name, final String type,
+            final String value, final String min, final String max,
+            final String defaultValue)
+    {
+        server.serveJson("/api/v1/nodes/" + NODE + "/parameters/" + name,
+                "{\"name\":\"" + name + "\",\"description\":\"\",\"type\":\""
+                        + type + "\",\"value\":" + value + ",\"min\":" + min
+                        + ",\"max\":" + max + ",\"default\":" + defaultValue
+                        + "}");
+    }
+
+    protected static final String NODE = "rc_stereo";
+
+    protected StandInServer server;
+}
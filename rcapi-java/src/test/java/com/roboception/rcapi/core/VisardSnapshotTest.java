@@ -0,0 +1,149 @@
+/*
+ * Copyright (c) 2018 Roboception GmbH
+ * All rights reserved
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * 1. Redistributions of source code must retain the above copyright notice,
+ * this list of conditions and the following disclaimer.
+ *
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ * this list of conditions and the following disclaimer in the documentation
+ * and/or other materials provided with the distribution.
+ *
+ * 3. Neither the name of the copyright holder nor the names of its contributors
+ * may be used to endorse or promote products derived from this software without
+ * specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package com.roboception.rcapi.core;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.TimeoutException;
+
+import org.junit.Test;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+
+public class VisardSnapshotTest
+{
+
+    @Test
+    public void keepsSystemStateApartFromNodeNamedSystem() throws Exception
+    {
+        Map<String, JsonNode> statuses = new LinkedHashMap<String, JsonNode>();
+        statuses.put("system", STATUS);
+        Exception timeout = new TimeoutException();
+
+        Visard.Snapshot snapshot = new Visard.Snapshot(0, null, timeout,
+                statuses, new LinkedHashMap<String, Exception>());
+
+        assertEquals(Node.Status.ProcessingStatus.running, snapshot
+                .getStatuses().get("system").processingStatus);
+        assertNull(snapshot.getSystemInfo());
+        assertSame(timeout, snapshot.getSystemError());
+        assertTrue(snapshot.getErrors().isEmpty());
+        assertFalse(snapshot.isComplete());
+    }
+
+    @Test(expected = UnsupportedOperationException.class)
+    public void statusesCannotBeModified()
+    {
+        Visard.Snapshot snapshot = new Visard.Snapshot(0, null, null,
+                new LinkedHashMap<String, JsonNode>(),
+                new LinkedHashMap<String, Exception>());
+        assertNull(snapshot.getSystemError());
+        snapshot.getStatuses().put("rc_stereo", null);
+    }
+
+    @Test(expected = UnsupportedOperationException.class)
+    public void statusValuesCannotBeModified()
+    {
+        Map<String, JsonNode> statuses = new LinkedHashMap<String, JsonNode>();
+        statuses.put("rc_stereo", STATUS);
+        Visard.Snapshot snapshot = new Visard.Snapshot(0, null, null,
+                statuses, new LinkedHashMap<String, Exception>());
+        snapshot.getStatuses().get("rc_stereo").values.put("fps", "0");
+    }
+
+    @Test
+    public void changingReturnedCopiesDoesNotChangeTheSnapshot()
+            throws Exception
+    {
+        ObjectNode sysInfo = (ObjectNode) new ObjectMapper()
+                .readTree("{\"hostname\":\"rc-visard\",\"ready\":true,"
+                        + "\"firmware\":{\"active_image\":"
+                        + "{\"image_version\":\"v1.0\"}}}");
+        Map<String, JsonNode> statuses = new LinkedHashMap<String, JsonNode>();
+        statuses.put("rc_stereo", STATUS);
+        Visard.Snapshot snapshot = new Visard.Snapshot(0, sysInfo, null,
+                statuses, new LinkedHashMap<String, Exception>());
+
+        // neither the caller's JSON nor returned copies reach the snapshot
+        sysInfo.put("hostname", "changed");
+        Visard.SysInfo copy = snapshot.getSystemInfo();
+        assertEquals("rc-visard", copy.hostname);
+        copy.hostname = "changed";
+        copy.firmware.active_image.image_version = "changed";
+        snapshot.getStatuses().get("rc_stereo").timestamp = 0;
+
+        assertEquals("rc-visard", snapshot.getSystemInfo().hostname);
+        assertEquals("v1.0",
+                snapshot.getSystemInfo().firmware.active_image.image_version);
+        assertEquals(1.5, snapshot.getStatuses().get("rc_stereo").timestamp,
+                0);
+        assertNotSame(snapshot.getSystemInfo(), snapshot.getSystemInfo());
+    }
+
+    @Test(expected = IllegalStateException.class)
+    public void returnedSystemInfoCannotBeSynced() throws Exception
+    {
+        Visard.Snapshot snapshot = new Visard.Snapshot(0, new ObjectMapper()
+                .readTree("{\"hostname\":\"rc-visard\"}"), null,
+                new LinkedHashMap<String, JsonNode>(),
+                new LinkedHashMap<String, Exception>());
+        snapshot.getSystemInfo().syncFromRemote();
+    }
+
+    @Test(expected = IllegalStateException.class)
+    public void detachedSystemInfoCannotBeSynced()
+    {
+        new Visard.SysInfo().syncFromRemote();
+    }
+
+    protected static final JsonNode STATUS;
+    static
+    {
+        try
+        {
+            STATUS = new ObjectMapper().readTree("{\"status\":\"running\","
+                    + "\"timestamp\":1.5,\"values\":{\"fps\":\"25\"}}");
+        } catch (Exception e)
+        {
+            throw new RuntimeException(e);
+        }
+    }
+}